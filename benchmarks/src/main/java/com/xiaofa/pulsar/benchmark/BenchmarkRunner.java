@@ -0,0 +1,43 @@
+package com.xiaofa.pulsar.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}, the JMH command line with other defaults:
+ * the GC profiler, whose {@code gc.alloc.rate.norm} is the allocation per operation, and a JSON result file
+ * {@code jmh-result.json}, so that the results of two versions can be diffed.
+ * Any {@code -prof}, {@code -rf} or {@code -rff} given on the command line replaces the default.
+ * @author pig
+ */
+public class BenchmarkRunner {
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if(commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if(commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if(!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if(!commandLine.getResult().hasValue()) {
+            options.result(RESULT_FILE);
+        }
+        Runner runner = new Runner(options.build());
+        if(commandLine.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
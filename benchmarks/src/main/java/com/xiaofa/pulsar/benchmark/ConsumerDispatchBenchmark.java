@@ -0,0 +1,85 @@
+package com.xiaofa.pulsar.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.xiaofa.pulsar.config.ClientConfig;
+import com.xiaofa.pulsar.inmemory.InMemoryPulsarClient;
+import com.xiaofa.pulsar.listener.ConsumerMessageListener;
+import com.xiaofa.pulsar.utils.JsonUtil;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link ConsumerMessageListener#received} around a trivial {@code handle}: the {@code before()} log line
+ * and the ack, against a consumer of the in-memory client.
+ * {@code logLevel} INFO writes the received message to the benchmark log file, see {@code logback.xml},
+ * WARN measures the dispatch with the log line filtered out. {@code items} sets the message size.
+ * @author pig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ConsumerDispatchBenchmark {
+    @Param({"INFO", "WARN"})
+    private String logLevel;
+
+    @Param({"1", "20", "200"})
+    private int items;
+
+    private InMemoryPulsarClient pulsarClient;
+    private Consumer<String> consumer;
+    private Message<String> message;
+    private CountingListener listener;
+
+    @Setup
+    public void setup() throws Exception {
+        ((Logger) LoggerFactory.getLogger(ConsumerMessageListener.class)).setLevel(Level.toLevel(logLevel));
+        pulsarClient = new InMemoryPulsarClient(new ClientConfig());
+        consumer = pulsarClient.newConsumer(Schema.STRING).topic("product-update").subscriptionName("benchmark")
+                .subscribe();
+        pulsarClient.newProducer(Schema.STRING).topic("product-update").create()
+                .send(JsonUtil.toJson(OrderPayload.sample(items)));
+        message = consumer.receive();
+        listener = new CountingListener();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pulsarClient.close();
+    }
+
+    @Benchmark
+    public void received(Blackhole blackhole) {
+        listener.received(consumer, message);
+        blackhole.consume(listener.handled);
+    }
+
+    static class CountingListener extends ConsumerMessageListener {
+        private long handled;
+
+        @Override
+        public void handle(Consumer<String> consumer, Message<String> message) {
+            handled += message.getValue().length();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.xiaofa.pulsar.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaofa.pulsar.utils.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data binding of message payloads: {@code mapper*} call {@link JsonUtil#MAPPER} directly, the others go through
+ * the {@link JsonUtil} readers and writers cached per type.
+ * {@code afterburner} sets {@link JsonUtil#AFTERBURNER_PROPERTY} before {@link JsonUtil} is loaded,
+ * each value runs in its own fork.
+ * @author pig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonMapperBenchmark {
+    @Param({"false", "true"})
+    private boolean afterburner;
+
+    @Param({"1", "20", "200"})
+    private int items;
+
+    private ObjectMapper mapper;
+    private OrderPayload payload;
+    private String json;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        System.setProperty(JsonUtil.AFTERBURNER_PROPERTY, String.valueOf(afterburner));
+        mapper = JsonUtil.MAPPER;
+        payload = OrderPayload.sample(items);
+        json = JsonUtil.toJson(payload);
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String mapperWriteValueAsString() throws IOException {
+        return mapper.writeValueAsString(payload);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JsonUtil.toJson(payload);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return JsonUtil.toBytes(payload);
+    }
+
+    @Benchmark
+    public OrderView mapperReadValue() throws IOException {
+        return mapper.readValue(json, OrderView.class);
+    }
+
+    @Benchmark
+    public OrderView fromStr() {
+        return JsonUtil.fromStr(json, OrderView.class);
+    }
+
+    @Benchmark
+    public OrderView fromBytes() {
+        return JsonUtil.fromBytes(bytes, OrderView.class);
+    }
+}
@@ -0,0 +1,86 @@
+package com.xiaofa.pulsar.benchmark;
+
+import com.xiaofa.pulsar.client.MethodInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch cost of a {@code @PulsarListener} method, argument resolution excluded.
+ * {@code direct} is the hand-written call, {@code reflection} is {@link Method#invoke},
+ * {@code lambdaInvoker} is the {@link MethodInvoker} of a public method, {@code methodHandleInvoker}
+ * the fallback used for the methods of non-public classes.
+ * @author pig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ListenerDispatchBenchmark {
+    private final OrderHandler handler = new OrderHandler();
+    private final HiddenOrderHandler hiddenHandler = new HiddenOrderHandler();
+    private Method method;
+    private MethodInvoker lambdaInvoker;
+    private MethodInvoker methodHandleInvoker;
+    private Object[] args;
+
+    @Setup
+    public void setup() throws Exception {
+        method = OrderHandler.class.getMethod("onOrder", OrderPayload.class, String.class);
+        lambdaInvoker = MethodInvoker.of(method);
+        methodHandleInvoker = MethodInvoker.of(HiddenOrderHandler.class.getMethod("onOrder", OrderPayload.class, String.class));
+        args = new Object[] {OrderPayload.sample(1), "order-1"};
+    }
+
+    @Benchmark
+    public long direct() {
+        handler.onOrder((OrderPayload) args[0], (String) args[1]);
+        return handler.handled;
+    }
+
+    @Benchmark
+    public long reflection() throws Exception {
+        method.invoke(handler, args);
+        return handler.handled;
+    }
+
+    @Benchmark
+    public long lambdaInvoker() throws Exception {
+        lambdaInvoker.invoke(handler, args);
+        return handler.handled;
+    }
+
+    @Benchmark
+    public long methodHandleInvoker() throws Exception {
+        methodHandleInvoker.invoke(hiddenHandler, args);
+        return hiddenHandler.handled;
+    }
+
+    public static class OrderHandler {
+        private long handled;
+
+        public void onOrder(OrderPayload payload, String key) {
+            handled += key.length();
+        }
+    }
+
+    static class HiddenOrderHandler {
+        private long handled;
+
+        public void onOrder(OrderPayload payload, String key) {
+            handled += key.length();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.xiaofa.pulsar.benchmark;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@code MessageVo}-like payload with nested items and the date types handled by the custom serializers.
+ * @author pig
+ */
+@Data
+public class OrderPayload {
+    private String orderNo;
+    private long userId;
+    private String status;
+    private BigDecimal amount;
+    private LocalDate bizDate;
+    private LocalDateTime createTime;
+    private List<Item> items;
+
+    @Data
+    public static class Item {
+        private String sku;
+        private String title;
+        private int quantity;
+        private BigDecimal price;
+    }
+
+    public static OrderPayload sample(int itemCount) {
+        OrderPayload payload = new OrderPayload();
+        payload.setOrderNo("SO202008070000123456");
+        payload.setUserId(100200300L);
+        payload.setStatus("PAID");
+        payload.setAmount(new BigDecimal("1024.50"));
+        payload.setBizDate(LocalDate.of(2020, 8, 7));
+        payload.setCreateTime(LocalDateTime.of(2020, 8, 7, 17, 45, 0));
+        List<Item> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            Item item = new Item();
+            item.setSku("SKU-" + i);
+            item.setTitle("hello pulsar, index is " + i);
+            item.setQuantity(i + 1);
+            item.setPrice(new BigDecimal("51.20"));
+            items.add(item);
+        }
+        payload.setItems(items);
+        return payload;
+    }
+}
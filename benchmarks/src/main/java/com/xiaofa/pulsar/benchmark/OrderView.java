@@ -0,0 +1,22 @@
+package com.xiaofa.pulsar.benchmark;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The consumer side of {@link OrderPayload}: {@code JsonUtil} only registers serializers for the date types,
+ * so listeners read them back as text.
+ * @author pig
+ */
+@Data
+public class OrderView {
+    private String orderNo;
+    private long userId;
+    private String status;
+    private BigDecimal amount;
+    private String bizDate;
+    private String createTime;
+    private List<OrderPayload.Item> items;
+}
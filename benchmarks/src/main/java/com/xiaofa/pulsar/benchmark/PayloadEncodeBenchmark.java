@@ -0,0 +1,52 @@
+package com.xiaofa.pulsar.benchmark;
+
+import com.xiaofa.pulsar.codec.JsonPayloadCodec;
+import com.xiaofa.pulsar.codec.PayloadCodec;
+import com.xiaofa.pulsar.utils.JsonUtil;
+import org.apache.pulsar.client.api.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding cost of a message payload before it reaches the producer.
+ * {@code stringSchema} is the old {@code send(JsonUtil.toJson(obj))} path through {@code Schema.STRING},
+ * {@code jsonCodec} is the typed {@code send(T)} path through {@link JsonPayloadCodec}.
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm}.
+ * @author pig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PayloadEncodeBenchmark {
+    private final PayloadCodec codec = new JsonPayloadCodec();
+    private final Schema<String> stringSchema = Schema.STRING;
+    private OrderPayload payload;
+
+    @Setup
+    public void setup() {
+        payload = OrderPayload.sample(20);
+    }
+
+    @Benchmark
+    public byte[] stringSchema() {
+        return stringSchema.encode(JsonUtil.toJson(payload));
+    }
+
+    @Benchmark
+    public byte[] jsonCodec() {
+        return codec.encode(payload);
+    }
+}
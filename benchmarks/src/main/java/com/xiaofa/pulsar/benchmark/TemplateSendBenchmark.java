@@ -0,0 +1,94 @@
+package com.xiaofa.pulsar.benchmark;
+
+import com.xiaofa.pulsar.client.PulsarTemplate;
+import com.xiaofa.pulsar.codec.JsonPayloadCodec;
+import com.xiaofa.pulsar.config.PulsarConfiguration;
+import com.xiaofa.pulsar.inmemory.InMemoryPulsarClient;
+import com.xiaofa.pulsar.utils.JsonUtil;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building and sending a message through {@link PulsarTemplate} against the in-memory client,
+ * so the broker round trip is left out: topic resolution, producer lookup, payload encoding and message building.
+ * {@code builderSend} is {@code createBuilder()...send(String)}, {@code builderSendPayload} the typed
+ * {@code send(T)}, {@code builderSendAsync} the async variant and {@code senderSendAsync} the cached
+ * {@link PulsarTemplate.TopicSender}. {@code items} sets the payload size, from about 300 bytes to 30 KB.
+ * @author pig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateSendBenchmark {
+    private static final String TOPIC = "product-update";
+
+    @Param({"1", "20", "200"})
+    private int items;
+
+    private InMemoryPulsarClient pulsarClient;
+    private PulsarTemplate pulsarTemplate;
+    private PulsarTemplate.TopicSender sender;
+    private OrderPayload payload;
+    private String json;
+
+    @Setup
+    public void setup() {
+        PulsarConfiguration pulsarProperties = new PulsarConfiguration();
+        pulsarProperties.setServiceUrl("pulsar://127.0.0.1:6650");
+        pulsarProperties.setTenancy("GEO_shopline");
+        pulsarProperties.setNamespace("GEO_EC_product");
+        // nothing subscribes, messages are dropped once appended
+        pulsarProperties.getClient().setInMemoryRetention(0);
+        pulsarClient = new InMemoryPulsarClient(pulsarProperties.getClient());
+        pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(),
+                new StandardEnvironment());
+        sender = pulsarTemplate.sender(TOPIC);
+        payload = OrderPayload.sample(items);
+        json = JsonUtil.toJson(payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pulsarClient.close();
+    }
+
+    @Benchmark
+    public Map<String, MessageId> builderSend() throws PulsarClientException {
+        return pulsarTemplate.createBuilder().topics(TOPIC).send(json);
+    }
+
+    @Benchmark
+    public Map<String, MessageId> builderSendPayload() throws PulsarClientException {
+        return pulsarTemplate.createBuilder().topics(TOPIC).send(payload);
+    }
+
+    @Benchmark
+    public Map<String, CompletableFuture<MessageId>> builderSendAsync() throws PulsarClientException {
+        return pulsarTemplate.createBuilder().topics(TOPIC).sendAsync(json);
+    }
+
+    @Benchmark
+    public CompletableFuture<MessageId> senderSendAsync() {
+        return sender.sendAsync(payload);
+    }
+}
@@ -0,0 +1,62 @@
+package com.xiaofa.pulsar.benchmark;
+
+import com.xiaofa.pulsar.beans.TopicNameComponent;
+import com.xiaofa.pulsar.utils.PulsarUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link PulsarUtils#getActualTopic} on every send and subscription.
+ * {@code sameTopic} resolves one topic over and over, {@code rotatingTopics} walks 1000 topics of one namespace,
+ * {@code format} is the plain concatenation the cache replaces.
+ * @author pig
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TopicResolutionBenchmark {
+    private static final int TOPICS = 1000;
+
+    private final TopicNameComponent topicNameComponent = new TopicNameComponent();
+    private final String[] topics = new String[TOPICS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        topicNameComponent.setTenancy("GEO_shopline");
+        topicNameComponent.setNamespace("GEO_EC_product");
+        topicNameComponent.setPersistent(true);
+        for (int i = 0; i < TOPICS; i++) {
+            topics[i] = "product-update-" + i;
+        }
+    }
+
+    @Benchmark
+    public String sameTopic() {
+        return PulsarUtils.getActualTopic(topicNameComponent, topics[0]);
+    }
+
+    @Benchmark
+    public String rotatingTopics() {
+        next = (next + 1) % TOPICS;
+        return PulsarUtils.getActualTopic(topicNameComponent, topics[next]);
+    }
+
+    @Benchmark
+    public String format() {
+        return "persistent://" + topicNameComponent.getTenancy() + '/' + topicNameComponent.getNamespace() + '/' + topics[0];
+    }
+}
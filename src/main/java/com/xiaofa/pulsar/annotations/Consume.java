@@ -1,5 +1,6 @@
 package com.xiaofa.pulsar.annotations;
 
+import com.xiaofa.pulsar.listener.MessageKeyExtractor;
 import org.apache.pulsar.client.api.Consumer;
 import org.apache.pulsar.client.api.Message;
 import org.apache.pulsar.client.api.SubscriptionMode;
@@ -107,13 +108,20 @@ public @interface Consume {
     /**
      * Set the delay to wait before re-delivering messages that have failed to be process.
      *
-     * <p>When application uses {@link Consumer#negativeAcknowledge(Message)}, the failed message
-     * will be redelivered after a fixed timeout. The default is 1 min.
+     * <p>When {@code handle} throws, the failed message is negatively acknowledged and redelivered
+     * after this delay, doubled with every redelivery of the same message. The default is 1s.
 
      * @return the consumer builder instance
      * @see Consumer#negativeAcknowledge(Message)
      */
     long negativeAckRedeliveryDelay() default 0;
+    /**
+     * Maximum delay in milliseconds before a failed message is redelivered, never more than the ack timeout.
+     * The default is 60s.
+     *
+     * @return the max redelivery delay
+     */
+    long negativeAckMaxRedeliveryDelay() default 0;
     /**
      * Set the consumer name.
      *
@@ -130,4 +138,102 @@ public @interface Consume {
      * @return the interceptors
      */
     Class<?>[] consumerInterceptors() default {};
+
+    /**
+     * Key_Shared policy used when the subscription type is Key_Shared, AUTO_SPLIT or STICKY.
+     * @return the key shared mode
+     */
+    String keySharedPolicy() default "";
+
+    /**
+     * Hash ranges owned by this consumer in STICKY mode, e.g. {"0-32767"}.
+     * @return the sticky hash ranges
+     */
+    String[] stickyHashRanges() default {};
+
+    /**
+     * Whether Key_Shared may deliver messages out of order while consumers join or leave,
+     * trading strict ordering for not stalling the subscription.
+     * @return true or false
+     */
+    String allowOutOfOrderDelivery() default "";
+
+    /**
+     * Maximum number of messages per batch of a sync or batch consumer.
+     * @return the max messages
+     */
+    int batchReceiveMaxMessages() default 0;
+
+    /**
+     * Maximum size in bytes of a batch of a sync or batch consumer.
+     * @return the max bytes
+     */
+    int batchReceiveMaxBytes() default 0;
+
+    /**
+     * Maximum time in milliseconds to wait for a batch to fill up before it is handed over.
+     * @return the batch timeout
+     */
+    int batchReceiveTimeout() default 0;
+
+    /**
+     * How the poll loop of this binding runs when it is consumed synchronously, POOL, DEDICATED or VIRTUAL.
+     * @return the executor mode
+     */
+    String executorMode() default "";
+
+    /**
+     * Number of ordered lanes the messages are processed by, dispatched by hash of the ordering key.
+     * Messages of the same key are handled strictly in order, different keys in parallel.
+     * @return the number of lanes
+     */
+    int concurrency() default 0;
+
+    /**
+     * Capacity of each lane, a full lane blocks the consumer.
+     * @return the lane queue size
+     */
+    int laneQueueSize() default 0;
+
+    /**
+     * Extracts the ordering key of the lanes, the message key is used when empty.
+     * @return the key extractor class
+     */
+    Class<? extends MessageKeyExtractor>[] keyExtractor() default {};
+
+    /**
+     * Number of acks held before flushing them in one call, 1 acks every message right away.
+     * @return the ack group size
+     */
+    int ackGroupSize() default 0;
+
+    /**
+     * Maximum time in milliseconds an ack is held before it is sent.
+     * @return the ack group time
+     */
+    long acknowledgmentGroupTime() default 0;
+
+    /**
+     * What happens when the binding fails to subscribe at startup, FAIL, LOG or RETRY.
+     * @return the subscribe failure policy
+     */
+    String subscribeFailurePolicy() default "";
+
+    /**
+     * Maximum number of handled messages remembered to drop redelivered duplicates, 0 keeps the global setting.
+     * @return the dedup max entries
+     */
+    int dedupMaxEntries() default 0;
+
+    /**
+     * Time in milliseconds a handled message is remembered.
+     * @return the dedup ttl
+     */
+    long dedupTtl() default 0;
+
+    /**
+     * Extracts the business key duplicates are detected by, the message id is used when empty.
+     * @return the dedup key extractor class
+     */
+    Class<? extends MessageKeyExtractor>[] dedupKeyExtractor() default {};
 }
@@ -0,0 +1,15 @@
+package com.xiaofa.pulsar.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a parameter of a {@link PulsarListener} method to the message key, null when the message has none
+ * @author pig
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MessageKey {
+}
@@ -0,0 +1,19 @@
+package com.xiaofa.pulsar.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a parameter of a {@link PulsarListener} method to a property of the message, null when it is absent
+ * @author pig
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MessageProperty {
+    /**
+     * @return the property name
+     */
+    String value();
+}
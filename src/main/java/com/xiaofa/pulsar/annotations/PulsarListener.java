@@ -6,10 +6,15 @@ import java.lang.annotation.*;
 
 /**
  * Turn on message listening
+ * On a class, the class must extend one of the listener base classes.
+ * On a method of any bean, every message is handed to the method, which is acked once it returns.
+ * Its parameters receive the payload, decoded by the {@code PayloadCodec} unless it is a String or byte[],
+ * the {@link MessageKey}, {@link MessageProperties} or a {@link MessageProperty},
+ * the raw {@code Message<byte[]>} and the {@code Consumer<byte[]>}.
  * @author pig
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.TYPE)
+@Target({ElementType.TYPE, ElementType.METHOD})
 @Inherited
 @Component
 public @interface PulsarListener {
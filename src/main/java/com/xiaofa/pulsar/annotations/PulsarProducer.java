@@ -0,0 +1,107 @@
+package com.xiaofa.pulsar.annotations;
+
+import org.apache.pulsar.client.api.MessageRouter;
+
+import java.lang.annotation.*;
+
+/**
+ * Per-topic producer settings, declared on the bean that sends to the topics.
+ * Unset attributes fall back to {@code pulsar.producer.*}, and properties under
+ * {@code pulsar.producer.topics.<topicName>.*} take precedence over the annotation.
+ * @author pig
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(PulsarProducers.class)
+@Documented
+public @interface PulsarProducer {
+    /**
+     * topics these settings apply to
+     * @return  the short topic names
+     */
+    String[] value();
+
+    /**
+     * Set the send timeout in milliseconds
+     * @return  the send timeout
+     */
+    int sendTimeout() default 0;
+
+    /**
+     * Control whether automatic batching of messages is enabled for the producer.
+     * @return  true or false
+     */
+    String enableBatching() default "";
+
+    /**
+     * Set whether send operations should block when the outgoing message queue is full.
+     * @return  true or false
+     */
+    String blockIfQueueFull() default "";
+
+    /**
+     * Set the time period within which the messages sent will be batched, in milliseconds.
+     * @return  the batching max publish delay
+     */
+    long batchingMaxPublishDelay() default 0;
+
+    /**
+     * Set the maximum number of messages permitted in a batch.
+     * @return  the batching max messages
+     */
+    int batchingMaxMessages() default 0;
+
+    /**
+     * Set the maximum number of bytes permitted in a batch.
+     * @return  the batching max bytes
+     */
+    int batchingMaxBytes() default 0;
+
+    /**
+     * Set the max size of the queue holding the messages pending to receive an acknowledgment from the broker.
+     * @return  the max pending messages
+     */
+    int maxPendingMessages() default 0;
+
+    /**
+     * Set the number of max pending messages across all the partitions.
+     * @return  the max pending messages across partitions
+     */
+    int maxPendingMessagesAcrossPartitions() default 0;
+
+    /**
+     * Set the compression type for the producer, NONE, LZ4, ZLIB, ZSTD or SNAPPY.
+     * @return  the compression type
+     */
+    String compressionType() default "";
+
+    /**
+     * Set the message routing mode for the partitioned producer.
+     * @return  the message routing mode
+     */
+    String messageRoutingMode() default "";
+
+    /**
+     * Set the hashing scheme used to choose the partition, JavaStringHash or Murmur3_32Hash.
+     * @return  the hashing scheme
+     */
+    String hashingScheme() default "";
+
+    /**
+     * Custom message router, implies the CustomPartition routing mode.
+     * @return  the message router class
+     */
+    Class<? extends MessageRouter>[] messageRouter() default {};
+
+    /**
+     * Whether batches are grouped by message key.
+     * @return  true or false
+     */
+    String keyBasedBatching() default "";
+
+    /**
+     * Create the producers of these topics at startup instead of on first send.
+     * @return  true or false
+     */
+    boolean warmUp() default false;
+}
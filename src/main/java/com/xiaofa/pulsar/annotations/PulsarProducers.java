@@ -0,0 +1,14 @@
+package com.xiaofa.pulsar.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Container of repeated {@link PulsarProducer} declarations
+ * @author pig
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+public @interface PulsarProducers {
+    PulsarProducer[] value();
+}
@@ -0,0 +1,69 @@
+package com.xiaofa.pulsar.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregate result of a bulk send, collects the failed messages instead of stopping at the first error.
+ * @author pig
+ */
+@ToString
+public class BulkSendResult {
+    private final AtomicLong succeeded = new AtomicLong();
+    private final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+    @Getter
+    private long elapsed;
+
+    public void success() {
+        succeeded.incrementAndGet();
+    }
+
+    public void failure(long index, String topic, Throwable cause) {
+        failures.add(new Failure(index, topic, cause));
+    }
+
+    public void complete(long elapsed) {
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return the number of messages acknowledged by the broker, counted once per topic
+     */
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    /**
+     * @return the failed messages
+     */
+    public List<Failure> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures);
+        }
+    }
+
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class Failure {
+        /**
+         * position of the message in the source iterable
+         */
+        private final long index;
+        /**
+         * the fully-qualified topic, null if the message could not be encoded
+         */
+        private final String topic;
+        private final Throwable cause;
+    }
+}
@@ -0,0 +1,55 @@
+package com.xiaofa.pulsar.beans;
+
+import lombok.ToString;
+import org.apache.pulsar.client.api.MessageId;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Result of a fan-out send, keyed by fully-qualified topic.
+ * In {@code ANY} and {@code QUORUM} mode the remaining topics keep sending after completion
+ * and show up in the live views returned by {@link #getAcked()} and {@link #getFailed()}.
+ * @author pig
+ */
+@ToString
+public class FanoutResult {
+    private final int topics;
+    private final Map<String, MessageId> acked = new ConcurrentHashMap<>();
+    private final Map<String, Throwable> failed = new ConcurrentHashMap<>();
+
+    public FanoutResult(int topics) {
+        this.topics = topics;
+    }
+
+    public void acked(String topic, MessageId messageId) {
+        acked.put(topic, messageId);
+    }
+
+    public void failed(String topic, Throwable cause) {
+        failed.put(topic, cause);
+    }
+
+    /**
+     * @return the number of target topics
+     */
+    public int getTopics() {
+        return topics;
+    }
+
+    public Map<String, MessageId> getAcked() {
+        return Collections.unmodifiableMap(acked);
+    }
+
+    public Map<String, Throwable> getFailed() {
+        return Collections.unmodifiableMap(failed);
+    }
+
+    /**
+     * @return true once every target topic has acked the message
+     */
+    public boolean isAllAcked() {
+        return acked.size() == topics;
+    }
+}
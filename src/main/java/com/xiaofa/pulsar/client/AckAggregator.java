@@ -0,0 +1,239 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.listener.AckGroupingListener;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the acks of one consumer and flushes them asynchronously once {@code maxBatch} acks are held
+ * or every flush interval, whichever comes first.
+ * Shared and Key_Shared subscriptions flush with one {@link Consumer#acknowledgeAsync(Messages)} call.
+ * Exclusive and Failover subscriptions ack cumulatively: every message is tracked in delivery order
+ * per topic, and the cumulative position only moves past a message once all preceding ones are acked,
+ * so messages completing out of order or left for redelivery are never acked by accident.
+ * A message left unacked and not redelivered for {@code staleAfter} was acked elsewhere, e.g. sent to the
+ * dead letter topic, since the ack timeout would have redelivered it otherwise: it stops holding the position back.
+ * Ack failures are reported once per flush to {@link AckGroupingListener#onAckFailure(Consumer, List, Throwable)}.
+ * @param <T> the message type of the consumer
+ * @author pig
+ */
+@Slf4j
+public class AckAggregator<T> {
+    private final AckGroupingListener<T> owner;
+    private final int maxBatch;
+    private final boolean cumulative;
+    private final long staleAfter;
+    private final ScheduledFuture<?> flushTask;
+    private volatile Consumer<T> consumer;
+
+    private List<Message<T>> pending = new ArrayList<>();
+    private final Map<String, LinkedHashMap<MessageId, Delivery<T>>> delivered = new HashMap<>();
+    private Map<String, Message<T>> cumulativePending = new HashMap<>();
+    private int pendingCount;
+
+    /**
+     * @param owner the listener whose acks are grouped
+     * @param maxBatch  the number of held acks that triggers a flush
+     * @param flushInterval the maximum time in milliseconds an ack is held
+     * @param cumulative    whether acks are cumulative, only valid for Exclusive and Failover subscriptions
+     * @param staleAfter    the time in milliseconds after which an unacked message no longer holds cumulative acks back,
+     *                      0 to wait for every message
+     * @param timer the scheduler running the periodic flush
+     */
+    AckAggregator(AckGroupingListener<T> owner, int maxBatch, long flushInterval, boolean cumulative,
+            long staleAfter, ScheduledExecutorService timer) {
+        this.owner = owner;
+        this.maxBatch = maxBatch;
+        this.cumulative = cumulative;
+        this.staleAfter = staleAfter;
+        this.flushTask = timer.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wrap the first listener of the consumer. The aggregator is registered on the owner
+     * before the first message is handed over, and cumulative acks learn the delivery order.
+     * @param listener  the listener receiving the consumer's messages
+     * @return  the wrapping listener
+     */
+    MessageListener<T> wrap(MessageListener<T> listener) {
+        return new MessageListener<T>() {
+            @Override
+            public void received(Consumer<T> consumer, Message<T> message) {
+                if(AckAggregator.this.consumer == null) {
+                    AckAggregator.this.consumer = consumer;
+                    owner.registerAckAggregator(consumer, AckAggregator.this);
+                }
+                if(cumulative) {
+                    track(message);
+                }
+                listener.received(consumer, message);
+            }
+
+            @Override
+            public void reachedEndOfTopic(Consumer<T> consumer) {
+                listener.reachedEndOfTopic(consumer);
+            }
+        };
+    }
+
+    /**
+     * Record the delivery of a message, in the order the consumer delivered it.
+     * A redelivered message keeps its place and restarts its stale timer.
+     * @param message   the delivered message
+     */
+    synchronized void track(Message<T> message) {
+        Delivery<T> delivery = delivered.computeIfAbsent(message.getTopicName(), topic -> new LinkedHashMap<>())
+                .computeIfAbsent(message.getMessageId(), messageId -> new Delivery<>());
+        delivery.time = System.currentTimeMillis();
+    }
+
+    /**
+     * @return  the number of messages tracked for cumulative acks
+     */
+    synchronized int getTracked() {
+        int tracked = 0;
+        for(LinkedHashMap<MessageId, Delivery<T>> topicDelivered : delivered.values()) {
+            tracked += topicDelivered.size();
+        }
+        return tracked;
+    }
+
+    /**
+     * Ack the message, the ack is sent with the next flush.
+     * @param message   the handled message
+     */
+    public void acknowledge(Message<T> message) {
+        boolean full;
+        synchronized (this) {
+            LinkedHashMap<MessageId, Delivery<T>> topicDelivered = cumulative ?
+                    delivered.get(message.getTopicName()) : null;
+            Delivery<T> delivery = topicDelivered != null ? topicDelivered.get(message.getMessageId()) : null;
+            if(delivery != null) {
+                delivery.acked = message;
+                advance(message.getTopicName(), topicDelivered, System.currentTimeMillis());
+            } else {
+                pending.add(message);
+            }
+            full = ++pendingCount >= maxBatch;
+        }
+        if(full) {
+            flush();
+        }
+    }
+
+    /**
+     * Move the cumulative position of the topic past the acked messages at the head, and past stale ones
+     * @return  whether the position moved
+     */
+    private boolean advance(String topic, LinkedHashMap<MessageId, Delivery<T>> topicDelivered, long now) {
+        Message<T> position = null;
+        int expired = 0;
+        Iterator<Delivery<T>> iterator = topicDelivered.values().iterator();
+        while(iterator.hasNext()) {
+            Delivery<T> delivery = iterator.next();
+            if(delivery.acked != null) {
+                position = delivery.acked;
+            } else if(staleAfter > 0 && now - delivery.time >= staleAfter) {
+                expired++;
+            } else {
+                break;
+            }
+            iterator.remove();
+        }
+        if(expired > 0) {
+            log.warn("[Pulsar] {} messages not acked for {} ms stop holding cumulative acks back, topic: {}",
+                    expired, staleAfter, topic);
+        }
+        if(position != null) {
+            cumulativePending.put(topic, position);
+        }
+        return position != null;
+    }
+
+    /**
+     * Send the held acks, after moving the cumulative positions past the stale messages.
+     */
+    public void flush() {
+        List<Message<T>> individual;
+        Map<String, Message<T>> positions;
+        Consumer<T> consumer = this.consumer;
+        synchronized (this) {
+            if(staleAfter > 0) {
+                long now = System.currentTimeMillis();
+                for(Map.Entry<String, LinkedHashMap<MessageId, Delivery<T>>> entry : delivered.entrySet()) {
+                    if(advance(entry.getKey(), entry.getValue(), now)) {
+                        pendingCount++;
+                    }
+                }
+            }
+            if(pendingCount == 0 || consumer == null) {
+                return;
+            }
+            individual = pending;
+            positions = cumulativePending;
+            pending = new ArrayList<>();
+            cumulativePending = new HashMap<>();
+            pendingCount = 0;
+        }
+        if(!individual.isEmpty()) {
+            consumer.acknowledgeAsync(new MessageList<>(individual)).whenComplete((v, e) -> {
+                if(e != null) {
+                    owner.onAckFailure(consumer, individual, e);
+                }
+            });
+        }
+        for(Message<T> position : positions.values()) {
+            consumer.acknowledgeCumulativeAsync(position).whenComplete((v, e) -> {
+                if(e != null) {
+                    owner.onAckFailure(consumer, Collections.singletonList(position), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop the periodic flush and send the held acks.
+     */
+    public void close() {
+        flushTask.cancel(false);
+        flush();
+    }
+
+    private static class Delivery<T> {
+        private long time;
+        private Message<T> acked;
+    }
+
+    private static class MessageList<T> implements Messages<T> {
+        private final List<Message<T>> messages;
+
+        private MessageList(List<Message<T>> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public int size() {
+            return messages.size();
+        }
+
+        @Override
+        public Iterator<Message<T>> iterator() {
+            return messages.iterator();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.listener.BatchConsumerMessageListener;
+import com.xiaofa.pulsar.listener.ConsumerMessageListener;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.PulsarClientException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Poll loop of a sync consumer.
+ * Messages are fetched with {@link Consumer#batchReceive()} following the consumer's batch receive policy,
+ * then handed to a {@link BatchConsumerMessageListener} as a whole, or one by one to a {@link ConsumerMessageListener}.
+ * {@link #run()} is a blocking loop that owns its thread, {@link #pollAsync(Executor)} chains one short task
+ * per batch on a shared executor instead. Either ends once the consumer is closed, the blocking loop also
+ * ends when its thread is interrupted.
+ * @author pig
+ */
+@Slf4j
+class ConsumerPoller<T> implements Runnable {
+    private final Consumer<T> consumer;
+    private final java.util.function.Consumer<Messages<T>> dispatcher;
+
+    ConsumerPoller(Consumer<T> consumer, MessageListener<T> messageListener) {
+        this.consumer = consumer;
+        this.dispatcher = messages -> dispatch(messageListener, messages);
+    }
+
+    private ConsumerPoller(Consumer<T> consumer, java.util.function.Consumer<Messages<T>> dispatcher) {
+        this.consumer = consumer;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Create the poller of a batch listener, whole batches are handed over.
+     * Handler failures are logged and the batch is negatively acknowledged with the backoff.
+     * @param memoryBudget  charged with each batch while it is handled, null when disabled
+     * @param inFlightTracker   counts each batch while it is handled, batches received once it is closed are dropped
+     * @param redeliveryBackoff delays the redelivery of failed batches
+     */
+    static ConsumerPoller<String> ofBatch(Consumer<String> consumer, BatchConsumerMessageListener batchMessageListener,
+            String bindingName, MemoryBudget memoryBudget, InFlightTracker inFlightTracker,
+            RedeliveryBackoff redeliveryBackoff) {
+        return new ConsumerPoller<>(consumer, messages -> {
+            long receivedAt = System.currentTimeMillis();
+            if(!inFlightTracker.enter()) {
+                return;
+            }
+            Runnable handler = () -> {
+                try {
+                    batchMessageListener.received(consumer, messages);
+                } catch (RuntimeException e) {
+                    log.error("[Pulsar] handle batch failed, topic: {}, size: {}",
+                            consumer.getTopic(), messages.size(), e);
+                    redeliveryBackoff.negativeAcknowledge(consumer, messages, receivedAt);
+                }
+            };
+            try {
+                if(memoryBudget != null) {
+                    memoryBudget.charge(bindingName, consumer, messages, handler);
+                } else {
+                    handler.run();
+                }
+            } finally {
+                inFlightTracker.exit();
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while(!Thread.currentThread().isInterrupted()) {
+            Messages<T> messages;
+            try {
+                messages = consumer.batchReceive();
+            } catch (PulsarClientException.AlreadyClosedException e) {
+                break;
+            } catch (PulsarClientException e) {
+                if(e.getCause() instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                log.error("[Pulsar] sync consume message failed, topic: {}", consumer.getTopic(), e);
+                continue;
+            }
+            if(messages == null || messages.size() == 0) {
+                continue;
+            }
+            dispatcher.accept(messages);
+        }
+        log.info("[Pulsar] stop polling, topic: {}", consumer.getTopic());
+    }
+
+    /**
+     * Poll without holding a thread between batches, every batch is handled by a new task on the executor.
+     * @param executor  the executor running the handlers
+     */
+    void pollAsync(Executor executor) {
+        consumer.batchReceiveAsync().whenCompleteAsync((messages, e) -> {
+            if(e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if(cause instanceof PulsarClientException.AlreadyClosedException) {
+                    log.info("[Pulsar] stop polling, topic: {}", consumer.getTopic());
+                    return;
+                }
+                log.error("[Pulsar] sync consume message failed, topic: {}", consumer.getTopic(), cause);
+            } else if(messages != null && messages.size() > 0) {
+                dispatcher.accept(messages);
+            }
+            try {
+                pollAsync(executor);
+            } catch (RejectedExecutionException rejected) {
+                log.info("[Pulsar] stop polling, executor shut down, topic: {}", consumer.getTopic());
+            }
+        }, executor);
+    }
+
+    /**
+     * Handler failures are negatively acknowledged by the listener chain through {@link RedeliveryBackoff},
+     * redelivered with an exponential delay. Failures escaping the chain are only logged,
+     * those messages stay unacked and are redelivered after the ack timeout.
+     */
+    private void dispatch(MessageListener<T> messageListener, Messages<T> messages) {
+        for(Message<T> message : messages) {
+            try {
+                messageListener.received(consumer, message);
+            } catch (RuntimeException e) {
+                log.error("[Pulsar] handle message failed, topic: {}, messageId: {}",
+                        message.getTopicName(), message.getMessageId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.listener.MessageKeyExtractor;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, TTL-based set of the messages a binding has already handled, used to drop redelivered duplicates.
+ * Keys are 64-bit hashes of the message id or of a business key, stored in primitive open-addressing tables,
+ * about 17 bytes per entry, split in segments locked independently. Once a segment is full, the CLOCK
+ * hand evicts the first entry that is expired or has not been seen again since the hand last passed.
+ * Two distinct keys sharing a 64-bit hash are taken for duplicates, which is negligible below billions of entries.
+ * @author pig
+ */
+public class DedupCache {
+    private static final int SEGMENTS = 16;
+    private static final int SNAPSHOT_MAGIC = 0x50444450;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttl;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries    the maximum number of remembered keys
+     * @param ttl   the time in milliseconds a key is remembered
+     */
+    public DedupCache(int maxEntries, long ttl) {
+        this(maxEntries, ttl, System::currentTimeMillis);
+    }
+
+    DedupCache(int maxEntries, long ttl, LongSupplier clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+        int segmentEntries = Math.max((maxEntries + SEGMENTS - 1) / SEGMENTS, 1);
+        for(int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentEntries);
+        }
+    }
+
+    /**
+     * Wrap the listener handling the messages. Duplicates are acked without being handed over,
+     * the key of a message is remembered once the listener returned without failing.
+     * @param listener  the listener handling the messages
+     * @param keyExtractor  extracts the business key, null or a null key falls back to the message id
+     * @param duplicateAck  acks a dropped duplicate
+     * @return  the wrapping listener
+     */
+    <T> MessageListener<T> wrap(MessageListener<T> listener, MessageKeyExtractor keyExtractor,
+            BiConsumer<Consumer<T>, Message<T>> duplicateAck) {
+        return new MessageListener<T>() {
+            @Override
+            public void received(Consumer<T> consumer, Message<T> message) {
+                String businessKey = keyExtractor != null ? keyExtractor.extract(message) : null;
+                long key = businessKey != null ? hash(businessKey) : hash(message.getMessageId().toByteArray());
+                if(contains(key)) {
+                    duplicateAck.accept(consumer, message);
+                    return;
+                }
+                listener.received(consumer, message);
+                add(key);
+            }
+
+            @Override
+            public void reachedEndOfTopic(Consumer<T> consumer) {
+                listener.reachedEndOfTopic(consumer);
+            }
+        };
+    }
+
+    /**
+     * @param key   the hashed key
+     * @return  true if the key is remembered, counted as a hit, otherwise as a miss
+     */
+    public boolean contains(long key) {
+        boolean found = segmentOf(key).contains(nonZero(key), clock.getAsLong());
+        (found ? hits : misses).increment();
+        return found;
+    }
+
+    /**
+     * Remember the key for the TTL
+     * @param key   the hashed key
+     */
+    public void add(long key) {
+        long now = clock.getAsLong();
+        segmentOf(key).add(nonZero(key), now + ttl, now);
+    }
+
+    /**
+     * @return the number of remembered keys, expired ones included until they are evicted
+     */
+    public int size() {
+        int size = 0;
+        for(Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of duplicates found
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of keys looked up and not found
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of keys evicted before they expired
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Write the unexpired keys to the file, replacing it atomically
+     * @param file  the snapshot file
+     * @return  the number of keys written
+     * @throws IOException  write error
+     */
+    public int save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("can not create " + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        long now = clock.getAsLong();
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            for(Segment segment : segments) {
+                synchronized (segment) {
+                    for(int i = 0; i < segment.keys.length; i++) {
+                        if(segment.keys[i] != 0 && segment.expires[i] > now) {
+                            out.writeLong(segment.keys[i]);
+                            out.writeLong(segment.expires[i]);
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Remember the unexpired keys of the snapshot file, if it exists
+     * @param file  the snapshot file
+     * @return  the number of keys loaded
+     * @throws IOException  read error or not a snapshot
+     */
+    public int load(File file) throws IOException {
+        if(!file.isFile()) {
+            return 0;
+        }
+        long now = clock.getAsLong();
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("not a dedup snapshot: " + file);
+            }
+            while(true) {
+                long key;
+                long expiresAt;
+                try {
+                    key = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                expiresAt = in.readLong();
+                if(key != 0 && expiresAt > now) {
+                    segmentOf(key).add(key, expiresAt, now);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer
+     */
+    static long hash(byte[] data) {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : data) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * 0 marks the empty slots
+     */
+    private static long nonZero(long key) {
+        return key != 0 ? key : 1;
+    }
+
+    private Segment segmentOf(long key) {
+        return segments[(int) (key >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private final class Segment {
+        private final long[] keys;
+        private final long[] expires;
+        private final boolean[] referenced;
+        private final int maxSize;
+        private final int mask;
+        private int size;
+        private int hand;
+
+        private Segment(int maxSize) {
+            int capacity = Integer.highestOneBit(Math.max(maxSize * 4 / 3, 2) - 1) << 1;
+            this.keys = new long[capacity];
+            this.expires = new long[capacity];
+            this.referenced = new boolean[capacity];
+            this.maxSize = maxSize;
+            this.mask = capacity - 1;
+        }
+
+        private synchronized boolean contains(long key, long now) {
+            for(int i = indexOf(key); keys[i] != 0; i = (i + 1) & mask) {
+                if(keys[i] == key) {
+                    if(expires[i] > now) {
+                        referenced[i] = true;
+                        return true;
+                    }
+                    removeAt(i);
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        private synchronized void add(long key, long expiresAt, long now) {
+            int i = indexOf(key);
+            for(; keys[i] != 0; i = (i + 1) & mask) {
+                if(keys[i] == key) {
+                    expires[i] = Math.max(expires[i], expiresAt);
+                    return;
+                }
+            }
+            if(size >= maxSize) {
+                evict(now);
+                for(i = indexOf(key); keys[i] != 0; i = (i + 1) & mask) {
+                    // find the free slot again, eviction may have shifted the probe sequence
+                }
+            }
+            keys[i] = key;
+            expires[i] = expiresAt;
+            referenced[i] = false;
+            size++;
+        }
+
+        /**
+         * Advance the CLOCK hand to the first expired or unreferenced entry and remove it,
+         * clearing the reference bits it passes
+         */
+        private void evict(long now) {
+            while(true) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+                if(keys[i] == 0) {
+                    continue;
+                }
+                if(expires[i] <= now || !referenced[i]) {
+                    if(expires[i] > now) {
+                        evictions.increment();
+                    }
+                    removeAt(i);
+                    return;
+                }
+                referenced[i] = false;
+            }
+        }
+
+        /**
+         * Backward-shift deletion, keeps the probe sequences of linear probing intact without tombstones
+         */
+        private void removeAt(int i) {
+            int j = i;
+            while(true) {
+                j = (j + 1) & mask;
+                if(keys[j] == 0) {
+                    break;
+                }
+                int home = indexOf(keys[j]);
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if(!stays) {
+                    keys[i] = keys[j];
+                    expires[i] = expires[j];
+                    referenced[i] = referenced[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            referenced[i] = false;
+            size--;
+        }
+
+        private int indexOf(long key) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.xiaofa.pulsar.client;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+
+/**
+ * Counts the messages being handled by the listeners, so that shutdown can wait for them.
+ * Once closed, new messages are no longer handed over: they stay unacked and are redelivered
+ * to the remaining consumers as soon as their consumer is closed, instead of after the ack timeout.
+ * @author pig
+ */
+class InFlightTracker {
+    private int inFlight;
+    private boolean closed;
+
+    /**
+     * @param outer the first listener of the consumer
+     * @return  the listener counting a message in, or dropping it once closed
+     */
+    <T> MessageListener<T> entering(MessageListener<T> outer) {
+        return new MessageListener<T>() {
+            @Override
+            public void received(Consumer<T> consumer, Message<T> message) {
+                if(enter()) {
+                    outer.received(consumer, message);
+                }
+            }
+
+            @Override
+            public void reachedEndOfTopic(Consumer<T> consumer) {
+                outer.reachedEndOfTopic(consumer);
+            }
+        };
+    }
+
+    /**
+     * @param inner the listener handling the message
+     * @return  the listener counting a message out once handled
+     */
+    <T> MessageListener<T> leaving(MessageListener<T> inner) {
+        return new MessageListener<T>() {
+            @Override
+            public void received(Consumer<T> consumer, Message<T> message) {
+                try {
+                    inner.received(consumer, message);
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public void reachedEndOfTopic(Consumer<T> consumer) {
+                inner.reachedEndOfTopic(consumer);
+            }
+        };
+    }
+
+    /**
+     * @return false once closed, the message must not be handled
+     */
+    synchronized boolean enter() {
+        if(closed) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void exit() {
+        if(--inFlight == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop handing over new messages.
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    /**
+     * Wait for the messages being handled.
+     * @param timeout   the maximum wait in milliseconds
+     * @return  the number of messages still in flight
+     */
+    synchronized int awaitIdle(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while(inFlight > 0 && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return inFlight;
+    }
+}
@@ -0,0 +1,198 @@
+package com.xiaofa.pulsar.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide byte budget of the messages received by the listeners but not handled yet.
+ * Once the usage exceeds {@code maxBytes} every registered consumer is paused with {@link Consumer#pause()},
+ * they are resumed when the usage drops below the low watermark.
+ * Only the bytes inside the listener chains are charged. The messages prefetched in the receiver queues
+ * are not, they hold up to {@code receiverQueueSize} messages per consumer on top of the budget,
+ * lower the receiver queue size to bound that part. Pausing stops new fetches only, the prefetched
+ * messages are still delivered, so the usage may overshoot by up to one receiver queue per consumer.
+ * The usage of each binding is exposed by {@link #getUsages()}, e.g. to register one gauge per binding.
+ * @author pig
+ */
+@Slf4j
+public class MemoryBudget {
+    private final long maxBytes;
+    private final long lowWatermark;
+    private final AtomicLong used = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> usages = new ConcurrentHashMap<>();
+    private final Set<Consumer<?>> consumers = ConcurrentHashMap.newKeySet();
+    private boolean paused;
+
+    /**
+     * @param maxBytes  the budget in bytes, 0 disables it
+     * @param lowWatermarkRatio the ratio of the budget below which the consumers are resumed
+     */
+    public MemoryBudget(long maxBytes, double lowWatermarkRatio) {
+        this.maxBytes = maxBytes;
+        this.lowWatermark = (long) (maxBytes * lowWatermarkRatio);
+    }
+
+    /**
+     * @return true when a budget is configured
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Wrap the listener chain of a binding, the message is charged when it enters {@code outer}
+     * and released once the listener returned from {@code inner}.
+     * @param bindingName   the binding the usage is accounted to
+     * @param outer the first listener of the consumer
+     * @return  the charging listener
+     */
+    <T> MessageListener<T> charging(String bindingName, MessageListener<T> outer) {
+        AtomicLong usage = usage(bindingName);
+        return new MessageListener<T>() {
+            @Override
+            public void received(Consumer<T> consumer, Message<T> message) {
+                register(consumer);
+                acquire(usage, message.getData().length);
+                outer.received(consumer, message);
+            }
+
+            @Override
+            public void reachedEndOfTopic(Consumer<T> consumer) {
+                outer.reachedEndOfTopic(consumer);
+            }
+        };
+    }
+
+    /**
+     * @param bindingName   the binding the usage is accounted to
+     * @param inner the listener handling the message
+     * @return  the releasing listener
+     */
+    <T> MessageListener<T> releasing(String bindingName, MessageListener<T> inner) {
+        AtomicLong usage = usage(bindingName);
+        return new MessageListener<T>() {
+            @Override
+            public void received(Consumer<T> consumer, Message<T> message) {
+                try {
+                    inner.received(consumer, message);
+                } finally {
+                    release(usage, message.getData().length);
+                }
+            }
+
+            @Override
+            public void reachedEndOfTopic(Consumer<T> consumer) {
+                inner.reachedEndOfTopic(consumer);
+            }
+        };
+    }
+
+    /**
+     * Charge a whole batch while the handler runs.
+     * @param bindingName   the binding the usage is accounted to
+     * @param consumer  the consumer of the batch
+     * @param messages  the batch
+     * @param handler   handles the batch
+     */
+    <T> void charge(String bindingName, Consumer<T> consumer, Messages<T> messages, Runnable handler) {
+        AtomicLong usage = usage(bindingName);
+        long size = 0;
+        for(Message<T> message : messages) {
+            size += message.getData().length;
+        }
+        register(consumer);
+        acquire(usage, size);
+        try {
+            handler.run();
+        } finally {
+            release(usage, size);
+        }
+    }
+
+    /**
+     * @return the bytes held by all bindings
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * @return the bytes held by each binding
+     */
+    public Map<String, Long> getUsages() {
+        Map<String, Long> snapshot = new HashMap<>();
+        usages.forEach((binding, usage) -> snapshot.put(binding, usage.get()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * @return true while the consumers are paused
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Stop pausing and resuming the consumer, called once it is closed
+     * @param consumer  the closed consumer
+     */
+    void deregister(Consumer<?> consumer) {
+        consumers.remove(consumer);
+    }
+
+    /**
+     * @return the number of consumers paused and resumed by the budget
+     */
+    int getConsumers() {
+        return consumers.size();
+    }
+
+    private AtomicLong usage(String bindingName) {
+        return usages.computeIfAbsent(bindingName, key -> new AtomicLong());
+    }
+
+    private void register(Consumer<?> consumer) {
+        if(consumers.add(consumer) && isPaused()) {
+            consumer.pause();
+        }
+    }
+
+    private void acquire(AtomicLong usage, long size) {
+        usage.addAndGet(size);
+        if(used.addAndGet(size) > maxBytes) {
+            synchronized (this) {
+                if(!paused && used.get() > maxBytes) {
+                    paused = true;
+                    log.warn("[Pulsar] memory budget exceeded, pause {} consumers, used: {} bytes",
+                            consumers.size(), used.get());
+                    consumers.forEach(Consumer::pause);
+                }
+            }
+        }
+    }
+
+    private void release(AtomicLong usage, long size) {
+        usage.addAndGet(-size);
+        if(used.addAndGet(-size) < lowWatermark) {
+            synchronized (this) {
+                if(paused && used.get() < lowWatermark) {
+                    paused = false;
+                    log.info("[Pulsar] memory budget released, resume {} consumers, used: {} bytes",
+                            consumers.size(), used.get());
+                    consumers.forEach(Consumer::resume);
+                }
+            }
+        }
+    }
+}
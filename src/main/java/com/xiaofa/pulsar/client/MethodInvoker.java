@@ -0,0 +1,163 @@
+package com.xiaofa.pulsar.client;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Invoker of a listener method, built once so that messages are not dispatched by reflection.
+ * Public methods of public classes with up to {@value #MAX_LAMBDA_ARITY} parameters are bound to a class
+ * generated by {@link LambdaMetafactory}, which the JIT inlines like a direct call.
+ * Other methods, or methods whose types the starter's class loader cannot see, go through a spread
+ * {@link MethodHandle}. The return value is discarded, exceptions of the method are thrown unwrapped.
+ * @author pig
+ */
+public abstract class MethodInvoker {
+    private static final int MAX_LAMBDA_ARITY = 4;
+
+    /**
+     * Invoke the method
+     * @param target    the bean
+     * @param args  the arguments, as many as the method has parameters
+     * @throws Exception    the exception thrown by the method
+     */
+    public abstract void invoke(Object target, Object[] args) throws Exception;
+
+    /**
+     * Build the invoker of an instance method
+     * @param method    the method
+     * @return  the invoker
+     */
+    public static MethodInvoker of(Method method) {
+        if(Modifier.isStatic(method.getModifiers())) {
+            throw new RuntimeException("[Pulsar] listener method must not be static: " + method);
+        }
+        try {
+            if(isLambdaCompatible(method)) {
+                return ofLambda(method);
+            }
+            return ofMethodHandle(method);
+        } catch (Throwable e) {
+            throw new RuntimeException("[Pulsar] can not build the invoker of " + method, e);
+        }
+    }
+
+    private static boolean isLambdaCompatible(Method method) {
+        if(method.getParameterCount() > MAX_LAMBDA_ARITY || !Modifier.isPublic(method.getModifiers())) {
+            return false;
+        }
+        ClassLoader classLoader = MethodInvoker.class.getClassLoader();
+        for(Class<?> declaring = method.getDeclaringClass(); declaring != null; declaring = declaring.getDeclaringClass()) {
+            if(!Modifier.isPublic(declaring.getModifiers())) {
+                return false;
+            }
+        }
+        if(!ClassUtils.isVisible(method.getDeclaringClass(), classLoader)) {
+            return false;
+        }
+        for(Class<?> parameterType : method.getParameterTypes()) {
+            if(!parameterType.isPrimitive() && !ClassUtils.isVisible(parameterType, classLoader)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MethodInvoker ofLambda(Method method) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle = lookup.unreflect(method);
+        int arity = method.getParameterCount();
+        Class<?> samType = new Class<?>[] {Arity0.class, Arity1.class, Arity2.class, Arity3.class, Arity4.class}[arity];
+        MethodType samMethodType = MethodType.genericMethodType(arity + 1).changeReturnType(void.class);
+        CallSite callSite = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(samType),
+                samMethodType, handle, handle.type().wrap().changeReturnType(void.class));
+        Object function = callSite.getTarget().invoke();
+        switch (arity) {
+            case 0:
+                return new MethodInvoker() {
+                    @Override
+                    public void invoke(Object target, Object[] args) {
+                        ((Arity0) function).invoke(target);
+                    }
+                };
+            case 1:
+                return new MethodInvoker() {
+                    @Override
+                    public void invoke(Object target, Object[] args) {
+                        ((Arity1) function).invoke(target, args[0]);
+                    }
+                };
+            case 2:
+                return new MethodInvoker() {
+                    @Override
+                    public void invoke(Object target, Object[] args) {
+                        ((Arity2) function).invoke(target, args[0], args[1]);
+                    }
+                };
+            case 3:
+                return new MethodInvoker() {
+                    @Override
+                    public void invoke(Object target, Object[] args) {
+                        ((Arity3) function).invoke(target, args[0], args[1], args[2]);
+                    }
+                };
+            default:
+                return new MethodInvoker() {
+                    @Override
+                    public void invoke(Object target, Object[] args) {
+                        ((Arity4) function).invoke(target, args[0], args[1], args[2], args[3]);
+                    }
+                };
+        }
+    }
+
+    private static MethodInvoker ofMethodHandle(Method method) throws IllegalAccessException {
+        ReflectionUtils.makeAccessible(method);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method);
+        MethodHandle spread = handle.asType(handle.type().generic().changeReturnType(void.class))
+                .asSpreader(Object[].class, method.getParameterCount());
+        return new MethodInvoker() {
+            @Override
+            public void invoke(Object target, Object[] args) throws Exception {
+                try {
+                    spread.invokeExact(target, args);
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new UndeclaredThrowableException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Functional interfaces implemented by the generated classes, one per arity
+     */
+    interface Arity0 {
+        void invoke(Object target);
+    }
+
+    interface Arity1 {
+        void invoke(Object target, Object a0);
+    }
+
+    interface Arity2 {
+        void invoke(Object target, Object a0, Object a1);
+    }
+
+    interface Arity3 {
+        void invoke(Object target, Object a0, Object a1, Object a2);
+    }
+
+    interface Arity4 {
+        void invoke(Object target, Object a0, Object a1, Object a2, Object a3);
+    }
+}
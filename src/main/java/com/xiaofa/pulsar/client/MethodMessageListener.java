@@ -0,0 +1,117 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.annotations.MessageKey;
+import com.xiaofa.pulsar.annotations.MessageProperties;
+import com.xiaofa.pulsar.annotations.MessageProperty;
+import com.xiaofa.pulsar.codec.PayloadCodec;
+import com.xiaofa.pulsar.codec.RawPayloads;
+import com.xiaofa.pulsar.listener.AckGroupingMessageListener;
+import com.xiaofa.pulsar.listener.DecodeErrorHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.springframework.core.MethodParameter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * Adapts a method annotated with {@link com.xiaofa.pulsar.annotations.PulsarListener} to a listener.
+ * The argument resolvers and the {@link MethodInvoker} are built once, every message is consumed as raw bytes,
+ * the payload decoded once if the method takes it, then the message is acked once the method returns.
+ * Acks are grouped like {@link com.xiaofa.pulsar.listener.ConsumerMessageListener}.
+ * @author pig
+ */
+@Slf4j
+class MethodMessageListener extends AckGroupingMessageListener<byte[]> {
+    private final Object bean;
+    private final Method method;
+    private final MethodInvoker invoker;
+    private final ArgumentResolver[] argumentResolvers;
+    private final PayloadDecoder payloadDecoder;
+    private final DecodeErrorHandler decodeErrorHandler;
+
+    /**
+     * @param bean  the bean declaring the method
+     * @param method    the method, invocable on the bean
+     */
+    MethodMessageListener(Object bean, Method method, PayloadCodec payloadCodec, DecodeErrorHandler decodeErrorHandler) {
+        this.bean = bean;
+        this.method = method;
+        this.invoker = MethodInvoker.of(method);
+        this.decodeErrorHandler = decodeErrorHandler;
+        this.argumentResolvers = new ArgumentResolver[method.getParameterCount()];
+        PayloadDecoder payloadDecoder = null;
+        for(int i = 0; i < argumentResolvers.length; i++) {
+            MethodParameter parameter = new MethodParameter(method, i);
+            Class<?> type = parameter.getParameterType();
+            MessageProperty property = parameter.getParameterAnnotation(MessageProperty.class);
+            if(parameter.hasParameterAnnotation(MessageKey.class)) {
+                argumentResolvers[i] = (consumer, message, payload) -> message.getKey();
+            } else if(parameter.hasParameterAnnotation(MessageProperties.class)) {
+                argumentResolvers[i] = (consumer, message, payload) -> message.getProperties();
+            } else if(property != null) {
+                String name = property.value();
+                argumentResolvers[i] = (consumer, message, payload) -> message.getProperty(name);
+            } else if(Consumer.class.isAssignableFrom(type)) {
+                argumentResolvers[i] = (consumer, message, payload) -> consumer;
+            } else if(Message.class.isAssignableFrom(type)) {
+                argumentResolvers[i] = (consumer, message, payload) -> message;
+            } else if(payloadDecoder == null) {
+                payloadDecoder = payloadDecoder(type, parameter.getGenericParameterType(), payloadCodec);
+                argumentResolvers[i] = (consumer, message, payload) -> payload;
+            } else {
+                throw new RuntimeException(String.format("[Pulsar] listener method %s takes more than one payload, " +
+                        "annotate the other parameters.", method));
+            }
+        }
+        this.payloadDecoder = payloadDecoder;
+    }
+
+    private static PayloadDecoder payloadDecoder(Class<?> type, Type genericType, PayloadCodec payloadCodec) {
+        if(RawPayloads.isRaw(type)) {
+            return data -> RawPayloads.decode(data, type, payloadCodec);
+        }
+        return data -> payloadCodec.decode(data, genericType);
+    }
+
+    @Override
+    public void received(Consumer<byte[]> consumer, Message<byte[]> message) {
+        Object payload = null;
+        if(payloadDecoder != null) {
+            try {
+                payload = payloadDecoder.decode(message.getData());
+            } catch (SchemaSerializationException e) {
+                decodeErrorHandler.handle(consumer, message, e);
+                return;
+            }
+        }
+        Object[] args = new Object[argumentResolvers.length];
+        for(int i = 0; i < args.length; i++) {
+            args[i] = argumentResolvers[i].resolve(consumer, message, payload);
+        }
+        try {
+            invoker.invoke(bean, args);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("[Pulsar] listener method failed: " + method, e);
+        }
+        try {
+            acknowledge(consumer, message);
+        } catch (PulsarClientException e) {
+            log.error("ack confirm error, consumerName: {}, topic: {}, messageId: {}",
+                    consumer.getConsumerName(), consumer.getTopic(), message.getMessageId(), e);
+        }
+    }
+
+    private interface ArgumentResolver {
+        Object resolve(Consumer<byte[]> consumer, Message<byte[]> message, Object payload);
+    }
+
+    private interface PayloadDecoder {
+        Object decode(byte[] data);
+    }
+}
@@ -0,0 +1,106 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.listener.MessageKeyExtractor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatches the messages of one consumer to a fixed number of worker lanes by hash of the ordering key.
+ * Messages of the same key always land on the same lane and are handled strictly in order,
+ * different keys are handled in parallel. Each lane has a bounded queue, a full lane blocks the caller,
+ * which pushes back on the consumer's receiver queue. The delegate acks each message once its lane handled it.
+ * Messages without a key are spread round-robin.
+ * @author pig
+ */
+@Slf4j
+class OrderedLaneListener<T> implements MessageListener<T> {
+    private final MessageListener<T> delegate;
+    private final MessageKeyExtractor keyExtractor;
+    private final Lane[] lanes;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    /**
+     * @param bindingName   used to name the lane threads
+     * @param delegate  the listener handling and acking the messages
+     * @param keyExtractor  extracts the ordering key, null to order by the message key
+     * @param concurrency   the number of lanes
+     * @param queueSize the capacity of each lane
+     */
+    OrderedLaneListener(String bindingName, MessageListener<T> delegate, MessageKeyExtractor keyExtractor,
+            int concurrency, int queueSize) {
+        this.delegate = delegate;
+        this.keyExtractor = keyExtractor;
+        this.lanes = new Lane[concurrency];
+        for(int i = 0; i < concurrency; i++) {
+            lanes[i] = new Lane("pulsar-lane-" + bindingName + "-" + i, queueSize);
+        }
+    }
+
+    @Override
+    public void received(Consumer<T> consumer, Message<T> message) {
+        try {
+            lanes[laneOf(message)].queue.put(() -> {
+                try {
+                    delegate.received(consumer, message);
+                } catch (RuntimeException e) {
+                    log.error("[Pulsar] handle message failed, topic: {}, messageId: {}",
+                            message.getTopicName(), message.getMessageId(), e);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("[Pulsar] interrupted while dispatching, the message will be redelivered, messageId: {}",
+                    message.getMessageId());
+        }
+    }
+
+    @Override
+    public void reachedEndOfTopic(Consumer<T> consumer) {
+        delegate.reachedEndOfTopic(consumer);
+    }
+
+    /**
+     * Stop the lanes, queued messages are left unacked and redelivered after the ack timeout.
+     */
+    void close() {
+        for(Lane lane : lanes) {
+            lane.thread.interrupt();
+        }
+    }
+
+    int laneOf(Message<T> message) {
+        String key = keyExtractor != null ? keyExtractor.extract(message) : message.hasKey() ? message.getKey() : null;
+        int hash = key != null ? key.hashCode() : roundRobin.getAndIncrement();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private static class Lane implements Runnable {
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+
+        private Lane(String name, int queueSize) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while(!Thread.currentThread().isInterrupted()) {
+                    queue.take().run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
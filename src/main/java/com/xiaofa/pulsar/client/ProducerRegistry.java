@@ -0,0 +1,217 @@
+package com.xiaofa.pulsar.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Thread-safe registry of the producers created by {@link PulsarTemplate}, one per fully-qualified topic.
+ * Concurrent callers asking for the same topic share a single creation future, disconnected or failed
+ * producers are swapped out atomically, and producers that have not been used for {@code idleTimeout}
+ * milliseconds are closed in the background.
+ * Eviction and {@link ProducerHolder#touch()} race on the last access time of the entry: the evictor only
+ * closes an entry it managed to mark as evicted, and a touch never hands out the producer of an evicted entry.
+ * @author pig
+ */
+@Slf4j
+class ProducerRegistry {
+    private static final long LEAST_EVICTION_INTERVAL = 1000;
+    private static final long EVICTED = -1;
+
+    private final ConcurrentMap<String, ProducerHolder> producers = new ConcurrentHashMap<>();
+    private final Function<String, CompletableFuture<Producer<byte[]>>> producerFactory;
+    private final long idleTimeout;
+    private final Consumer<String> evictionListener;
+    private final ScheduledExecutorService evictor;
+
+    ProducerRegistry(Function<String, CompletableFuture<Producer<byte[]>>> producerFactory, long idleTimeout) {
+        this(producerFactory, idleTimeout, topic -> { });
+    }
+
+    ProducerRegistry(Function<String, CompletableFuture<Producer<byte[]>>> producerFactory, long idleTimeout,
+            Consumer<String> evictionListener) {
+        this.producerFactory = producerFactory;
+        this.idleTimeout = idleTimeout;
+        this.evictionListener = evictionListener;
+        if(idleTimeout > 0) {
+            long interval = Math.max(idleTimeout / 2, LEAST_EVICTION_INTERVAL);
+            this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pulsar-producer-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.evictor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.evictor = null;
+        }
+    }
+
+    /**
+     * Get the producer of the topic, creating it asynchronously on first use.
+     * Only one creation is ever in flight per topic, every concurrent caller waits on the same future.
+     * @param topic the fully-qualified topic
+     * @return  the producer future
+     */
+    CompletableFuture<Producer<byte[]>> getProducerAsync(String topic) {
+        CompletableFuture<Producer<byte[]>> producer = acquire(topic).touch();
+        while(producer == null) {
+            producer = acquire(topic).touch();
+        }
+        return producer;
+    }
+
+    /**
+     * Get the registry entry of the topic, so that a caller can keep it and skip the lookup
+     * until the entry becomes unusable, see {@link ProducerHolder#isUsable()}.
+     * @param topic the fully-qualified topic
+     * @return  the registry entry
+     */
+    ProducerHolder acquire(String topic) {
+        ProducerHolder holder = producers.get(topic);
+        if(holder == null) {
+            holder = producers.computeIfAbsent(topic, this::newHolder);
+        }
+        if(holder.isBroken()) {
+            holder = producers.compute(topic, (key, current) ->
+                    current == null || current.isBroken() ? replace(key, current) : current);
+        }
+        return holder;
+    }
+
+    /**
+     * @return the number of registered producers
+     */
+    int size() {
+        return producers.size();
+    }
+
+    /**
+     * Stop idle eviction, then flush and close every registered producer.
+     * @return  the future completing once every producer is closed, it never completes exceptionally
+     */
+    CompletableFuture<Void> close() {
+        if(evictor != null) {
+            evictor.shutdownNow();
+        }
+        List<CompletableFuture<Void>> closing = new ArrayList<>();
+        for(Map.Entry<String, ProducerHolder> entry : producers.entrySet()) {
+            if(producers.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().removed = true;
+                closing.add(closeQuietly(entry.getKey(), entry.getValue()));
+            }
+        }
+        return CompletableFuture.allOf(closing.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private ProducerHolder newHolder(String topic) {
+        CompletableFuture<Producer<byte[]>> producer;
+        try {
+            producer = producerFactory.apply(topic);
+        } catch (RuntimeException e) {
+            producer = new CompletableFuture<>();
+            producer.completeExceptionally(e);
+        }
+        return new ProducerHolder(producer);
+    }
+
+    private ProducerHolder replace(String topic, ProducerHolder broken) {
+        if(broken != null && !broken.isEvicted()) {
+            broken.removed = true;
+            closeQuietly(topic, broken);
+        }
+        return newHolder(topic);
+    }
+
+    void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        for(Map.Entry<String, ProducerHolder> entry : producers.entrySet()) {
+            ProducerHolder holder = entry.getValue();
+            long lastAccess = holder.lastAccess.get();
+            if(lastAccess != EVICTED && lastAccess < deadline && holder.producer.isDone()
+                    && holder.lastAccess.compareAndSet(lastAccess, EVICTED)) {
+                holder.removed = true;
+                log.info("[Pulsar] close idle producer, topic: {}", entry.getKey());
+                closeQuietly(entry.getKey(), holder);
+                if(producers.remove(entry.getKey(), holder)) {
+                    evictionListener.accept(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Flush the pending sends, then close the producer
+     */
+    private CompletableFuture<Void> closeQuietly(String topic, ProducerHolder holder) {
+        return holder.producer.thenCompose(producer -> producer.flushAsync().thenCompose(v -> producer.closeAsync()))
+                .handle((v, e) -> {
+                    if(e != null && !holder.producer.isCompletedExceptionally()) {
+                        log.warn("[Pulsar] close producer failed, topic: {}", topic, e);
+                    }
+                    return null;
+                });
+    }
+
+    static class ProducerHolder {
+        private final CompletableFuture<Producer<byte[]>> producer;
+        private final AtomicLong lastAccess = new AtomicLong(System.currentTimeMillis());
+        private volatile boolean removed;
+
+        private ProducerHolder(CompletableFuture<Producer<byte[]>> producer) {
+            this.producer = producer;
+        }
+
+        /**
+         * Mark the entry as used and return its producer future
+         * @return  the producer future, null if the entry has been evicted and the caller has to acquire again
+         */
+        CompletableFuture<Producer<byte[]>> touch() {
+            long now = System.currentTimeMillis();
+            long last;
+            do {
+                last = lastAccess.get();
+                if(last == EVICTED) {
+                    return null;
+                }
+            } while(!lastAccess.compareAndSet(last, Math.max(last, now)));
+            return producer;
+        }
+
+        /**
+         * @return false once the entry has been evicted or replaced, or its producer is broken
+         */
+        boolean isUsable() {
+            return !removed && !isBroken();
+        }
+
+        private boolean isEvicted() {
+            return lastAccess.get() == EVICTED;
+        }
+
+        /**
+         * A holder is broken once its creation failed or its producer lost the connection,
+         * a pending creation is never considered broken so that callers keep sharing it.
+         */
+        private boolean isBroken() {
+            if(isEvicted()) {
+                return true;
+            }
+            if(!producer.isDone()) {
+                return false;
+            }
+            return producer.isCompletedExceptionally() || !producer.join().isConnected();
+        }
+    }
+}
@@ -6,53 +6,127 @@ import com.xiaofa.pulsar.annotations.TopicBinding;
 import com.xiaofa.pulsar.beans.TopicNameComponent;
 import com.xiaofa.pulsar.config.ConsumerConfig;
 import com.xiaofa.pulsar.config.PulsarConfiguration;
+import com.xiaofa.pulsar.constants.ExecutorMode;
 import com.xiaofa.pulsar.constants.PulsarConstants;
+import com.xiaofa.pulsar.constants.SubscribeFailurePolicy;
+import com.xiaofa.pulsar.event.ConsumerSubscribeEvent;
+import com.xiaofa.pulsar.executor.ConsumerExecutorProvider;
+import com.xiaofa.pulsar.codec.PayloadCodec;
+import com.xiaofa.pulsar.listener.AckGroupingListener;
+import com.xiaofa.pulsar.listener.BatchConsumerMessageListener;
 import com.xiaofa.pulsar.listener.ConsumerMessageListener;
+import com.xiaofa.pulsar.listener.DecodeErrorHandler;
+import com.xiaofa.pulsar.listener.MessageKeyExtractor;
+import com.xiaofa.pulsar.listener.TypedConsumerMessageListener;
 import com.xiaofa.pulsar.utils.PulsarUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.pulsar.client.api.*;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 /**
  * Pulsar consumer config
  * The consumer is automatically created and the message is received.
- * Inherit {@link ConsumerMessageListener} and introduce the {@link @pulsarListener} annotation
+ * Inherit {@link ConsumerMessageListener}, {@link TypedConsumerMessageListener} or {@link BatchConsumerMessageListener}
+ * and introduce the {@link @pulsarListener} annotation, or annotate methods of any bean with it.
+ * The bindings are collected while the beans are post-processed and subscribed concurrently once the
+ * application is ready, within {@code pulsar.consumer.subscribeTimeout}, then {@link ConsumerSubscribeEvent}
+ * reports the subscription time of every binding. Bindings created later, e.g. by lazy beans, are subscribed right away.
+ * On shutdown the consumers stop receiving, the messages being handled and their acks are drained
+ * within {@code pulsar.client.shutdownTimeout}, then the consumers are closed so that whatever is
+ * left unacked is redelivered to the other consumers right away.
  * @author pig
  **/
 @Slf4j
 @Component
-public class PulsarConsumeClient implements BeanPostProcessor {
+public class PulsarConsumeClient implements BeanPostProcessor, SmartLifecycle, ApplicationListener<ApplicationReadyEvent> {
+    /**
+     * Stopped before {@link PulsarTemplate}, so that handlers can still send while they are drained
+     */
+    static final int PHASE = Integer.MAX_VALUE - 1000;
+
     private final PulsarClient pulsarClient;
     private final PulsarConfiguration pulsarProperties;
+    private final ConsumerExecutorProvider consumerExecutorProvider;
+    private final PayloadCodec payloadCodec;
+    private final DecodeErrorHandler decodeErrorHandler;
+    private final MemoryBudget memoryBudget;
+    private final ScheduledExecutorService ackFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pulsar-ack-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Kept apart from {@link #ackFlusher}, a slow subscription must not hold back the acks past the ack timeout
+     */
+    private final ScheduledExecutorService subscribeRetrier = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pulsar-subscribe-retrier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final InFlightTracker inFlightTracker = new InFlightTracker();
+    private final List<Consumer<?>> consumers = new CopyOnWriteArrayList<>();
+    private final List<AckAggregator<?>> ackAggregators = new CopyOnWriteArrayList<>();
+    private final List<OrderedLaneListener<?>> laneListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, DedupCache> dedupCaches = new ConcurrentHashMap<>();
+    private final List<PendingBinding> pendingBindings = new ArrayList<>();
+    private final Set<Class<?>> nonListenerClasses = ConcurrentHashMap.newKeySet();
+    private ApplicationEventPublisher readyPublisher;
+    private boolean stopped;
+    private volatile boolean running;
 
     private static final long LEAST_ACK_TIMEOUT = 1000;
-
-    private static final ThreadPoolExecutor CONSUMER_POOL =
-            new ThreadPoolExecutor(4, 16, 30, TimeUnit.SECONDS,
-                new SynchronousQueue<>(),
-                Executors.defaultThreadFactory(),
-                new ThreadPoolExecutor.AbortPolicy());
+    private static final long INITIAL_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
 
     public PulsarConsumeClient(
             PulsarClient pulsarClient,
-            PulsarConfiguration pulsarProperties) {
+            PulsarConfiguration pulsarProperties,
+            ConsumerExecutorProvider consumerExecutorProvider,
+            PayloadCodec payloadCodec,
+            DecodeErrorHandler decodeErrorHandler,
+            MemoryBudget memoryBudget) {
         this.pulsarClient = pulsarClient;
         this.pulsarProperties = pulsarProperties;
+        this.consumerExecutorProvider = consumerExecutorProvider;
+        this.payloadCodec = payloadCodec;
+        this.decodeErrorHandler = decodeErrorHandler;
+        this.memoryBudget = memoryBudget;
     }
 
     @Override
@@ -64,13 +138,37 @@ public class PulsarConsumeClient implements BeanPostProcessor {
     public Object postProcessAfterInitialization(Object bean, @NotNull String beanName) throws BeansException {
         PulsarListener pulsarListener = AnnotationUtils.findAnnotation(bean.getClass(), PulsarListener.class);
         if (pulsarListener != null) {
-            checkAndExec((ConsumerMessageListener) bean, pulsarListener);
+            if(!(bean instanceof ConsumerMessageListener) && !(bean instanceof BatchConsumerMessageListener)
+                    && !(bean instanceof TypedConsumerMessageListener)) {
+                throw new RuntimeException(String.format("[Pulsar] listener %s must extend ConsumerMessageListener, " +
+                        "TypedConsumerMessageListener or BatchConsumerMessageListener.", beanName));
+            }
+            if(bean instanceof TypedConsumerMessageListener) {
+                ((TypedConsumerMessageListener<?>) bean).setPayloadCodec(payloadCodec);
+                ((TypedConsumerMessageListener<?>) bean).setDecodeErrorHandler(decodeErrorHandler);
+            }
+            checkAndExec(bean, beanName, pulsarListener);
+        }
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        if(!nonListenerClasses.contains(targetClass) && AnnotationUtils.isCandidateClass(targetClass, PulsarListener.class)) {
+            Map<Method, PulsarListener> listenerMethods = MethodIntrospector.selectMethods(targetClass,
+                    (MethodIntrospector.MetadataLookup<PulsarListener>) method ->
+                            AnnotatedElementUtils.findMergedAnnotation(method, PulsarListener.class));
+            if(listenerMethods.isEmpty()) {
+                nonListenerClasses.add(targetClass);
+            }
+            listenerMethods.forEach((method, methodListener) -> checkAndExec(
+                    new MethodMessageListener(bean, AopUtils.selectInvocableMethod(method, bean.getClass()),
+                            payloadCodec, decodeErrorHandler),
+                    beanName + "." + method.getName(), methodListener));
+        } else {
+            nonListenerClasses.add(targetClass);
         }
         return bean;
     }
 
-    private void checkAndExec(ConsumerMessageListener messageListener, PulsarListener pulsarListener) {
-        if(StringUtils.isNotBlank(pulsarProperties.getServiceUrl())) {
+    private void checkAndExec(Object messageListener, String beanName, PulsarListener pulsarListener) {
+        if(StringUtils.isBlank(pulsarProperties.getServiceUrl())) {
             throw new RuntimeException("[Pulsar] service url must be not empty.");
         }
         if(ArrayUtils.isEmpty(pulsarListener.bindings())) {
@@ -78,12 +176,12 @@ public class PulsarConsumeClient implements BeanPostProcessor {
         }
         String tenancy = StringUtils.isNotEmpty(pulsarListener.tenancy())?
                 pulsarListener.tenancy():pulsarProperties.getTenancy();
-        if(StringUtils.isNotBlank(tenancy)) {
+        if(StringUtils.isBlank(tenancy)) {
             throw new RuntimeException("[Pulsar] tenancy must be not empty.");
         }
         String namespace = StringUtils.isNotEmpty(pulsarListener.namespace())?
                 pulsarListener.namespace():pulsarProperties.getNamespace();
-        if(StringUtils.isNotBlank(namespace)) {
+        if(StringUtils.isBlank(namespace)) {
             throw new RuntimeException("[Pulsar] namespace must be not empty.");
         }
         boolean persistent = StringUtils.isNotEmpty(pulsarListener.persistent())?
@@ -92,53 +190,399 @@ public class PulsarConsumeClient implements BeanPostProcessor {
         topicNameComponent.setTenancy(tenancy);
         topicNameComponent.setNamespace(namespace);
         topicNameComponent.setPersistent(persistent);
-        for(TopicBinding topicBinding : pulsarListener.bindings()) {
-            ConsumerConfig consumerConfig = getConsumerConfig(topicBinding);
-            Consumer<String> consumer = createConsumer(topicNameComponent, consumerConfig, messageListener);
-            doReceive(messageListener, consumerConfig.isEnableAsync(), consumer);
+        for(int i = 0; i < pulsarListener.bindings().length; i++) {
+            ConsumerConfig consumerConfig = getConsumerConfig(pulsarListener.bindings()[i]);
+            String bindingName = beanName + "#" + i;
+            if(messageListener instanceof BatchConsumerMessageListener) {
+                RedeliveryBackoff redeliveryBackoff = redeliveryBackoff(consumerConfig);
+                subscribeLater(bindingName, Schema.STRING, topicNameComponent, consumerConfig, null,
+                        consumer -> startPolling(bindingName, consumerConfig, ConsumerPoller.ofBatch(consumer,
+                                (BatchConsumerMessageListener) messageListener, bindingName,
+                                memoryBudget.isEnabled() ? memoryBudget : null, inFlightTracker, redeliveryBackoff)));
+            } else if(messageListener instanceof TypedConsumerMessageListener) {
+                bind(Schema.BYTES, (TypedConsumerMessageListener<?>) messageListener, bindingName,
+                        topicNameComponent, consumerConfig);
+            } else if(messageListener instanceof MethodMessageListener) {
+                bind(Schema.BYTES, (MethodMessageListener) messageListener, bindingName,
+                        topicNameComponent, consumerConfig);
+            } else {
+                bind(Schema.STRING, (ConsumerMessageListener) messageListener, bindingName,
+                        topicNameComponent, consumerConfig);
+            }
+        }
+    }
+
+    /**
+     * Subscribe a per-message listener, pushed to asynchronously or fed by a poll loop
+     */
+    private <T, L extends MessageListener<T> & AckGroupingListener<T>> void bind(Schema<T> schema, L owner,
+            String bindingName, TopicNameComponent topicNameComponent, ConsumerConfig consumerConfig) {
+        AckAggregator<T> ackAggregator = ackAggregator(bindingName, owner, consumerConfig);
+        MessageListener<T> listener = withDedup(bindingName, owner, ackAggregator, consumerConfig);
+        listener = inFlightTracker.leaving(redeliveryBackoff(consumerConfig).wrap(listener));
+        if(memoryBudget.isEnabled()) {
+            listener = memoryBudget.releasing(bindingName, listener);
+        }
+        listener = withLanes(bindingName, listener, consumerConfig);
+        if(ackAggregator != null) {
+            listener = ackAggregator.wrap(listener);
+        }
+        if(memoryBudget.isEnabled()) {
+            listener = memoryBudget.charging(bindingName, listener);
+        }
+        listener = inFlightTracker.entering(listener);
+        if(consumerConfig.isEnableAsync()) {
+            subscribeLater(bindingName, schema, topicNameComponent, consumerConfig, listener, consumer -> { });
+        } else {
+            MessageListener<T> pollListener = listener;
+            subscribeLater(bindingName, schema, topicNameComponent, consumerConfig, null,
+                    consumer -> startPolling(bindingName, consumerConfig, new ConsumerPoller<>(consumer, pollListener)));
         }
     }
 
-    private Consumer<String> createConsumer(TopicNameComponent topicNameComponent, ConsumerConfig consumerConfig,
-                         ConsumerMessageListener messageListener) {
-        ConsumerBuilder<String> consumerBuilder = getConsumerBuilder(topicNameComponent, consumerConfig);
+    /**
+     * Subscribe every collected binding concurrently and wait for them up to the subscribe timeout.
+     * Bindings still pending go on subscribing in the background, failed ones follow their failure policy.
+     */
+    @Override
+    public void onApplicationEvent(@NotNull ApplicationReadyEvent event) {
+        List<PendingBinding> bindings;
+        synchronized (pendingBindings) {
+            bindings = new ArrayList<>(pendingBindings);
+            pendingBindings.clear();
+            readyPublisher = event.getApplicationContext();
+        }
+        if(!bindings.isEmpty()) {
+            subscribeAll(bindings, event.getApplicationContext());
+        }
+    }
+
+    private void subscribeAll(List<PendingBinding> bindings, ApplicationEventPublisher applicationEventPublisher) {
+        long start = System.currentTimeMillis();
+        Map<PendingBinding, CompletableFuture<Long>> futures = new LinkedHashMap<>();
+        for(PendingBinding binding : bindings) {
+            futures.put(binding, subscribe(binding));
+        }
+        Map<String, Long> subscribed = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        long deadline = start + pulsarProperties.getConsumer().getSubscribeTimeout();
+        for(Map.Entry<PendingBinding, CompletableFuture<Long>> entry : futures.entrySet()) {
+            PendingBinding binding = entry.getKey();
+            try {
+                subscribed.put(binding.name, entry.getValue()
+                        .get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(binding.name, e);
+            } catch (ExecutionException e) {
+                failures.put(binding.name, e.getCause());
+                if(binding.failurePolicy == SubscribeFailurePolicy.RETRY) {
+                    retry(binding, INITIAL_RETRY_DELAY);
+                }
+            } catch (TimeoutException e) {
+                failures.put(binding.name, e);
+                entry.getValue().whenComplete((elapsed, cause) -> {
+                    if(cause == null) {
+                        log.info("[Pulsar] binding {} subscribed after the timeout in {} ms", binding.name, elapsed);
+                    } else if(binding.failurePolicy == SubscribeFailurePolicy.RETRY) {
+                        retry(binding, INITIAL_RETRY_DELAY);
+                    } else {
+                        log.error("[Pulsar] binding {} subscription failed, topics: {}",
+                                binding.name, binding.topics, cause);
+                    }
+                });
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        subscribed.forEach((name, time) -> log.info("[Pulsar] binding {} subscribed in {} ms", name, time));
+        PendingBinding fatal = null;
+        for(PendingBinding binding : bindings) {
+            Throwable cause = failures.get(binding.name);
+            if(cause == null) {
+                continue;
+            }
+            if(binding.failurePolicy == SubscribeFailurePolicy.FAIL) {
+                log.error("[Pulsar] binding {} subscription failed, topics: {}", binding.name, binding.topics, cause);
+                if(fatal == null) {
+                    fatal = binding;
+                }
+            } else {
+                log.warn("[Pulsar] binding {} not subscribed, {}, topics: {}", binding.name,
+                        binding.failurePolicy == SubscribeFailurePolicy.RETRY ? "retrying" : "skipped",
+                        binding.topics, cause);
+            }
+        }
+        if(fatal != null) {
+            throw new RuntimeException(String.format("[Pulsar] consumer subscription failed, %d of %d bindings, first: %s",
+                    failures.size(), bindings.size(), fatal.name), failures.get(fatal.name));
+        }
+        log.info("[Pulsar] {} of {} bindings subscribed in {} ms", subscribed.size(), bindings.size(), elapsed);
+        applicationEventPublisher.publishEvent(new ConsumerSubscribeEvent(this, subscribed, failures, elapsed));
+    }
+
+    /**
+     * @return  the future of the subscription time in milliseconds
+     */
+    private CompletableFuture<Long> subscribe(PendingBinding binding) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<Void> future;
+        try {
+            future = binding.subscriber.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.thenApply(v -> System.currentTimeMillis() - start);
+    }
+
+    private void retry(PendingBinding binding, long delay) {
+        try {
+            subscribeRetrier.schedule(() -> subscribe(binding).whenComplete((elapsed, e) -> {
+                if(e == null) {
+                    log.info("[Pulsar] binding {} subscribed after retrying", binding.name);
+                } else {
+                    log.warn("[Pulsar] binding {} subscription failed, retrying in {} ms, topics: {}",
+                            binding.name, Math.min(delay * 2, MAX_RETRY_DELAY), binding.topics, e);
+                    retry(binding, Math.min(delay * 2, MAX_RETRY_DELAY));
+                }
+            }), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.info("[Pulsar] binding {} not retried, shutting down", binding.name);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Drain the consumers: stop handing messages over, wait for the messages being handled,
+     * flush the grouped acks, then close the consumers.
+     * Messages still queued past the shutdown timeout are left unacked and redelivered once the consumers close.
+     */
+    @Override
+    public void stop() {
+        if(!running) {
+            return;
+        }
+        running = false;
+        synchronized (consumers) {
+            stopped = true;
+        }
+        subscribeRetrier.shutdownNow();
+        long start = System.currentTimeMillis();
+        long deadline = start + pulsarProperties.getClient().getShutdownTimeout();
+        inFlightTracker.close();
+        for(Consumer<?> consumer : consumers) {
+            consumer.pause();
+        }
         try {
-            if(consumerConfig.isEnableAsync()) {
-                consumerBuilder.messageListener(messageListener);
+            int remaining = inFlightTracker.awaitIdle(deadline - System.currentTimeMillis());
+            if(remaining > 0) {
+                log.warn("[Pulsar] shutdown timed out, {} messages still in flight are redelivered", remaining);
             }
-            return consumerBuilder.subscribe();
-        } catch (PulsarClientException e) {
-            throw new RuntimeException("[Pulsar] Consumer subscription failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for(AckAggregator<?> ackAggregator : ackAggregators) {
+            ackAggregator.close();
         }
+        CompletableFuture<?>[] closing = consumers.stream()
+                .map(consumer -> consumer.closeAsync().handle((v, e) -> {
+                    memoryBudget.deregister(consumer);
+                    if(e != null) {
+                        log.warn("[Pulsar] close consumer failed, topic: {}", consumer.getTopic(), e);
+                    }
+                    return null;
+                }))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(closing).get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("[Pulsar] consumers not closed within the shutdown timeout");
+        }
+        for(OrderedLaneListener<?> laneListener : laneListeners) {
+            laneListener.close();
+        }
+        ackFlusher.shutdownNow();
+        dedupCaches.forEach((bindingName, dedupCache) -> {
+            log.info("[Pulsar] binding {} dropped {} duplicates, {} misses, {} evictions", bindingName,
+                    dedupCache.getHits(), dedupCache.getMisses(), dedupCache.getEvictions());
+            File snapshot = dedupSnapshot(bindingName);
+            if(snapshot != null) {
+                try {
+                    dedupCache.save(snapshot);
+                } catch (IOException e) {
+                    log.warn("[Pulsar] binding {} dedup snapshot not saved: {}", bindingName, snapshot, e);
+                }
+            }
+        });
+        log.info("[Pulsar] {} consumers drained and closed in {} ms", consumers.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
     }
 
-    private void doReceive(ConsumerMessageListener messageListener, boolean isAsync, Consumer<String> consumer) {
-        if(isAsync) {
-            consumer.receiveAsync();
+    private void startPolling(String bindingName, ConsumerConfig consumerConfig, ConsumerPoller<?> poller) {
+        ExecutorMode mode = consumerConfig.getExecutorMode();
+        Executor executor = consumerExecutorProvider.getExecutor(bindingName, mode);
+        if(mode == ExecutorMode.POOL) {
+            poller.pollAsync(executor);
         } else {
-            CONSUMER_POOL.execute(() -> {
-                receiveSync(consumer, messageListener);
-            });
+            executor.execute(poller);
         }
     }
 
-    private void receiveSync(Consumer<String> consumer, ConsumerMessageListener messageListener) {
-        try {
-            Message<String> message = consumer.receive();
-            messageListener.received(consumer, message);
-        } catch (PulsarClientException e) {
-            log.error(String.format("[Pulsar] sync consume message failed, topic: %s", consumer.getTopic()), e);
+    private RedeliveryBackoff redeliveryBackoff(ConsumerConfig consumerConfig) {
+        return new RedeliveryBackoff(consumerConfig.getNegativeAckRedeliveryDelay(),
+                consumerConfig.getNegativeAckMaxRedeliveryDelay(), consumerConfig.getAckTimeout(), ackFlusher);
+    }
+
+    /**
+     * Spread the messages over ordered lanes when the binding's concurrency is above 1
+     */
+    private <T> MessageListener<T> withLanes(String bindingName, MessageListener<T> messageListener,
+            ConsumerConfig consumerConfig) {
+        if(consumerConfig.getConcurrency() <= 1) {
+            return messageListener;
         }
-        receiveSync(consumer, messageListener);
+        MessageKeyExtractor keyExtractor = consumerConfig.getKeyExtractor() != null ?
+                BeanUtils.instantiateClass(consumerConfig.getKeyExtractor()) : null;
+        OrderedLaneListener<T> laneListener = new OrderedLaneListener<>(bindingName, messageListener, keyExtractor,
+                consumerConfig.getConcurrency(), consumerConfig.getLaneQueueSize());
+        laneListeners.add(laneListener);
+        return laneListener;
     }
 
-    private ConsumerBuilder<String> getConsumerBuilder(TopicNameComponent topicNameComponent,
+    /**
+     * Group the acks of the binding when ackGroupSize is above 1 and the listener does not ack on its own,
+     * cumulatively for the subscription types that allow it.
+     * A cumulative position stops waiting for a message after twice the ack timeout, it would have been redelivered
+     * and tracked again by then unless it was acked outside the aggregator.
+     * @return  the aggregator, null when acks are not grouped
+     */
+    private <T> AckAggregator<T> ackAggregator(String bindingName, AckGroupingListener<T> owner,
+            ConsumerConfig consumerConfig) {
+        if(consumerConfig.getAckGroupSize() <= 1) {
+            return null;
+        }
+        if(!owner.isAckGroupingSupported()) {
+            log.info("[Pulsar] binding {} overrides acknowledge, acks are not grouped", bindingName);
+            return null;
+        }
+        boolean cumulative = consumerConfig.getSubscriptionType() == SubscriptionType.Exclusive
+                || consumerConfig.getSubscriptionType() == SubscriptionType.Failover;
+        AckAggregator<T> ackAggregator = new AckAggregator<>(owner, consumerConfig.getAckGroupSize(),
+                consumerConfig.getAcknowledgmentGroupTime(), cumulative, consumerConfig.getAckTimeout() * 2, ackFlusher);
+        ackAggregators.add(ackAggregator);
+        return ackAggregator;
+    }
+
+    /**
+     * Drop the messages the binding already handled when dedupMaxEntries is above 0.
+     * Duplicates are acked through the aggregator when there is one, so that cumulative acks are not held back.
+     * The cache is sitting inside the redelivery backoff, a message is only remembered once handled without failing.
+     */
+    private <T> MessageListener<T> withDedup(String bindingName, MessageListener<T> listener,
+            AckAggregator<T> ackAggregator, ConsumerConfig consumerConfig) {
+        if(consumerConfig.getDedupMaxEntries() <= 0) {
+            return listener;
+        }
+        DedupCache dedupCache = new DedupCache(consumerConfig.getDedupMaxEntries(), consumerConfig.getDedupTtl());
+        File snapshot = dedupSnapshot(bindingName);
+        if(snapshot != null) {
+            try {
+                log.info("[Pulsar] binding {} loaded {} handled messages from {}", bindingName, dedupCache.load(snapshot), snapshot);
+            } catch (IOException e) {
+                log.warn("[Pulsar] binding {} dedup snapshot ignored: {}", bindingName, snapshot, e);
+            }
+        }
+        dedupCaches.put(bindingName, dedupCache);
+        MessageKeyExtractor keyExtractor = consumerConfig.getDedupKeyExtractor() != null ?
+                BeanUtils.instantiateClass(consumerConfig.getDedupKeyExtractor()) : null;
+        return dedupCache.wrap(listener, keyExtractor, (consumer, message) -> {
+            if(ackAggregator != null) {
+                ackAggregator.acknowledge(message);
+            } else {
+                consumer.acknowledgeAsync(message);
+            }
+        });
+    }
+
+    private File dedupSnapshot(String bindingName) {
+        String dir = pulsarProperties.getConsumer().getDedupSnapshotDir();
+        return StringUtils.isNotEmpty(dir) ? new File(dir, bindingName.replaceAll("[^A-Za-z0-9._-]", "_") + ".dedup") : null;
+    }
+
+    /**
+     * @return  the dedup cache of every binding dropping duplicates, by binding name, for their hit and miss counters
+     */
+    public Map<String, DedupCache> getDedupCaches() {
+        return Collections.unmodifiableMap(dedupCaches);
+    }
+
+    /**
+     * Build the consumer of the binding now, it is subscribed once the application is ready, or right away after that.
+     * A consumer subscribed after {@link #stop()} is closed at once.
+     * @param asyncListener the listener messages are pushed to, null to consume with a poll loop
+     * @param onSubscribed  called with the subscribed consumer
+     */
+    private <T> void subscribeLater(String bindingName, Schema<T> schema, TopicNameComponent topicNameComponent,
+            ConsumerConfig consumerConfig, MessageListener<T> asyncListener,
+            java.util.function.Consumer<Consumer<T>> onSubscribed) {
+        ConsumerBuilder<T> consumerBuilder = getConsumerBuilder(schema, topicNameComponent, consumerConfig);
+        if(asyncListener != null) {
+            consumerBuilder.messageListener(asyncListener);
+        } else {
+            consumerBuilder.batchReceivePolicy(BatchReceivePolicy.builder()
+                    .maxNumMessages(consumerConfig.getBatchReceiveMaxMessages())
+                    .maxNumBytes(consumerConfig.getBatchReceiveMaxBytes())
+                    .timeout(consumerConfig.getBatchReceiveTimeout(), TimeUnit.MILLISECONDS)
+                    .build());
+        }
+        PendingBinding binding = new PendingBinding(bindingName, String.join(",", consumerConfig.getTopics()),
+                consumerConfig.getSubscribeFailurePolicy(), () -> consumerBuilder.subscribeAsync().thenAccept(consumer -> {
+                    boolean added;
+                    synchronized (consumers) {
+                        added = !stopped && consumers.add(consumer);
+                    }
+                    if(!added) {
+                        log.info("[Pulsar] binding {} subscribed after shutdown, closing the consumer", bindingName);
+                        consumer.closeAsync().whenComplete((v, e) -> memoryBudget.deregister(consumer));
+                        return;
+                    }
+                    onSubscribed.accept(consumer);
+                }));
+        ApplicationEventPublisher publisher;
+        synchronized (pendingBindings) {
+            publisher = readyPublisher;
+            if(publisher == null) {
+                pendingBindings.add(binding);
+            }
+        }
+        if(publisher != null) {
+            subscribeAll(Collections.singletonList(binding), publisher);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ConsumerBuilder<T> getConsumerBuilder(Schema<T> schema, TopicNameComponent topicNameComponent,
             ConsumerConfig consumerConfig) {
         List<String> topics = new ArrayList<>();
         for(String topic : consumerConfig.getTopics()) {
             topics.add(PulsarUtils.getActualTopic(topicNameComponent, topic));
         }
-        ConsumerBuilder<String> consumerBuilder = pulsarClient.newConsumer(Schema.STRING)
+        ConsumerBuilder<T> consumerBuilder = pulsarClient.newConsumer(schema)
                 .topics(topics)
                 .subscriptionType(consumerConfig.getSubscriptionType())
                 .subscriptionMode(consumerConfig.getSubscriptionMode())
@@ -154,11 +598,24 @@ public class PulsarConsumeClient implements BeanPostProcessor {
         if(ackTimeout < LEAST_ACK_TIMEOUT) {
             throw new RuntimeException("[Pulsar] ack timeout needs to be greater than 1 second.");
         }
-        consumerBuilder.ackTimeout(consumerConfig.getAckTimeout(), TimeUnit.MILLISECONDS);
+        consumerBuilder.ackTimeout(consumerConfig.getAckTimeout(), TimeUnit.MILLISECONDS)
+                .acknowledgmentGroupTime(consumerConfig.getAcknowledgmentGroupTime(), TimeUnit.MILLISECONDS);
+        if(consumerConfig.getNegativeAckRedeliveryDelay() > 0) {
+            consumerBuilder.negativeAckRedeliveryDelay(consumerConfig.getNegativeAckRedeliveryDelay(), TimeUnit.MILLISECONDS);
+        }
         if(consumerConfig.getConsumerInterceptors() != null) {
-            consumerBuilder.intercept(consumerConfig.getConsumerInterceptors());
+            if(schema == Schema.STRING) {
+                ((ConsumerBuilder<String>) consumerBuilder).intercept(consumerConfig.getConsumerInterceptors());
+            } else {
+                log.warn("[Pulsar] consumer interceptors are typed String and not applied to typed listeners, " +
+                        "topics: {}", topics);
+            }
+        }
+        if(consumerConfig.getSubscriptionType() == SubscriptionType.Key_Shared) {
+            consumerBuilder.keySharedPolicy(createKeySharedPolicy(consumerConfig));
         }
-        if(consumerConfig.getSubscriptionType() == SubscriptionType.Shared) {
+        if(consumerConfig.getSubscriptionType() == SubscriptionType.Shared
+                || consumerConfig.getSubscriptionType() == SubscriptionType.Key_Shared) {
             if(consumerConfig.isEnableRetry()) {
                 DeadLetterPolicy deadLetterPolicy = createDeadLetterPolicy(topicNameComponent, consumerConfig, topics);
                 consumerBuilder.deadLetterPolicy(deadLetterPolicy)
@@ -168,6 +625,28 @@ public class PulsarConsumeClient implements BeanPostProcessor {
         return consumerBuilder;
     }
 
+    @NotNull
+    static KeySharedPolicy createKeySharedPolicy(ConsumerConfig consumerConfig) {
+        KeySharedPolicy keySharedPolicy;
+        if(consumerConfig.getKeySharedMode() == KeySharedMode.STICKY) {
+            if(ArrayUtils.isEmpty(consumerConfig.getStickyHashRanges())) {
+                throw new RuntimeException("[Pulsar] sticky hash ranges must be not empty.");
+            }
+            List<Range> ranges = new ArrayList<>();
+            for(String range : consumerConfig.getStickyHashRanges()) {
+                String[] bounds = range.split("-");
+                if(bounds.length != 2) {
+                    throw new RuntimeException("[Pulsar] sticky hash range must be formatted as start-end: " + range);
+                }
+                ranges.add(Range.of(Integer.parseInt(bounds[0].trim()), Integer.parseInt(bounds[1].trim())));
+            }
+            keySharedPolicy = KeySharedPolicy.stickyHashRange().ranges(ranges);
+        } else {
+            keySharedPolicy = KeySharedPolicy.autoSplitHashRange();
+        }
+        return keySharedPolicy.setAllowOutOfOrderDelivery(consumerConfig.isAllowOutOfOrderDelivery());
+    }
+
     @NotNull
     private DeadLetterPolicy createDeadLetterPolicy(TopicNameComponent topicNameComponent, ConsumerConfig consumerConfig, List<String> topics) {
         DeadLetterPolicy.DeadLetterPolicyBuilder deadLetterPolicyBuilder = DeadLetterPolicy.builder();
@@ -232,6 +711,9 @@ public class PulsarConsumeClient implements BeanPostProcessor {
         if(consume.negativeAckRedeliveryDelay() > 0) {
             consumerConfig.setNegativeAckRedeliveryDelay(consume.negativeAckRedeliveryDelay());
         }
+        if(consume.negativeAckMaxRedeliveryDelay() > 0) {
+            consumerConfig.setNegativeAckMaxRedeliveryDelay(consume.negativeAckMaxRedeliveryDelay());
+        }
         if(StringUtils.isNotEmpty(consume.consumerName())) {
             consumerConfig.setConsumerName(consume.consumerName());
         }
@@ -247,7 +729,72 @@ public class PulsarConsumeClient implements BeanPostProcessor {
             });
             consumerConfig.setConsumerInterceptors(consumerInterceptors);
         }
+        if(StringUtils.isNotEmpty(consume.keySharedPolicy())) {
+            consumerConfig.setKeySharedMode(KeySharedMode.valueOf(consume.keySharedPolicy()));
+        }
+        if(ArrayUtils.isNotEmpty(consume.stickyHashRanges())) {
+            consumerConfig.setStickyHashRanges(consume.stickyHashRanges());
+        }
+        if(StringUtils.isNotEmpty(consume.allowOutOfOrderDelivery())) {
+            consumerConfig.setAllowOutOfOrderDelivery(Boolean.parseBoolean(consume.allowOutOfOrderDelivery()));
+        }
+        if(consume.batchReceiveMaxMessages() > 0) {
+            consumerConfig.setBatchReceiveMaxMessages(consume.batchReceiveMaxMessages());
+        }
+        if(consume.batchReceiveMaxBytes() > 0) {
+            consumerConfig.setBatchReceiveMaxBytes(consume.batchReceiveMaxBytes());
+        }
+        if(consume.batchReceiveTimeout() > 0) {
+            consumerConfig.setBatchReceiveTimeout(consume.batchReceiveTimeout());
+        }
+        if(StringUtils.isNotEmpty(consume.executorMode())) {
+            consumerConfig.setExecutorMode(ExecutorMode.valueOf(consume.executorMode()));
+        }
+        if(consume.ackGroupSize() > 0) {
+            consumerConfig.setAckGroupSize(consume.ackGroupSize());
+        }
+        if(consume.acknowledgmentGroupTime() > 0) {
+            consumerConfig.setAcknowledgmentGroupTime(consume.acknowledgmentGroupTime());
+        }
+        if(consume.concurrency() > 0) {
+            consumerConfig.setConcurrency(consume.concurrency());
+        }
+        if(consume.laneQueueSize() > 0) {
+            consumerConfig.setLaneQueueSize(consume.laneQueueSize());
+        }
+        if(ArrayUtils.isNotEmpty(consume.keyExtractor())) {
+            consumerConfig.setKeyExtractor(consume.keyExtractor()[0]);
+        }
+        if(StringUtils.isNotEmpty(consume.subscribeFailurePolicy())) {
+            consumerConfig.setSubscribeFailurePolicy(SubscribeFailurePolicy.valueOf(consume.subscribeFailurePolicy()));
+        }
+        if(consume.dedupMaxEntries() > 0) {
+            consumerConfig.setDedupMaxEntries(consume.dedupMaxEntries());
+        }
+        if(consume.dedupTtl() > 0) {
+            consumerConfig.setDedupTtl(consume.dedupTtl());
+        }
+        if(ArrayUtils.isNotEmpty(consume.dedupKeyExtractor())) {
+            consumerConfig.setDedupKeyExtractor(consume.dedupKeyExtractor()[0]);
+        }
         return consumerConfig;
     }
 
+    /**
+     * A binding collected during post-processing, subscribed once the application is ready
+     */
+    private static class PendingBinding {
+        private final String name;
+        private final String topics;
+        private final SubscribeFailurePolicy failurePolicy;
+        private final Supplier<CompletableFuture<Void>> subscriber;
+
+        private PendingBinding(String name, String topics, SubscribeFailurePolicy failurePolicy,
+                Supplier<CompletableFuture<Void>> subscriber) {
+            this.name = name;
+            this.topics = topics;
+            this.failurePolicy = failurePolicy;
+            this.subscriber = subscriber;
+        }
+    }
 }
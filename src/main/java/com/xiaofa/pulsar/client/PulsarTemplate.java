@@ -1,31 +1,98 @@
 package com.xiaofa.pulsar.client;
 
+import com.xiaofa.pulsar.annotations.PulsarProducer;
+import com.xiaofa.pulsar.beans.BulkSendResult;
+import com.xiaofa.pulsar.beans.FanoutResult;
 import com.xiaofa.pulsar.beans.TopicNameComponent;
+import com.xiaofa.pulsar.codec.PayloadCodec;
+import com.xiaofa.pulsar.codec.RawPayloads;
+import com.xiaofa.pulsar.config.LimiterConfig;
+import com.xiaofa.pulsar.config.ProducerConfig;
 import com.xiaofa.pulsar.config.PulsarConfiguration;
+import com.xiaofa.pulsar.constants.FanoutMode;
+import com.xiaofa.pulsar.constants.LimiterScope;
+import com.xiaofa.pulsar.event.ProducerWarmUpEvent;
 import com.xiaofa.pulsar.utils.PulsarUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.pulsar.client.api.*;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
- * Pulsar producer template, used to create producers and send messages
+ * Pulsar producer template, used to create producers and send messages.
+ * Producers are created with {@link Schema#BYTES}, String messages are sent as UTF-8, byte[] messages as they are
+ * and other payloads are encoded by the {@link PayloadCodec} bean, see {@link RawPayloads}.
+ * Producer settings can be overridden per topic by {@link PulsarProducer} on any bean,
+ * or by properties under {@code pulsar.producer.topics.<topicName>.*}.
+ * On shutdown, after the consumers have been drained, the producers are flushed and closed
+ * within {@code pulsar.client.shutdownTimeout}.
  * @author pig
  **/
+@Slf4j
 @Component
-public class PulsarTemplate {
+public class PulsarTemplate implements BeanPostProcessor, SmartInitializingSingleton, ApplicationEventPublisherAware,
+        SmartLifecycle {
+    private static final String TOPIC_PROPERTIES_PREFIX = "pulsar.producer.topics";
+    /**
+     * Stopped after {@link PulsarConsumeClient}
+     */
+    static final int PHASE = PulsarConsumeClient.PHASE - 1000;
+
     private final PulsarClient pulsarClient;
     private final PulsarConfiguration pulsarProperties;
-    private final static Map<String, Producer<String>> PRODUCER_MAP = new HashMap<>();
+    private final PayloadCodec payloadCodec;
+    private final Binder binder;
+    private final ProducerRegistry producerRegistry;
+    private final Map<String, PulsarProducer> producerAnnotations = new ConcurrentHashMap<>();
+    private final Map<String, SendLimiter> sendLimiters = new ConcurrentHashMap<>();
+    private final Set<String> warmUpTopics = new LinkedHashSet<>();
+    private ApplicationEventPublisher applicationEventPublisher;
+    private volatile boolean ready;
+    private volatile boolean running;
+    private final SendLimiter globalSendLimiter;
 
-    public PulsarTemplate(PulsarClient pulsarClient, PulsarConfiguration pulsarProperties) {
+    public PulsarTemplate(PulsarClient pulsarClient, PulsarConfiguration pulsarProperties,
+            PayloadCodec payloadCodec, Environment environment) {
         this.pulsarClient = pulsarClient;
         this.pulsarProperties = pulsarProperties;
+        this.payloadCodec = payloadCodec;
+        this.binder = Binder.get(environment);
+        this.producerRegistry = new ProducerRegistry(this::createProducer,
+                pulsarProperties.getProducer().getIdleTimeout(), sendLimiters::remove);
+        this.globalSendLimiter = new SendLimiter(pulsarProperties.getProducer().getLimiter());
     }
 
     public class TemplateBuilder{
@@ -60,6 +127,26 @@ public class PulsarTemplate {
          * list of message topics
          */
         private String[] topics;
+        /**
+         * maximum number of bulk sends waiting for the broker ack
+         */
+        private int maxInFlight;
+        /**
+         * when a fan-out send completes
+         */
+        private FanoutMode fanoutMode = FanoutMode.ALL;
+        /**
+         * required acks in {@link FanoutMode#QUORUM} mode
+         */
+        private int quorum;
+        /**
+         * the message key, used for partition routing, Key_Shared dispatch and topic compaction
+         */
+        private String key;
+        /**
+         * the ordering key, overrides the message key for Key_Shared dispatch only
+         */
+        private byte[] orderingKey;
         public TemplateBuilder persistent(boolean persistent) {
             this.persistent = persistent;
             return this;
@@ -81,6 +168,34 @@ public class PulsarTemplate {
             this.topics = topics;
             return this;
         }
+        public TemplateBuilder maxInFlight(int maxInFlight) {
+            if(maxInFlight <= 0) {
+                throw new IllegalArgumentException("[Pulsar] maxInFlight must be greater than 0: " + maxInFlight);
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+        public TemplateBuilder key(String key) {
+            this.key = key;
+            return this;
+        }
+        public TemplateBuilder orderingKey(String orderingKey) {
+            this.orderingKey = orderingKey == null ? null : orderingKey.getBytes(StandardCharsets.UTF_8);
+            return this;
+        }
+        public TemplateBuilder orderingKey(byte[] orderingKey) {
+            this.orderingKey = orderingKey;
+            return this;
+        }
+        public TemplateBuilder fanoutMode(FanoutMode fanoutMode) {
+            this.fanoutMode = fanoutMode;
+            return this;
+        }
+        public TemplateBuilder quorum(int quorum) {
+            this.fanoutMode = FanoutMode.QUORUM;
+            this.quorum = quorum;
+            return this;
+        }
 
         /**
          * Send message synchronously
@@ -89,21 +204,18 @@ public class PulsarTemplate {
          * @throws PulsarClientException    pulsar send exception
          */
         public Map<String, MessageId> send(String message) throws PulsarClientException {
-            Map<String, MessageId> sendResult = new HashMap<>();
-            if(ArrayUtils.isEmpty(topics)) {
-                throw new PulsarClientException("[Pulsar] topics must be not empty");
-            } else {
-                TopicNameComponent topicNameComponent = new TopicNameComponent();
-                topicNameComponent.setTenancy(StringUtils.isNotEmpty(tenancy)?tenancy:pulsarProperties.getTenancy());
-                topicNameComponent.setNamespace(StringUtils.isNotEmpty(namespace)?namespace:pulsarProperties.getNamespace());
-                topicNameComponent.setPersistent(persistent);
-                for (String topic : topics) {
-                    topic = PulsarUtils.getActualTopic(topicNameComponent, topic);
-                    TypedMessageBuilder<String> typeMessageBuilder = getTypeMessageBuilder(message, delay, timeUnit, topic);
-                    sendResult.put(topic, typeMessageBuilder.send());
-                }
-            }
-            return sendResult;
+            return doSend(message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Encode the payload with the {@link PayloadCodec} and send it synchronously
+         * @param payload   the object that the producer wants to send
+         * @param <T>       the payload type
+         * @return  send result
+         * @throws PulsarClientException    pulsar send exception
+         */
+        public <T> Map<String, MessageId> send(T payload) throws PulsarClientException {
+            return doSend(encode(payload));
         }
 
         /**
@@ -113,21 +225,296 @@ public class PulsarTemplate {
          * @throws PulsarClientException    pulsar send exception
          */
         public Map<String, CompletableFuture<MessageId>> sendAsync(String message) throws PulsarClientException {
+            return doSendAsync(message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Encode the payload with the {@link PayloadCodec} and send it asynchronously
+         * @param payload   the object that the producer wants to send
+         * @param <T>       the payload type
+         * @return  send result
+         * @throws PulsarClientException    pulsar send exception
+         */
+        public <T> Map<String, CompletableFuture<MessageId>> sendAsync(T payload) throws PulsarClientException {
+            return doSendAsync(encode(payload));
+        }
+
+        /**
+         * Send the message to every topic, encoding the payload once and sharing the bytes across the producers.
+         * The future completes once the acks required by the {@link FanoutMode} have arrived,
+         * and fails as soon as too many topics have failed for that to happen.
+         * @param payload   the message that the producer wants to send
+         * @param <T>       the payload type
+         * @return  the combined result future
+         */
+        public <T> CompletableFuture<FanoutResult> sendFanout(T payload) {
+            CompletableFuture<FanoutResult> future = new CompletableFuture<>();
+            String[] actualTopics;
+            byte[] message;
+            try {
+                actualTopics = resolveTopics();
+                message = encode(payload);
+            } catch (PulsarClientException | RuntimeException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+            int required = fanoutMode.required(actualTopics.length, quorum);
+            int tolerated = actualTopics.length - required;
+            FanoutResult result = new FanoutResult(actualTopics.length);
+            AtomicInteger acked = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            for (String topic : actualTopics) {
+                sendLimited(topic, getProducerAsync(topic), message, delay, timeUnit, key, orderingKey)
+                        .whenComplete((messageId, e) -> {
+                            if (e == null) {
+                                result.acked(topic, messageId);
+                                if (acked.incrementAndGet() == required) {
+                                    future.complete(result);
+                                }
+                            } else {
+                                result.failed(topic, e);
+                                if (failed.incrementAndGet() == tolerated + 1) {
+                                    future.completeExceptionally(new PulsarClientException(String.format(
+                                            "[Pulsar] fanout send failed, %d of %d topics failed, %d acks required",
+                                            tolerated + 1, actualTopics.length, required), e));
+                                }
+                            }
+                        });
+            }
+            return future;
+        }
+
+        /**
+         * Send all messages asynchronously, keeping at most {@code maxInFlight} of them waiting for the broker ack.
+         * Every message also takes a slot of the topic's {@link SendLimiter}, like {@link #sendAsync(Object)}.
+         * The producers are flushed at the end and the call returns once every message has been acked or failed.
+         * @param payloads  the messages that the producer wants to send
+         * @param <T>       the payload type
+         * @return  the aggregate result with the per-message failures
+         * @throws PulsarClientException    pulsar producer creation exception
+         */
+        public <T> BulkSendResult sendAll(Iterable<T> payloads) throws PulsarClientException {
+            return sendAll(payloads, null);
+        }
+
+        /**
+         * Send all messages, keyed by the extractor, see {@link #sendAll(Iterable)}
+         * @param payloads  the messages that the producer wants to send
+         * @param keyExtractor  derives the message key from the payload, null to use the builder's key
+         * @param <T>       the payload type
+         * @return  the aggregate result with the per-message failures
+         * @throws PulsarClientException    pulsar producer creation exception
+         */
+        public <T> BulkSendResult sendAll(Iterable<T> payloads, Function<? super T, String> keyExtractor)
+                throws PulsarClientException {
+            long start = System.currentTimeMillis();
+            int window = maxInFlight > 0 ? maxInFlight : pulsarProperties.getProducer().getBulkMaxInFlight();
+            if(window <= 0) {
+                throw new PulsarClientException("[Pulsar] bulkMaxInFlight must be greater than 0: " + window);
+            }
+            String[] actualTopics = resolveTopics();
+            List<Producer<byte[]>> producers = new ArrayList<>(actualTopics.length);
+            for (String topic : actualTopics) {
+                producers.add(getProducer(topic));
+            }
+            Semaphore inFlight = new Semaphore(window);
+            BulkSendResult result = new BulkSendResult();
+            long index = 0;
+            try {
+                for (T payload : payloads) {
+                    long messageIndex = index++;
+                    byte[] message;
+                    String messageKey;
+                    try {
+                        message = encode(payload);
+                        messageKey = keyExtractor != null ? keyExtractor.apply(payload) : key;
+                    } catch (RuntimeException e) {
+                        result.failure(messageIndex, null, e);
+                        continue;
+                    }
+                    for (int i = 0; i < actualTopics.length; i++) {
+                        String topic = actualTopics[i];
+                        inFlight.acquire();
+                        CompletableFuture<MessageId> sent;
+                        try {
+                            Producer<byte[]> producer = getProducer(topic);
+                            producers.set(i, producer);
+                            sent = sendLimited(topic, CompletableFuture.completedFuture(producer), message,
+                                    delay, timeUnit, messageKey, orderingKey);
+                        } catch (PulsarClientException | RuntimeException e) {
+                            inFlight.release();
+                            result.failure(messageIndex, topic, e);
+                            continue;
+                        }
+                        sent.whenComplete((messageId, e) -> {
+                            inFlight.release();
+                            if (e != null) {
+                                result.failure(messageIndex, topic, e);
+                            } else {
+                                result.success();
+                            }
+                        });
+                    }
+                }
+                for (Producer<byte[]> producer : producers) {
+                    producer.flushAsync();
+                }
+                inFlight.acquire(window);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PulsarClientException(e);
+            }
+            result.complete(System.currentTimeMillis() - start);
+            return result;
+        }
+
+        /**
+         * Send all messages of the stream, see {@link #sendAll(Iterable)}
+         * @param payloads  the messages that the producer wants to send
+         * @param <T>       the payload type
+         * @return  the aggregate result with the per-message failures
+         * @throws PulsarClientException    pulsar producer creation exception
+         */
+        public <T> BulkSendResult sendAll(Stream<T> payloads) throws PulsarClientException {
+            return sendAll((Iterable<T>) payloads::iterator);
+        }
+
+        private Map<String, MessageId> doSend(byte[] message) throws PulsarClientException {
+            Map<String, MessageId> sendResult = new HashMap<>();
+            for (String topic : resolveTopics()) {
+                TypedMessageBuilder<byte[]> typeMessageBuilder =
+                        getTypeMessageBuilder(getProducer(topic), message, delay, timeUnit, key, orderingKey);
+                sendResult.put(topic, typeMessageBuilder.send());
+            }
+            return sendResult;
+        }
+
+        private Map<String, CompletableFuture<MessageId>> doSendAsync(byte[] message) throws PulsarClientException {
             Map<String, CompletableFuture<MessageId>> sendResult = new HashMap<>();
+            for (String topic : resolveTopics()) {
+                sendResult.put(topic, sendLimited(topic, getProducerAsync(topic),
+                        message, delay, timeUnit, key, orderingKey));
+            }
+            return sendResult;
+        }
+
+        private String[] resolveTopics() throws PulsarClientException {
             if(ArrayUtils.isEmpty(topics)) {
                 throw new PulsarClientException("[Pulsar] topics must be not empty");
-            } else {
-                TopicNameComponent topicNameComponent = new TopicNameComponent();
-                topicNameComponent.setTenancy(StringUtils.isNotBlank(tenancy)?tenancy:pulsarProperties.getTenancy());
-                topicNameComponent.setNamespace(StringUtils.isNotBlank(namespace)?namespace:pulsarProperties.getNamespace());
-                topicNameComponent.setPersistent(persistent);
-                for (String topic : topics) {
-                    topic = PulsarUtils.getActualTopic(topicNameComponent, topic);
-                    TypedMessageBuilder<String> typeMessageBuilder = getTypeMessageBuilder(message, delay, timeUnit, topic);
-                    sendResult.put(topic, typeMessageBuilder.sendAsync());
-                }
             }
-            return sendResult;
+            checkDelay(delay, timeUnit);
+            TopicNameComponent topicNameComponent = new TopicNameComponent();
+            topicNameComponent.setTenancy(StringUtils.isNotBlank(tenancy)?tenancy:pulsarProperties.getTenancy());
+            topicNameComponent.setNamespace(StringUtils.isNotBlank(namespace)?namespace:pulsarProperties.getNamespace());
+            topicNameComponent.setPersistent(persistent);
+            String[] actualTopics = new String[topics.length];
+            for (int i = 0; i < topics.length; i++) {
+                actualTopics[i] = PulsarUtils.getActualTopic(topicNameComponent, topics[i]);
+            }
+            return actualTopics;
+        }
+    }
+
+    /**
+     * Prepared sender of a single topic.
+     * The fully-qualified topic and the producer are resolved once, so sending only encodes the payload.
+     * Obtain it from {@link #sender(String)} and keep it for the lifetime of the caller.
+     */
+    public class TopicSender {
+        private final String topic;
+        private volatile ProducerRegistry.ProducerHolder holder;
+
+        private TopicSender(String topic) {
+            this.topic = topic;
+            this.holder = producerRegistry.acquire(topic);
+        }
+
+        /**
+         * @return the fully-qualified topic
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * Send message synchronously
+         * @param payload   the message that the producer wants to send
+         * @param <T>       the payload type
+         * @return  the message id
+         * @throws PulsarClientException    pulsar send exception
+         */
+        public <T> MessageId send(T payload) throws PulsarClientException {
+            byte[] message = encode(payload);
+            try {
+                return getTypeMessageBuilder(producer().get(), message, 0, null, null, null).send();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PulsarClientException(e);
+            } catch (ExecutionException e) {
+                throw PulsarClientException.unwrap(e.getCause());
+            }
+        }
+
+        /**
+         * Send message asynchronously
+         * @param payload   the message that the producer wants to send
+         * @param <T>       the payload type
+         * @return  the message id future
+         */
+        public <T> CompletableFuture<MessageId> sendAsync(T payload) {
+            return sendAsync(payload, 0, null);
+        }
+
+        /**
+         * Send keyed message asynchronously,
+         * messages with the same key go to the same partition and the same Key_Shared consumer
+         * @param key       the message key
+         * @param payload   the message that the producer wants to send
+         * @param <T>       the payload type
+         * @return  the message id future
+         */
+        public <T> CompletableFuture<MessageId> sendAsync(String key, T payload) {
+            byte[] message;
+            try {
+                message = encode(payload);
+            } catch (RuntimeException e) {
+                CompletableFuture<MessageId> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            return sendLimited(topic, producer(), message, 0, null, key, null);
+        }
+
+        /**
+         * Send message asynchronously, delivered after the delay
+         * @param payload   the message that the producer wants to send
+         * @param delay     the amount of delay before the message will be delivered
+         * @param unit      the time unit for the delay
+         * @param <T>       the payload type
+         * @return  the message id future
+         */
+        public <T> CompletableFuture<MessageId> sendAsync(T payload, long delay, TimeUnit unit) {
+            byte[] message;
+            try {
+                checkDelay(delay, unit);
+                message = encode(payload);
+            } catch (PulsarClientException | RuntimeException e) {
+                CompletableFuture<MessageId> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            return sendLimited(topic, producer(), message, delay, unit, null, null);
+        }
+
+        private CompletableFuture<Producer<byte[]>> producer() {
+            ProducerRegistry.ProducerHolder current = holder;
+            CompletableFuture<Producer<byte[]>> producer = current.isUsable() ? current.touch() : null;
+            while(producer == null) {
+                current = producerRegistry.acquire(topic);
+                holder = current;
+                producer = current.touch();
+            }
+            return producer;
         }
     }
 
@@ -135,35 +522,365 @@ public class PulsarTemplate {
         return new TemplateBuilder();
     }
 
-    private TypedMessageBuilder<String> getTypeMessageBuilder(
-            String message, long delay, TimeUnit unit, String topic) throws PulsarClientException {
-        Producer<String> producer;
-        if(PRODUCER_MAP.containsKey(topic)) {
-            producer = PRODUCER_MAP.get(topic);
-            if(!producer.isConnected()) {
-                producer = createProducer(topic);
+    /**
+     * Prepare a sender of the topic in the configured tenancy and namespace
+     * @param topic the short topic name
+     * @return  the prepared sender
+     */
+    public TopicSender sender(String topic) {
+        return sender(topic, defaultTopicNameComponent());
+    }
+
+    /**
+     * Prepare a sender of the topic
+     * @param topic the short topic name
+     * @param topicNameComponent    persistent, tenancy and namespace of the topic
+     * @return  the prepared sender
+     */
+    public TopicSender sender(String topic, TopicNameComponent topicNameComponent) {
+        return new TopicSender(PulsarUtils.getActualTopic(topicNameComponent, topic));
+    }
+
+    private byte[] encode(Object payload) {
+        return RawPayloads.encode(payload, payloadCodec);
+    }
+
+    /**
+     * Get the send limiter of a topic, the global one unless the limiter scope is PRODUCER
+     * @param topic the fully-qualified topic
+     * @return  the send limiter, null if limiting is disabled
+     */
+    public SendLimiter getSendLimiter(String topic) {
+        LimiterConfig limiterConfig = pulsarProperties.getProducer().getLimiter();
+        if(limiterConfig.getScope() == LimiterScope.GLOBAL) {
+            return limiterConfig.isEnabled() ? globalSendLimiter : null;
+        }
+        SendLimiter sendLimiter = sendLimiters.get(topic);
+        if(sendLimiter == null) {
+            sendLimiter = sendLimiters.computeIfAbsent(topic, key ->
+                    new SendLimiter(getProducerConfig(key.substring(key.lastIndexOf('/') + 1)).getLimiter()));
+        }
+        return sendLimiter.isEnabled() ? sendLimiter : null;
+    }
+
+    /**
+     * @return the per-producer send limiters, keyed by fully-qualified topic,
+     * including those of topics where limiting is disabled
+     */
+    public Map<String, SendLimiter> getSendLimiters() {
+        return Collections.unmodifiableMap(sendLimiters);
+    }
+
+    private CompletableFuture<MessageId> sendLimited(String topic, CompletableFuture<Producer<byte[]>> producer,
+            byte[] message, long delay, TimeUnit unit, String key, byte[] orderingKey) {
+        SendLimiter sendLimiter = getSendLimiter(topic);
+        if(sendLimiter != null) {
+            try {
+                if(!sendLimiter.acquire()) {
+                    CompletableFuture<MessageId> rejected = new CompletableFuture<>();
+                    rejected.completeExceptionally(new PulsarClientException.ProducerQueueIsFullError(
+                            "[Pulsar] send limiter rejected the message, topic: " + topic));
+                    return rejected;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                CompletableFuture<MessageId> interrupted = new CompletableFuture<>();
+                interrupted.completeExceptionally(new PulsarClientException(e));
+                return interrupted;
             }
-        } else {
-            producer = createProducer(topic);
         }
-        TypedMessageBuilder<String> typedMessageBuilder = producer.newMessage().value(message);
-        if(delay > 0) {
-            if(unit == null) {
-                throw new PulsarClientException("[Pulsar] delay timeunit must be not empty");
+        if(producer.isDone() && !producer.isCompletedExceptionally()) {
+            return send(sendLimiter, producer.join(), message, delay, unit, key, orderingKey);
+        }
+        if(sendLimiter != null) {
+            producer.whenComplete((p, e) -> {
+                if(e != null) {
+                    sendLimiter.release();
+                }
+            });
+        }
+        return producer.thenCompose(p -> send(sendLimiter, p, message, delay, unit, key, orderingKey));
+    }
+
+    /**
+     * Send through a resolved producer, timed from here so that the producer creation is not taken for send latency
+     */
+    private CompletableFuture<MessageId> send(SendLimiter sendLimiter, Producer<byte[]> producer,
+            byte[] message, long delay, TimeUnit unit, String key, byte[] orderingKey) {
+        long start = System.nanoTime();
+        CompletableFuture<MessageId> future;
+        try {
+            future = getTypeMessageBuilder(producer, message, delay, unit, key, orderingKey).sendAsync();
+        } catch (RuntimeException e) {
+            if(sendLimiter != null) {
+                sendLimiter.release();
             }
+            throw e;
+        }
+        if(sendLimiter != null) {
+            future.whenComplete((messageId, e) -> sendLimiter.release(System.nanoTime() - start, isOverload(e)));
+        }
+        return future;
+    }
+
+    private static boolean isOverload(Throwable e) {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        return cause instanceof PulsarClientException.ProducerQueueIsFullError
+                || cause instanceof PulsarClientException.TimeoutException;
+    }
+
+    private void checkDelay(long delay, TimeUnit unit) throws PulsarClientException {
+        if(delay > 0 && unit == null) {
+            throw new PulsarClientException("[Pulsar] delay timeunit must be not empty");
+        }
+    }
+
+    private TypedMessageBuilder<byte[]> getTypeMessageBuilder(Producer<byte[]> producer, byte[] message,
+            long delay, TimeUnit unit, String key, byte[] orderingKey) {
+        TypedMessageBuilder<byte[]> typedMessageBuilder = producer.newMessage().value(message);
+        if(delay > 0) {
             typedMessageBuilder.deliverAfter(delay, unit);
         }
+        if(key != null) {
+            typedMessageBuilder.key(key);
+        }
+        if(orderingKey != null) {
+            typedMessageBuilder.orderingKey(orderingKey);
+        }
         return typedMessageBuilder;
     }
 
-    private Producer<String> createProducer(String topic) throws PulsarClientException {
-        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+    private CompletableFuture<Producer<byte[]>> getProducerAsync(String topic) {
+        return producerRegistry.getProducerAsync(topic);
+    }
+
+    private Producer<byte[]> getProducer(String topic) throws PulsarClientException {
+        try {
+            return getProducerAsync(topic).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        } catch (ExecutionException e) {
+            throw PulsarClientException.unwrap(e.getCause());
+        }
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(@NotNull Object bean, @NotNull String beanName) throws BeansException {
+        Set<PulsarProducer> pulsarProducers =
+                AnnotatedElementUtils.findMergedRepeatableAnnotations(bean.getClass(), PulsarProducer.class);
+        for (PulsarProducer pulsarProducer : pulsarProducers) {
+            for (String topic : pulsarProducer.value()) {
+                if(pulsarProducer.warmUp()) {
+                    warmUpTopics.add(topic);
+                }
+                PulsarProducer previous = producerAnnotations.put(topic, pulsarProducer);
+                if(previous != null && !previous.equals(pulsarProducer)) {
+                    log.warn("[Pulsar] producer settings of topic {} declared more than once, bean {} wins",
+                            topic, beanName);
+                }
+            }
+        }
+        return bean;
+    }
+
+    /**
+     * Create the producers of the warm-up topics in parallel, once every singleton has been post-processed.
+     * The application context waits up to {@code pulsar.producer.warmUpTimeout},
+     * then {@link ProducerWarmUpEvent} is published and {@link #isReady()} turns true.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if(ArrayUtils.isNotEmpty(pulsarProperties.getProducer().getWarmUpTopics())) {
+            Collections.addAll(warmUpTopics, pulsarProperties.getProducer().getWarmUpTopics());
+        }
+        long start = System.currentTimeMillis();
+        Set<String> topics = new LinkedHashSet<>();
+        Map<String, CompletableFuture<Producer<byte[]>>> producers = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (String topic : warmUpTopics) {
+            String actualTopic;
+            try {
+                actualTopic = topic.contains("://") ? topic : PulsarUtils.getActualTopic(defaultTopicNameComponent(), topic);
+            } catch (RuntimeException e) {
+                topics.add(topic);
+                failures.put(topic, e);
+                continue;
+            }
+            topics.add(actualTopic);
+            producers.put(actualTopic, producerRegistry.getProducerAsync(actualTopic));
+        }
+        long deadline = start + pulsarProperties.getProducer().getWarmUpTimeout();
+        for (Map.Entry<String, CompletableFuture<Producer<byte[]>>> entry : producers.entrySet()) {
+            try {
+                entry.getValue().get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(entry.getKey(), e);
+            } catch (ExecutionException e) {
+                failures.put(entry.getKey(), e.getCause());
+            } catch (TimeoutException e) {
+                failures.put(entry.getKey(), e);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        if(!failures.isEmpty()) {
+            if(pulsarProperties.getProducer().isWarmUpFailFast()) {
+                Map.Entry<String, Throwable> failure = failures.entrySet().iterator().next();
+                throw new RuntimeException(String.format("[Pulsar] producer warm-up failed, %d of %d topics, first: %s",
+                        failures.size(), topics.size(), failure.getKey()), failure.getValue());
+            }
+            failures.forEach((topic, e) -> log.warn("[Pulsar] producer warm-up failed, topic: {}", topic, e));
+        }
+        if(!topics.isEmpty()) {
+            log.info("[Pulsar] {} producers warmed up in {} ms", topics.size() - failures.size(), elapsed);
+        }
+        ready = true;
+        if(applicationEventPublisher != null) {
+            applicationEventPublisher.publishEvent(
+                    new ProducerWarmUpEvent(this, topics, failures, elapsed));
+        }
+    }
+
+    /**
+     * @return true once the producer warm-up has finished
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Flush and close the producers, pending sends get up to {@code pulsar.client.shutdownTimeout} to complete
+     */
+    @Override
+    public void stop() {
+        if(!running) {
+            return;
+        }
+        running = false;
+        long start = System.currentTimeMillis();
+        try {
+            producerRegistry.close().get(pulsarProperties.getClient().getShutdownTimeout(), TimeUnit.MILLISECONDS);
+            log.info("[Pulsar] producers flushed and closed in {} ms", System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("[Pulsar] producers not closed within the shutdown timeout");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(@NotNull ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    private TopicNameComponent defaultTopicNameComponent() {
+        TopicNameComponent topicNameComponent = new TopicNameComponent();
+        topicNameComponent.setTenancy(pulsarProperties.getTenancy());
+        topicNameComponent.setNamespace(pulsarProperties.getNamespace());
+        topicNameComponent.setPersistent(pulsarProperties.isPersistent());
+        return topicNameComponent;
+    }
+
+    /**
+     * Resolve the effective settings of a topic's producer:
+     * {@code pulsar.producer.*}, then {@link PulsarProducer}, then {@code pulsar.producer.topics.<topicName>.*}
+     * @param topic the short topic name
+     * @return  the producer settings
+     */
+    public ProducerConfig getProducerConfig(String topic) {
+        ProducerConfig producerConfig = new ProducerConfig();
+        BeanUtils.copyProperties(pulsarProperties.getProducer(), producerConfig);
+        LimiterConfig limiterConfig = new LimiterConfig();
+        BeanUtils.copyProperties(pulsarProperties.getProducer().getLimiter(), limiterConfig);
+        producerConfig.setLimiter(limiterConfig);
+        PulsarProducer pulsarProducer = producerAnnotations.get(topic);
+        if(pulsarProducer != null) {
+            applyAnnotation(producerConfig, pulsarProducer);
+        }
+        binder.bind(TOPIC_PROPERTIES_PREFIX + "[" + topic + "]", Bindable.ofInstance(producerConfig));
+        return producerConfig;
+    }
+
+    private void applyAnnotation(ProducerConfig producerConfig, PulsarProducer pulsarProducer) {
+        if(pulsarProducer.sendTimeout() > 0) {
+            producerConfig.setSendTimeout(pulsarProducer.sendTimeout());
+        }
+        if(StringUtils.isNotEmpty(pulsarProducer.enableBatching())) {
+            producerConfig.setEnableBatching(Boolean.parseBoolean(pulsarProducer.enableBatching()));
+        }
+        if(StringUtils.isNotEmpty(pulsarProducer.blockIfQueueFull())) {
+            producerConfig.setBlockIfQueueFull(Boolean.parseBoolean(pulsarProducer.blockIfQueueFull()));
+        }
+        if(pulsarProducer.batchingMaxPublishDelay() > 0) {
+            producerConfig.setBatchingMaxPublishDelay(pulsarProducer.batchingMaxPublishDelay());
+        }
+        if(pulsarProducer.batchingMaxMessages() > 0) {
+            producerConfig.setBatchingMaxMessages(pulsarProducer.batchingMaxMessages());
+        }
+        if(pulsarProducer.batchingMaxBytes() > 0) {
+            producerConfig.setBatchingMaxBytes(pulsarProducer.batchingMaxBytes());
+        }
+        if(pulsarProducer.maxPendingMessages() > 0) {
+            producerConfig.setMaxPendingMessages(pulsarProducer.maxPendingMessages());
+        }
+        if(pulsarProducer.maxPendingMessagesAcrossPartitions() > 0) {
+            producerConfig.setMaxPendingMessagesAcrossPartitions(pulsarProducer.maxPendingMessagesAcrossPartitions());
+        }
+        if(StringUtils.isNotEmpty(pulsarProducer.compressionType())) {
+            producerConfig.setCompressionType(CompressionType.valueOf(pulsarProducer.compressionType()));
+        }
+        if(StringUtils.isNotEmpty(pulsarProducer.messageRoutingMode())) {
+            producerConfig.setMessageRoutingMode(MessageRoutingMode.valueOf(pulsarProducer.messageRoutingMode()));
+        }
+        if(StringUtils.isNotEmpty(pulsarProducer.hashingScheme())) {
+            producerConfig.setHashingScheme(HashingScheme.valueOf(pulsarProducer.hashingScheme()));
+        }
+        if(StringUtils.isNotEmpty(pulsarProducer.keyBasedBatching())) {
+            producerConfig.setKeyBasedBatching(Boolean.parseBoolean(pulsarProducer.keyBasedBatching()));
+        }
+        if(ArrayUtils.isNotEmpty(pulsarProducer.messageRouter())) {
+            producerConfig.setMessageRouter(pulsarProducer.messageRouter()[0]);
+        }
+    }
+
+    private CompletableFuture<Producer<byte[]>> createProducer(String topic) {
+        ProducerConfig producerConfig = getProducerConfig(topic.substring(topic.lastIndexOf('/') + 1));
+        ProducerBuilder<byte[]> producerBuilder = pulsarClient.newProducer(Schema.BYTES)
                 .topic(topic)
-                .blockIfQueueFull(pulsarProperties.getProducer().isBlockIfQueueFull())
-                .enableBatching(pulsarProperties.getProducer().isEnableBatching())
-                .sendTimeout(pulsarProperties.getProducer().getSendTimeout(), TimeUnit.MILLISECONDS)
-                .create();
-        PRODUCER_MAP.put(topic, producer);
-        return producer;
+                .blockIfQueueFull(producerConfig.isBlockIfQueueFull())
+                .enableBatching(producerConfig.isEnableBatching())
+                .sendTimeout(producerConfig.getSendTimeout(), TimeUnit.MILLISECONDS)
+                .batchingMaxPublishDelay(producerConfig.getBatchingMaxPublishDelay(), TimeUnit.MILLISECONDS)
+                .batchingMaxMessages(producerConfig.getBatchingMaxMessages())
+                .batchingMaxBytes(producerConfig.getBatchingMaxBytes())
+                .maxPendingMessages(producerConfig.getMaxPendingMessages())
+                .maxPendingMessagesAcrossPartitions(producerConfig.getMaxPendingMessagesAcrossPartitions())
+                .compressionType(producerConfig.getCompressionType())
+                .messageRoutingMode(producerConfig.getMessageRoutingMode())
+                .hashingScheme(producerConfig.getHashingScheme());
+        if(producerConfig.isEnableBatching() && producerConfig.isKeyBasedBatching()) {
+            producerBuilder.batcherBuilder(BatcherBuilder.KEY_BASED);
+        }
+        if(producerConfig.getMessageRouter() != null) {
+            producerBuilder.messageRouter(BeanUtils.instantiateClass(producerConfig.getMessageRouter()))
+                    .messageRoutingMode(MessageRoutingMode.CustomPartition);
+        }
+        return producerBuilder.createAsync();
     }
 }
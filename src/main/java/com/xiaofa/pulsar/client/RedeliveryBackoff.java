@@ -0,0 +1,125 @@
+package com.xiaofa.pulsar.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Negatively acknowledges the messages whose handler failed, with an exponential backoff per message.
+ * The delay starts at the consumer's negative ack redelivery delay and doubles with the message's
+ * redelivery count, up to a cap, then up to {@value #JITTER_PERCENT}% of it is randomly taken off
+ * so that messages failing together are not redelivered together.
+ * The consumer already waits its base delay after a negative ack, the rest of the delay is waited
+ * on the timer before the negative ack is sent. The message stays in the consumer's unacked tracker
+ * meanwhile and the ack timeout runs since the message was received, so the handler time, the wait
+ * and the base delay together are kept {@value #ACK_TIMEOUT_MARGIN} ms below the ack timeout,
+ * otherwise the tracker redelivers the message on its own and it is handled twice.
+ * @author pig
+ */
+@Slf4j
+class RedeliveryBackoff {
+    private static final int JITTER_PERCENT = 20;
+    /**
+     * the unacked tracker times messages out up to one tick early, its tick is 1 second
+     */
+    private static final long ACK_TIMEOUT_MARGIN = 1000;
+
+    private final long baseDelay;
+    private final long maxDelay;
+    private final long ackTimeout;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param baseDelay the consumer's negative ack redelivery delay in milliseconds
+     * @param maxDelay  the maximum delay in milliseconds
+     * @param ackTimeout    the consumer's ack timeout in milliseconds
+     * @param timer the scheduler delaying the negative acks
+     */
+    RedeliveryBackoff(long baseDelay, long maxDelay, long ackTimeout, ScheduledExecutorService timer) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = Math.max(Math.min(maxDelay, ackTimeout - ACK_TIMEOUT_MARGIN), baseDelay);
+        this.ackTimeout = ackTimeout;
+        this.timer = timer;
+    }
+
+    /**
+     * Wrap the listener handling the messages, failures are logged and negatively acknowledged
+     * @param listener  the listener handling the messages
+     * @return  the wrapping listener
+     */
+    <T> MessageListener<T> wrap(MessageListener<T> listener) {
+        return new MessageListener<T>() {
+            @Override
+            public void received(Consumer<T> consumer, Message<T> message) {
+                long receivedAt = System.currentTimeMillis();
+                try {
+                    listener.received(consumer, message);
+                } catch (RuntimeException e) {
+                    log.error("[Pulsar] handle message failed, topic: {}, messageId: {}, redeliveryCount: {}",
+                            message.getTopicName(), message.getMessageId(), message.getRedeliveryCount(), e);
+                    negativeAcknowledge(consumer, message, receivedAt);
+                }
+            }
+
+            @Override
+            public void reachedEndOfTopic(Consumer<T> consumer) {
+                listener.reachedEndOfTopic(consumer);
+            }
+        };
+    }
+
+    /**
+     * Redeliver the message after its backoff
+     * @param consumer  pulsar consumer
+     * @param message   the failed message
+     * @param receivedAt    when the message was handed to the handler, in epoch milliseconds
+     */
+    <T> void negativeAcknowledge(Consumer<T> consumer, Message<T> message, long receivedAt) {
+        schedule(delayOf(message.getRedeliveryCount()), receivedAt, () -> consumer.negativeAcknowledge(message));
+    }
+
+    /**
+     * Redeliver the batch after the backoff of its most redelivered message
+     * @param consumer  pulsar consumer
+     * @param messages  the failed batch
+     * @param receivedAt    when the batch was handed to the handler, in epoch milliseconds
+     */
+    <T> void negativeAcknowledge(Consumer<T> consumer, Messages<T> messages, long receivedAt) {
+        int redeliveryCount = 0;
+        for(Message<T> message : messages) {
+            redeliveryCount = Math.max(redeliveryCount, message.getRedeliveryCount());
+        }
+        schedule(delayOf(redeliveryCount), receivedAt, () -> consumer.negativeAcknowledge(messages));
+    }
+
+    /**
+     * @param redeliveryCount   the number of times the message has been redelivered
+     * @return  the total delay in milliseconds before the message is redelivered
+     */
+    long delayOf(int redeliveryCount) {
+        long delay = (long) Math.min(maxDelay, baseDelay * Math.pow(2, redeliveryCount));
+        long jitter = delay * ThreadLocalRandom.current().nextInt(JITTER_PERCENT + 1) / 100;
+        return Math.max(delay - jitter, baseDelay);
+    }
+
+    private void schedule(long delay, long receivedAt, Runnable negativeAck) {
+        long remaining = ackTimeout - ACK_TIMEOUT_MARGIN - (System.currentTimeMillis() - receivedAt);
+        long wait = Math.min(delay, remaining) - baseDelay;
+        if(wait <= 0) {
+            negativeAck.run();
+            return;
+        }
+        try {
+            timer.schedule(negativeAck, wait, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            negativeAck.run();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.config.LimiterConfig;
+import com.xiaofa.pulsar.constants.LimiterMode;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD limiter of outstanding async sends.
+ * Every timely ack raises the limit by one while the limiter is actually saturated,
+ * a slow ack or an overload error multiplies it by the backoff ratio, at most once per window:
+ * slow acks of sends issued before the last decrease are ignored.
+ * So bursts queue up in front of the producer instead of failing with a full producer queue.
+ * @author pig
+ */
+public class SendLimiter {
+    private final LimiterConfig limiterConfig;
+    private final long latencyThreshold;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile int limit;
+    private volatile int inFlight;
+    private volatile int waiting;
+    /**
+     * {@link System#nanoTime()} of the last decrease, {@link Long#MIN_VALUE} before the first one
+     */
+    private long decreasedAt = Long.MIN_VALUE;
+
+    public SendLimiter(LimiterConfig limiterConfig) {
+        this.limiterConfig = limiterConfig;
+        this.latencyThreshold = TimeUnit.MILLISECONDS.toNanos(limiterConfig.getLatencyThreshold());
+        this.limit = Math.max(limiterConfig.getMinLimit(),
+                Math.min(limiterConfig.getInitialLimit(), limiterConfig.getMaxLimit()));
+    }
+
+    /**
+     * Take a slot according to the configured {@link LimiterMode}
+     * @return  false if the send was rejected
+     * @throws InterruptedException interrupted while waiting for a slot
+     */
+    public boolean acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if(inFlight < limit) {
+                inFlight++;
+                return true;
+            }
+            if(limiterConfig.getMode() == LimiterMode.FAIL_FAST) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            waiting++;
+            try {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(limiterConfig.getAcquireTimeout());
+                while(inFlight >= limit) {
+                    if(limiterConfig.getMode() == LimiterMode.BLOCK) {
+                        available.await();
+                    } else if(nanos <= 0) {
+                        rejected.incrementAndGet();
+                        return false;
+                    } else {
+                        nanos = available.awaitNanos(nanos);
+                    }
+                }
+                inFlight++;
+                return true;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give the slot back and adjust the limit
+     * @param latency   nanoseconds from send to ack
+     * @param overload  whether the send failed because the producer or broker was overloaded
+     */
+    public void release(long latency, boolean overload) {
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= limit;
+            inFlight--;
+            if(overload || latency > latencyThreshold) {
+                long now = System.nanoTime();
+                if(decreasedAt == Long.MIN_VALUE || now - latency - decreasedAt > 0) {
+                    limit = Math.max(limiterConfig.getMinLimit(), (int) (limit * limiterConfig.getBackoffRatio()));
+                    decreasedAt = now;
+                }
+            } else if(saturated || waiting > 0) {
+                limit = Math.min(limiterConfig.getMaxLimit(), limit + 1);
+            }
+            if(inFlight < limit) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give the slot back without adjusting the limit, the send never reached the producer
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            if(inFlight < limit) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether sends go through this limiter
+     */
+    public boolean isEnabled() {
+        return limiterConfig.isEnabled();
+    }
+
+    /**
+     * @return the current limit of outstanding sends
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of sends waiting for the broker ack
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of callers waiting for a slot
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return the number of sends rejected since startup
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
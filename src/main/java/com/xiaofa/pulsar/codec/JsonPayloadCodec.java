@@ -0,0 +1,54 @@
+package com.xiaofa.pulsar.codec;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.xiaofa.pulsar.utils.JsonUtil;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Default payload codec, writes the payload through {@link JsonUtil#MAPPER} straight into UTF-8 bytes.
+ * Each thread reuses its own output buffer, so the only allocation left per message is the resulting array,
+ * compared with the intermediate String and its re-encoding done by {@code Schema.STRING}.
+ * Payloads are written and decoded by the {@link JsonUtil} writers and readers cached per type.
+ * @author pig
+ */
+public class JsonPayloadCodec implements PayloadCodec {
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<ByteArrayBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new ByteArrayBuilder(INITIAL_BUFFER_SIZE));
+
+    @Override
+    public byte[] encode(Object payload) throws SchemaSerializationException {
+        ByteArrayBuilder buffer = BUFFER.get();
+        buffer.reset();
+        try (JsonGenerator generator = JsonUtil.MAPPER.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+            if(payload == null) {
+                JsonUtil.MAPPER.writeValue(generator, null);
+            } else {
+                JsonUtil.writerFor(payload.getClass()).writeValue(generator, payload);
+            }
+        } catch (IOException e) {
+            throw new SchemaSerializationException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Class<T> type) throws SchemaSerializationException {
+        return decode(data, (Type) type);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Type type) throws SchemaSerializationException {
+        try {
+            return JsonUtil.readerFor(type).readValue(data);
+        } catch (IOException e) {
+            throw new SchemaSerializationException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.xiaofa.pulsar.codec;
+
+import org.apache.pulsar.client.api.SchemaSerializationException;
+
+import java.lang.reflect.Type;
+
+/**
+ * Converts message payloads to and from the raw bytes carried by the producer and consumer.
+ * Register a bean of this type to replace the default {@link JsonPayloadCodec}.
+ * String and byte[] payloads never reach the codec, they are carried raw, see {@link RawPayloads}.
+ * @author pig
+ */
+public interface PayloadCodec {
+    /**
+     * encode the payload
+     * @param payload   the object the producer wants to send
+     * @return  the encoded bytes
+     * @throws SchemaSerializationException encode error
+     */
+    byte[] encode(Object payload) throws SchemaSerializationException;
+
+    /**
+     * decode the payload
+     * @param data  the received bytes
+     * @param type  the expected payload type
+     * @param <T>   the payload type
+     * @return  the decoded object
+     * @throws SchemaSerializationException decode error
+     */
+    <T> T decode(byte[] data, Class<T> type) throws SchemaSerializationException;
+
+    /**
+     * decode the payload into a possibly generic type, only plain classes are supported by default
+     * @param data  the received bytes
+     * @param type  the expected payload type
+     * @param <T>   the payload type
+     * @return  the decoded object
+     * @throws SchemaSerializationException decode error or unsupported type
+     */
+    @SuppressWarnings("unchecked")
+    default <T> T decode(byte[] data, Type type) throws SchemaSerializationException {
+        if(type instanceof Class) {
+            return decode(data, (Class<T>) type);
+        }
+        throw new SchemaSerializationException("[Pulsar] unsupported payload type: " + type.getTypeName());
+    }
+}
@@ -0,0 +1,64 @@
+package com.xiaofa.pulsar.codec;
+
+import org.apache.pulsar.client.api.SchemaSerializationException;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The payload rule shared by the producer and every consumer path:
+ * a String travels as its UTF-8 bytes, a byte[] as it is, any other payload goes through the {@link PayloadCodec}.
+ * So {@code send("hello")} reaches a String listener as {@code hello} and a byte[] listener as its bytes,
+ * whatever the codec, and the codec only ever sees structured payloads.
+ * @author pig
+ */
+public class RawPayloads {
+
+    private RawPayloads() {
+    }
+
+    /**
+     * @param type  the payload type
+     * @return  true if payloads of the type bypass the codec
+     */
+    public static boolean isRaw(Type type) {
+        return type == String.class || type == byte[].class;
+    }
+
+    /**
+     * encode the payload
+     * @param payload   the object the producer wants to send
+     * @param payloadCodec  encodes the payloads that are not raw
+     * @return  the bytes to send
+     * @throws SchemaSerializationException encode error
+     */
+    public static byte[] encode(Object payload, PayloadCodec payloadCodec) throws SchemaSerializationException {
+        if(payload instanceof String) {
+            return ((String) payload).getBytes(StandardCharsets.UTF_8);
+        }
+        if(payload instanceof byte[]) {
+            return (byte[]) payload;
+        }
+        return payloadCodec.encode(payload);
+    }
+
+    /**
+     * decode the payload
+     * @param data  the received bytes
+     * @param type  the expected payload type
+     * @param payloadCodec  decodes the payloads that are not raw
+     * @param <T>   the payload type
+     * @return  the decoded object
+     * @throws SchemaSerializationException decode error
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(byte[] data, Type type, PayloadCodec payloadCodec) throws SchemaSerializationException {
+        if(type == byte[].class) {
+            return (T) data;
+        }
+        if(type == String.class) {
+            return (T) new String(data, StandardCharsets.UTF_8);
+        }
+        return payloadCodec.decode(data, type);
+    }
+}
@@ -0,0 +1,72 @@
+package com.xiaofa.pulsar.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tuning of the shared {@link org.apache.pulsar.client.api.PulsarClient}, bound from {@code pulsar.client.*}.
+ * Thread pools default to the number of available cores instead of the client's single thread,
+ * so that async listeners of different bindings no longer serialize on one listener thread.
+ * @author pig
+ */
+@Getter
+@Setter
+public class ClientConfig {
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of threads handling the broker connections. default the number of cores
+     */
+    private int ioThreads = CORES;
+    /**
+     * Number of threads running async message listeners, a consumer always uses the same thread.
+     * default the number of cores
+     */
+    private int listenerThreads = CORES;
+    /**
+     * Maximum number of connections opened to each broker. default 1
+     */
+    private int connectionsPerBroker = 1;
+    /**
+     * Timeout in milliseconds of producer creation, subscription and other operations. default 30s
+     */
+    private int operationTimeout = 30000;
+    /**
+     * Timeout in milliseconds of establishing a broker connection. default 10s
+     */
+    private int connectionTimeout = 10000;
+    /**
+     * Interval in milliseconds at which producer and consumer stats are logged, 0 disables them. default 60s
+     */
+    private long statsInterval = 60000;
+    /**
+     * Whether TCP no-delay is enabled on broker connections. default true
+     */
+    private boolean enableTcpNoDelay = true;
+    /**
+     * Interval in milliseconds of the connection keep-alive. default 30s
+     */
+    private int keepAliveInterval = 30000;
+    /**
+     * Maximum number of concurrent lookup requests on each broker connection. default 5000
+     */
+    private int maxConcurrentLookupRequests = 5000;
+    /**
+     * Maximum time in milliseconds shutdown waits for in-flight handlers, pending acks
+     * and pending producer sends before the consumers and producers are closed. default 30s
+     */
+    private long shutdownTimeout = 30000;
+    /**
+     * Number of partitions of the topics of the in-memory client, keyed by full or local topic name,
+     * only used with the pulsar-in-memory profile. default non-partitioned
+     */
+    private Map<String, Integer> inMemoryPartitions = new HashMap<>();
+    /**
+     * Number of messages an in-memory topic retains for its first subscription,
+     * only used with the pulsar-in-memory profile. default 100000
+     */
+    private int inMemoryRetention = 100000;
+}
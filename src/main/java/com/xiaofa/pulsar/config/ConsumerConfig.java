@@ -1,8 +1,12 @@
 package com.xiaofa.pulsar.config;
 
+import com.xiaofa.pulsar.constants.ExecutorMode;
+import com.xiaofa.pulsar.constants.SubscribeFailurePolicy;
+import com.xiaofa.pulsar.listener.MessageKeyExtractor;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.pulsar.client.api.ConsumerInterceptor;
+import org.apache.pulsar.client.api.KeySharedMode;
 import org.apache.pulsar.client.api.SubscriptionMode;
 import org.apache.pulsar.client.api.SubscriptionType;
 
@@ -67,8 +71,15 @@ public class ConsumerConfig {
     private boolean enableRetry = false;
     /**
      * Set the delay to wait before re-delivering messages that have failed to be process.
+     * The delay doubles with every redelivery of the same message, up to negativeAckMaxRedeliveryDelay.
+     * default 1s
      */
-    private long negativeAckRedeliveryDelay;
+    private long negativeAckRedeliveryDelay = 1000;
+    /**
+     * Maximum delay in milliseconds before a failed message is redelivered,
+     * never more than the ack timeout. default 60s
+     */
+    private long negativeAckMaxRedeliveryDelay = 60000;
     /**
      * Set the consumer name.
      *
@@ -81,4 +92,112 @@ public class ConsumerConfig {
      * messages received by the consumer.
      */
     private ConsumerInterceptor<String>[] consumerInterceptors;
-}
\ No newline at end of file
+    /**
+     * Key_Shared policy used when the subscription type is Key_Shared.
+     * default AUTO_SPLIT
+     */
+    private KeySharedMode keySharedMode = KeySharedMode.AUTO_SPLIT;
+    /**
+     * Hash ranges owned by this consumer in STICKY mode, formatted as start-end, e.g. 0-32767.
+     */
+    private String[] stickyHashRanges;
+    /**
+     * Whether Key_Shared may deliver messages out of order while consumers join or leave.
+     * default false
+     */
+    private boolean allowOutOfOrderDelivery = false;
+    /**
+     * Maximum number of messages per batch of a sync or batch consumer.
+     * default 100
+     */
+    private int batchReceiveMaxMessages = 100;
+    /**
+     * Maximum size in bytes of a batch of a sync or batch consumer.
+     * default 10MB
+     */
+    private int batchReceiveMaxBytes = 10 * 1024 * 1024;
+    /**
+     * Maximum time in milliseconds to wait for a batch to fill up before it is handed over.
+     * default 100ms
+     */
+    private int batchReceiveTimeout = 100;
+    /**
+     * How the poll loops of sync and batch consumers run, POOL, DEDICATED or VIRTUAL.
+     * default POOL
+     */
+    private ExecutorMode executorMode = ExecutorMode.POOL;
+    /**
+     * Number of threads of the shared pool used by POOL bindings, only read from the global config.
+     * default 16
+     */
+    private int executorPoolSize = 16;
+    /**
+     * Number of ordered lanes a ConsumerMessageListener binding is processed by,
+     * messages of the same key stay in order, different keys run in parallel.
+     * default 1, processed by the consumer's own thread
+     */
+    private int concurrency = 1;
+    /**
+     * Capacity of each lane, a full lane blocks the consumer. default 1000
+     */
+    private int laneQueueSize = 1000;
+    /**
+     * Extracts the ordering key of the lanes, the message key is used when unset.
+     */
+    private Class<? extends MessageKeyExtractor> keyExtractor;
+    /**
+     * Number of acks a ConsumerMessageListener binding holds before flushing them in one call,
+     * cumulative for Exclusive and Failover subscriptions. 0 or 1 acks every message right away.
+     * default 100
+     */
+    private int ackGroupSize = 100;
+    /**
+     * Maximum time in milliseconds an ack is held, by the ack aggregator and by the client before it is sent.
+     * default 100ms
+     */
+    private long acknowledgmentGroupTime = 100;
+    /**
+     * Process-wide budget in bytes of the messages received by the listeners but not handled yet,
+     * every consumer is paused while it is exceeded. Only read from the global config.
+     * The messages prefetched in the receiver queues are not charged, bound them with receiverQueueSize.
+     * default 0, disabled
+     */
+    private long memoryBudget = 0;
+    /**
+     * Ratio of the memory budget below which the paused consumers are resumed.
+     * default 0.8
+     */
+    private double memoryBudgetLowWatermark = 0.8;
+    /**
+     * Maximum time in milliseconds the startup waits for every binding to subscribe,
+     * bindings still pending go on subscribing in the background. Only read from the global config.
+     * default 60s
+     */
+    private long subscribeTimeout = 60000;
+    /**
+     * What happens when the binding fails or does not subscribe within the subscribe timeout, FAIL, LOG or RETRY.
+     * default FAIL
+     */
+    private SubscribeFailurePolicy subscribeFailurePolicy = SubscribeFailurePolicy.FAIL;
+    /**
+     * Maximum number of handled messages a per-message binding remembers to drop redelivered duplicates,
+     * the duplicates are acked without being handled.
+     * default 0, disabled
+     */
+    private int dedupMaxEntries = 0;
+    /**
+     * Time in milliseconds a handled message is remembered.
+     * default 10min
+     */
+    private long dedupTtl = 600000;
+    /**
+     * Extracts the business key duplicates are detected by, the message id is used when unset or when it returns null.
+     */
+    private Class<? extends MessageKeyExtractor> dedupKeyExtractor;
+    /**
+     * Directory the remembered messages of every binding are saved to on shutdown and loaded from on startup,
+     * so that a restart does not forget them. Only read from the global config.
+     * default unset, not saved
+     */
+    private String dedupSnapshotDir;
+}
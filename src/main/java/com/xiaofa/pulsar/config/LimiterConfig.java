@@ -0,0 +1,53 @@
+package com.xiaofa.pulsar.config;
+
+import com.xiaofa.pulsar.constants.LimiterMode;
+import com.xiaofa.pulsar.constants.LimiterScope;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Adaptive limit of outstanding async sends, bound from {@code pulsar.producer.limiter.*}.
+ * The limit grows by one per timely ack and shrinks by {@code backoffRatio}
+ * when an ack is slower than {@code latencyThreshold} or the producer reports queue full or timeout.
+ * @author pig
+ */
+@Getter
+@Setter
+public class LimiterConfig {
+    /**
+     * Whether async sends go through the limiter. default disabled
+     */
+    private boolean enabled = false;
+    /**
+     * One limiter for all topics, or one per producer. default GLOBAL
+     */
+    private LimiterScope scope = LimiterScope.GLOBAL;
+    /**
+     * What a send does when no slot is free. default BLOCK
+     */
+    private LimiterMode mode = LimiterMode.BLOCK;
+    /**
+     * Maximum wait in milliseconds for a slot in TIMED mode. default 1000
+     */
+    private long acquireTimeout = 1000;
+    /**
+     * Starting limit. default 100
+     */
+    private int initialLimit = 100;
+    /**
+     * Lower bound of the limit. default 10
+     */
+    private int minLimit = 10;
+    /**
+     * Upper bound of the limit, keep it at or below maxPendingMessages. default 1000
+     */
+    private int maxLimit = 1000;
+    /**
+     * Ack latency in milliseconds above which the limit is decreased. default 200
+     */
+    private long latencyThreshold = 200;
+    /**
+     * Factor applied to the limit on overload. default 0.9
+     */
+    private double backoffRatio = 0.9;
+}
@@ -2,8 +2,15 @@ package com.xiaofa.pulsar.config;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.HashingScheme;
+import org.apache.pulsar.client.api.MessageRouter;
+import org.apache.pulsar.client.api.MessageRoutingMode;
 
 /**
+ * Producer settings bound from {@code pulsar.producer.*}.
+ * Any of them can be overridden for a single topic under {@code pulsar.producer.topics.<topicName>.*},
+ * or with {@link com.xiaofa.pulsar.annotations.PulsarProducer} on the sending bean.
  * @author pig
  */
 @Getter
@@ -27,4 +34,80 @@ public class ProducerConfig {
      * Set whether the {@link Producer#send} and {@link Producer#sendAsync} operations should block when the outgoing message queue is full.
      */
     private boolean blockIfQueueFull = false;
+    /**
+     * Close a topic's producer after it has not been used for this many milliseconds,
+     * so that short-lived topics do not pin broker connections and memory.
+     * default 0, producers are never closed while the application runs
+     */
+    private long idleTimeout = 0;
+    /**
+     * Maximum number of messages of a bulk send waiting for the broker ack, the sender pauses when it is reached.
+     * default 1000
+     */
+    private int bulkMaxInFlight = 1000;
+    /**
+     * Set the time period within which the messages sent will be batched, in milliseconds,
+     * if batch messages are enabled. default 1 ms
+     */
+    private long batchingMaxPublishDelay = 1;
+    /**
+     * Set the maximum number of messages permitted in a batch. default 1000
+     */
+    private int batchingMaxMessages = 1000;
+    /**
+     * Set the maximum number of bytes permitted in a batch. default 128 KB
+     */
+    private int batchingMaxBytes = 128 * 1024;
+    /**
+     * Set the max size of the queue holding the messages pending to receive an acknowledgment from the broker.
+     * default 1000
+     */
+    private int maxPendingMessages = 1000;
+    /**
+     * Set the number of max pending messages across all the partitions, applies to partitioned topics.
+     * default 50000
+     */
+    private int maxPendingMessagesAcrossPartitions = 50000;
+    /**
+     * Set the compression type for the producer. default NONE
+     */
+    private CompressionType compressionType = CompressionType.NONE;
+    /**
+     * Set the message routing mode for the partitioned producer. default RoundRobinPartition
+     */
+    private MessageRoutingMode messageRoutingMode = MessageRoutingMode.RoundRobinPartition;
+    /**
+     * Change the {@link HashingScheme} used to choose the partition on where to publish a particular message.
+     * default JavaStringHash
+     */
+    private HashingScheme hashingScheme = HashingScheme.JavaStringHash;
+    /**
+     * Custom message router class, implies the CustomPartition routing mode.
+     */
+    private Class<? extends MessageRouter> messageRouter;
+    /**
+     * Whether batches are grouped by message key, required to keep Key_Shared consumers ordered with batching.
+     * Messages without a key share a single batch, so it can stay on for topics that are not keyed.
+     * default true
+     */
+    private boolean keyBasedBatching = true;
+    /**
+     * Adaptive limit of outstanding async sends
+     */
+    private LimiterConfig limiter = new LimiterConfig();
+    /**
+     * Topics whose producers are created in parallel at startup, short or fully-qualified names.
+     * Sending beans can add theirs with {@code @PulsarProducer(warmUp = true)}.
+     */
+    private String[] warmUpTopics;
+    /**
+     * Maximum time in milliseconds to wait for the warm-up. default 30s
+     */
+    private long warmUpTimeout = 30000;
+    /**
+     * Fail the application startup when a producer cannot be created during warm-up,
+     * otherwise the failure is logged and the producer is created again on first send.
+     * default false
+     */
+    private boolean warmUpFailFast = false;
 }
\ No newline at end of file
@@ -1,12 +1,25 @@
 package com.xiaofa.pulsar.config;
 
+import com.xiaofa.pulsar.client.MemoryBudget;
+import com.xiaofa.pulsar.codec.JsonPayloadCodec;
+import com.xiaofa.pulsar.codec.PayloadCodec;
+import com.xiaofa.pulsar.constants.PulsarConstants;
+import com.xiaofa.pulsar.executor.ConsumerExecutorProvider;
+import com.xiaofa.pulsar.executor.DefaultConsumerExecutorProvider;
+import com.xiaofa.pulsar.inmemory.InMemoryPulsarClient;
+import com.xiaofa.pulsar.listener.DecodeErrorHandler;
+import com.xiaofa.pulsar.listener.LoggingDecodeErrorHandler;
 import lombok.Data;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -22,15 +35,73 @@ public class PulsarConfiguration {
     private String tenancy;
     private String namespace;
     private boolean persistent = true;
-    private ProducerConfig producer;
-    private ConsumerConfig consumer;
+    private ClientConfig client = new ClientConfig();
+    private ProducerConfig producer = new ProducerConfig();
+    private ConsumerConfig consumer = new ConsumerConfig();
 
     /**
      * create Pulsar client Bean
      */
     @Bean(value = "pulsarClient")
+    @Profile("!" + PulsarConstants.IN_MEMORY_PROFILE)
     public PulsarClient pulsarClient(PulsarConfiguration pulsarProperties) throws PulsarClientException {
-        return PulsarClient.builder().serviceUrl(pulsarProperties.getServiceUrl()).build();
+        ClientConfig client = pulsarProperties.getClient();
+        return PulsarClient.builder().serviceUrl(pulsarProperties.getServiceUrl())
+                .ioThreads(client.getIoThreads())
+                .listenerThreads(client.getListenerThreads())
+                .connectionsPerBroker(client.getConnectionsPerBroker())
+                .operationTimeout(client.getOperationTimeout(), TimeUnit.MILLISECONDS)
+                .connectionTimeout(client.getConnectionTimeout(), TimeUnit.MILLISECONDS)
+                .statsInterval(client.getStatsInterval(), TimeUnit.MILLISECONDS)
+                .enableTcpNoDelay(client.isEnableTcpNoDelay())
+                .keepAliveInterval(client.getKeepAliveInterval(), TimeUnit.MILLISECONDS)
+                .maxConcurrentLookupRequests(client.getMaxConcurrentLookupRequests())
+                .build();
+    }
+
+    /**
+     * create the in-memory Pulsar client Bean instead of the broker client when the pulsar-in-memory profile is active
+     */
+    @Bean(value = "pulsarClient")
+    @Profile(PulsarConstants.IN_MEMORY_PROFILE)
+    public PulsarClient inMemoryPulsarClient(PulsarConfiguration pulsarProperties) {
+        return new InMemoryPulsarClient(pulsarProperties.getClient());
+    }
+
+    /**
+     * create the payload codec used by typed sends, JSON by default
+     */
+    @Bean
+    @ConditionalOnMissingBean(PayloadCodec.class)
+    public PayloadCodec payloadCodec() {
+        return new JsonPayloadCodec();
+    }
+
+    /**
+     * create the handler of payloads typed listeners fail to decode, logs and acks them by default
+     */
+    @Bean
+    @ConditionalOnMissingBean(DecodeErrorHandler.class)
+    public DecodeErrorHandler decodeErrorHandler() {
+        return new LoggingDecodeErrorHandler();
+    }
+
+    /**
+     * create the byte budget of the messages held by the listeners, disabled unless pulsar.consumer.memoryBudget is set
+     */
+    @Bean
+    public MemoryBudget memoryBudget(PulsarConfiguration pulsarProperties) {
+        return new MemoryBudget(pulsarProperties.getConsumer().getMemoryBudget(),
+                pulsarProperties.getConsumer().getMemoryBudgetLowWatermark());
+    }
+
+    /**
+     * create the executors running sync and batch consumers
+     */
+    @Bean
+    @ConditionalOnMissingBean(ConsumerExecutorProvider.class)
+    public ConsumerExecutorProvider consumerExecutorProvider(PulsarConfiguration pulsarProperties) {
+        return new DefaultConsumerExecutorProvider(pulsarProperties.getConsumer().getExecutorPoolSize());
     }
 
 }
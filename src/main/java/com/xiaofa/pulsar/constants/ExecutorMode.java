@@ -0,0 +1,20 @@
+package com.xiaofa.pulsar.constants;
+
+/**
+ * How the poll loops of sync and batch consumers are executed
+ * @author pig
+ */
+public enum ExecutorMode {
+    /**
+     * polls are chained asynchronously on a shared sized pool, an idle binding holds no thread
+     */
+    POOL,
+    /**
+     * every binding gets its own platform thread running a blocking poll loop
+     */
+    DEDICATED,
+    /**
+     * every binding gets its own virtual thread, requires JDK 21+, falls back to DEDICATED otherwise
+     */
+    VIRTUAL
+}
@@ -0,0 +1,36 @@
+package com.xiaofa.pulsar.constants;
+
+/**
+ * When a multi-topic fan-out send is considered complete
+ * @author pig
+ */
+public enum FanoutMode {
+    /**
+     * every topic has acked the message
+     */
+    ALL,
+    /**
+     * the first topic has acked the message
+     */
+    ANY,
+    /**
+     * the configured number of topics have acked the message
+     */
+    QUORUM;
+
+    /**
+     * @param topics    number of target topics
+     * @param quorum    required acks in {@link #QUORUM} mode
+     * @return the number of acks needed to complete
+     */
+    public int required(int topics, int quorum) {
+        switch (this) {
+            case ANY:
+                return 1;
+            case QUORUM:
+                return Math.min(Math.max(quorum, 1), topics);
+            default:
+                return topics;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.xiaofa.pulsar.constants;
+
+/**
+ * What an async send does when the send limiter has no free slot
+ * @author pig
+ */
+public enum LimiterMode {
+    /**
+     * wait until a slot is free
+     */
+    BLOCK,
+    /**
+     * wait up to the acquire timeout, then fail the send
+     */
+    TIMED,
+    /**
+     * fail the send immediately
+     */
+    FAIL_FAST
+}
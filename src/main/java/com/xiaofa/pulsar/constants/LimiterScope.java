@@ -0,0 +1,16 @@
+package com.xiaofa.pulsar.constants;
+
+/**
+ * Which sends share a send limiter
+ * @author pig
+ */
+public enum LimiterScope {
+    /**
+     * one limiter for every topic
+     */
+    GLOBAL,
+    /**
+     * one limiter per topic's producer
+     */
+    PRODUCER
+}
@@ -21,4 +21,8 @@ public class PulsarConstants {
      * Topic non-persistent
      */
     public static final String NON_PERSISTENT = "non-persistent";
+    /**
+     * Spring profile replacing the broker client by the in-memory client
+     */
+    public static final String IN_MEMORY_PROFILE = "pulsar-in-memory";
 }
@@ -0,0 +1,20 @@
+package com.xiaofa.pulsar.constants;
+
+/**
+ * What happens when a binding fails to subscribe at startup
+ * @author pig
+ */
+public enum SubscribeFailurePolicy {
+    /**
+     * the application startup fails
+     */
+    FAIL,
+    /**
+     * the failure is logged and the binding stays unsubscribed
+     */
+    LOG,
+    /**
+     * the failure is logged and the subscription is retried in the background with a growing delay
+     */
+    RETRY
+}
@@ -1,5 +1,6 @@
 package com.xiaofa.pulsar.demo;
 
+import com.xiaofa.pulsar.beans.BulkSendResult;
 import com.xiaofa.pulsar.client.PulsarTemplate;
 import com.xiaofa.pulsar.utils.JsonUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -9,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * 生产者发送消息示例
@@ -30,8 +32,27 @@ public class ProducerSend {
                     .tenancy("GEO_test")
                     .namespace("GEO_test_product")
                     .topics("xiaofa-test")
-                    .send(JsonUtil.toJson(messageVo));
+                    .send(messageVo);
             log.info("信息发送成功, result={}", JsonUtil.toJson(result));
         }
     }
+
+    /**
+     * 批量发送示例，异步流水线发送，结束后统一返回结果
+     */
+    public void sendAll() throws PulsarClientException {
+        BulkSendResult result = pulsarTemplate.createBuilder()
+                .persistent(true)
+                .tenancy("GEO_test")
+                .namespace("GEO_test_product")
+                .topics("xiaofa-test")
+                .maxInFlight(500)
+                .sendAll(IntStream.rangeClosed(1, 1000).mapToObj(i -> {
+                    MessageVo messageVo = new MessageVo();
+                    messageVo.setName("hello pulsar, index is " + i);
+                    return messageVo;
+                }));
+        log.info("批量发送完成, 成功: {}, 失败: {}, 耗时: {}ms",
+                result.getSucceeded(), result.getFailures().size(), result.getElapsed());
+    }
 }
@@ -0,0 +1,46 @@
+package com.xiaofa.pulsar.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Published once the listener bindings have been subscribed at startup,
+ * or the subscribe timeout has passed, with the subscription time of every binding.
+ * @author pig
+ */
+public class ConsumerSubscribeEvent extends ApplicationEvent {
+    private final Map<String, Long> subscribed;
+    private final Map<String, Throwable> failures;
+    private final long elapsed;
+
+    public ConsumerSubscribeEvent(Object source, Map<String, Long> subscribed, Map<String, Throwable> failures,
+            long elapsed) {
+        super(source);
+        this.subscribed = Collections.unmodifiableMap(subscribed);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return the subscribed bindings, {@code beanName#index}, with their subscription time in milliseconds
+     */
+    public Map<String, Long> getSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * @return the bindings that failed or did not subscribe in time, with the cause
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the time in milliseconds until every binding subscribed or the timeout passed
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+}
@@ -0,0 +1,46 @@
+package com.xiaofa.pulsar.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Published once the producers declared for warm-up have been created,
+ * listeners can use it as the readiness signal of the sending side.
+ * @author pig
+ */
+public class ProducerWarmUpEvent extends ApplicationEvent {
+    private final Set<String> topics;
+    private final Map<String, Throwable> failures;
+    private final long elapsed;
+
+    public ProducerWarmUpEvent(Object source, Set<String> topics, Map<String, Throwable> failures, long elapsed) {
+        super(source);
+        this.topics = Collections.unmodifiableSet(topics);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return the topics that were warmed up, fully-qualified unless their name could not be resolved
+     */
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * @return the topics whose producer could not be created in time, with the cause
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the warm-up duration in milliseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+}
@@ -0,0 +1,22 @@
+package com.xiaofa.pulsar.executor;
+
+import com.xiaofa.pulsar.constants.ExecutorMode;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Supplies the executors that run the poll loops of sync and batch consumers.
+ * Register a bean of this type to replace or instrument the default {@link DefaultConsumerExecutorProvider}.
+ * @author pig
+ */
+public interface ConsumerExecutorProvider {
+    /**
+     * get the executor of a consumer binding.
+     * In {@link ExecutorMode#POOL} the executor receives one short task per poll,
+     * otherwise it receives a single task that blocks for the lifetime of the consumer.
+     * @param bindingName   the listener bean name and binding index, e.g. orderListener#0
+     * @param mode  the execution mode of the binding
+     * @return  the executor
+     */
+    Executor getExecutor(String bindingName, ExecutorMode mode);
+}
@@ -0,0 +1,91 @@
+package com.xiaofa.pulsar.executor;
+
+import com.xiaofa.pulsar.constants.ExecutorMode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default consumer executors: one shared sized pool for {@link ExecutorMode#POOL},
+ * a platform thread per binding for {@link ExecutorMode#DEDICATED}
+ * and a virtual thread per binding for {@link ExecutorMode#VIRTUAL}.
+ * Per-binding threads are interrupted on shutdown, which ends their poll loops.
+ * @author pig
+ */
+@Slf4j
+public class DefaultConsumerExecutorProvider implements ConsumerExecutorProvider, DisposableBean {
+    private final ThreadPoolExecutor pool;
+    private final ThreadFactory virtualThreadFactory;
+    private final Set<Thread> bindingThreads = ConcurrentHashMap.newKeySet();
+
+    public DefaultConsumerExecutorProvider(int poolSize) {
+        AtomicInteger index = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "pulsar-consumer-pool-" + index.incrementAndGet()));
+        this.pool.allowCoreThreadTimeOut(true);
+        this.virtualThreadFactory = createVirtualThreadFactory();
+    }
+
+    @Override
+    public Executor getExecutor(String bindingName, ExecutorMode mode) {
+        if(mode == ExecutorMode.POOL) {
+            return pool;
+        }
+        if(mode == ExecutorMode.VIRTUAL && virtualThreadFactory == null) {
+            log.warn("[Pulsar] virtual threads require JDK 21+, binding {} uses a dedicated thread", bindingName);
+        }
+        ThreadFactory threadFactory = mode == ExecutorMode.VIRTUAL && virtualThreadFactory != null ?
+                virtualThreadFactory : r -> new Thread(r);
+        return command -> {
+            Thread thread = threadFactory.newThread(() -> {
+                try {
+                    command.run();
+                } finally {
+                    bindingThreads.remove(Thread.currentThread());
+                }
+            });
+            thread.setName("pulsar-consumer-" + bindingName);
+            bindingThreads.add(thread);
+            thread.start();
+        };
+    }
+
+    /**
+     * @return true when {@link ExecutorMode#VIRTUAL} runs on virtual threads
+     */
+    public boolean isVirtualThreadSupported() {
+        return virtualThreadFactory != null;
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+        for(Thread thread : bindingThreads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Thread.ofVirtual() is looked up reflectively since the library is compiled for Java 8
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
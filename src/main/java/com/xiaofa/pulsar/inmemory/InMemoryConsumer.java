@@ -0,0 +1,767 @@
+package com.xiaofa.pulsar.inmemory;
+
+import com.xiaofa.pulsar.inmemory.InMemorySubscription.Delivery;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.BatchReceivePolicy;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.ConsumerInterceptor;
+import org.apache.pulsar.client.api.ConsumerStats;
+import org.apache.pulsar.client.api.DeadLetterPolicy;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.apache.pulsar.client.util.RetryMessageUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Consumer of the in-memory client, subscribed to every partition of its topics.
+ * Messages are pushed to its receiver queue while it has permits, the permits are given back in bulk once half
+ * of the queue has been consumed. A listener is called by one listener thread at a time, in order.
+ * Messages not acked within the ack timeout, negatively acked or left over when the consumer closes go back
+ * to their subscription, to the dead letter topic once redelivered maxRedeliverCount times.
+ * @author pig
+ */
+@Slf4j
+final class InMemoryConsumer<T> implements Consumer<T> {
+    private final InMemoryPulsarClient client;
+    private final String topic;
+    private final String subscriptionName;
+    private final String consumerName;
+    private final SubscriptionType subscriptionType;
+    private final Schema<T> schema;
+    private final MessageListener<T> listener;
+    private final int receiverQueueSize;
+    private final int flowThreshold;
+    private final long ackTimeout;
+    private final long negativeAckRedeliveryDelay;
+    private final BatchReceivePolicy batchReceivePolicy;
+    private final List<ConsumerInterceptor<T>> interceptors;
+    private final boolean enableRetry;
+    private final DeadLetterPolicy deadLetterPolicy;
+    private final Executor listenerExecutor;
+    private final ScheduledExecutorService timer;
+    private final List<InMemorySubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<Delivery> incoming = new ArrayDeque<>();
+    private final ArrayDeque<CompletableFuture<Message<T>>> pendingReceives = new ArrayDeque<>();
+    private final ArrayDeque<CompletableFuture<Messages<T>>> pendingBatchReceives = new ArrayDeque<>();
+    private final LinkedHashMap<MessageId, Unacked> unacked = new LinkedHashMap<>();
+    private final AtomicInteger permits;
+    private final AtomicInteger freedPermits = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private long incomingBytes;
+    private volatile boolean paused;
+    private volatile boolean closed;
+    private volatile ScheduledFuture<?> ackTimeoutTask;
+    private volatile Producer<byte[]> retryProducer;
+    private volatile Producer<byte[]> deadLetterProducer;
+
+    InMemoryConsumer(InMemoryPulsarClient client, InMemoryConsumerBuilder<T> builder, List<String> topics,
+            String consumerName, DeadLetterPolicy deadLetterPolicy, Executor listenerExecutor,
+            ScheduledExecutorService timer) {
+        this.client = client;
+        this.topic = topics.size() == 1 ? topics.get(0) : String.join(",", topics);
+        this.subscriptionName = builder.subscriptionName;
+        this.consumerName = consumerName;
+        this.subscriptionType = builder.subscriptionType;
+        this.schema = builder.schema;
+        this.listener = builder.messageListener;
+        this.receiverQueueSize = Math.max(builder.receiverQueueSize, 1);
+        this.flowThreshold = Math.max(receiverQueueSize / 2, 1);
+        this.permits = new AtomicInteger(receiverQueueSize);
+        this.ackTimeout = builder.ackTimeout;
+        this.negativeAckRedeliveryDelay = builder.negativeAckRedeliveryDelay;
+        this.batchReceivePolicy = builder.batchReceivePolicy;
+        this.interceptors = builder.interceptors;
+        this.enableRetry = builder.enableRetry;
+        this.deadLetterPolicy = deadLetterPolicy;
+        this.listenerExecutor = listenerExecutor;
+        this.timer = timer;
+        if(ackTimeout > 0) {
+            long tick = Math.min(builder.ackTimeoutTickTime, ackTimeout);
+            ackTimeoutTask = timer.scheduleWithFixedDelay(this::redeliverTimedOut, tick, tick, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void attach(InMemorySubscription subscription) throws PulsarClientException {
+        subscriptions.add(subscription);
+        subscription.addConsumer(this, subscriptionType);
+    }
+
+    boolean hasPermits() {
+        return !paused && !closed && permits.get() > 0;
+    }
+
+    /**
+     * Called by a subscription holding its lock, only queues the message
+     */
+    void enqueue(Delivery delivery) {
+        permits.decrementAndGet();
+        boolean wake;
+        synchronized (this) {
+            incoming.add(delivery);
+            incomingBytes += delivery.entry.data.length;
+            wake = listener != null || !pendingReceives.isEmpty() || !pendingBatchReceives.isEmpty();
+        }
+        if(wake) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        if(draining.compareAndSet(false, true)) {
+            listenerExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Hand the queued messages to the listener or to the pending receives, at most a receiver queue per run
+     * so that the consumers sharing a listener thread take turns
+     */
+    private void drain() {
+        try {
+            for(int i = 0; i < receiverQueueSize; i++) {
+                if(listener != null) {
+                    Delivery delivery = poll();
+                    if(delivery == null) {
+                        break;
+                    }
+                    Message<T> message = deliver(delivery);
+                    try {
+                        listener.received(this, message);
+                    } catch (Throwable e) {
+                        log.error("[Pulsar] in-memory listener failed, topic: {}, messageId: {}",
+                                message.getTopicName(), message.getMessageId(), e);
+                    }
+                } else if(!servePending()) {
+                    break;
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        boolean more;
+        synchronized (this) {
+            more = !closed && !incoming.isEmpty() && (listener != null || !pendingReceives.isEmpty()
+                    || (!pendingBatchReceives.isEmpty() && isBatchFull()));
+        }
+        if(more) {
+            scheduleDrain();
+        }
+    }
+
+    private synchronized Delivery poll() {
+        Delivery delivery = closed ? null : incoming.poll();
+        if(delivery != null) {
+            incomingBytes -= delivery.entry.data.length;
+        }
+        return delivery;
+    }
+
+    private boolean servePending() {
+        CompletableFuture<Message<T>> receive = null;
+        Delivery delivery = null;
+        CompletableFuture<Messages<T>> batchReceive = null;
+        List<Delivery> batch = null;
+        synchronized (this) {
+            if(!pendingReceives.isEmpty() && !incoming.isEmpty()) {
+                receive = pendingReceives.poll();
+                delivery = incoming.poll();
+                incomingBytes -= delivery.entry.data.length;
+            } else if(!pendingBatchReceives.isEmpty() && isBatchFull()) {
+                batchReceive = pendingBatchReceives.poll();
+                batch = takeBatch();
+            } else {
+                return false;
+            }
+        }
+        if(receive != null) {
+            receive.complete(deliver(delivery));
+        } else {
+            batchReceive.complete(toMessages(batch));
+        }
+        return true;
+    }
+
+    /**
+     * Track the message until it is acked and give its permit back
+     */
+    private Message<T> deliver(Delivery delivery) {
+        long deadline = ackTimeout > 0 ? System.currentTimeMillis() + ackTimeout : Long.MAX_VALUE;
+        synchronized (unacked) {
+            unacked.put(delivery.entry.id, new Unacked(delivery, deadline));
+        }
+        permits.incrementAndGet();
+        if(freedPermits.incrementAndGet() >= flowThreshold) {
+            freedPermits.set(0);
+            flow();
+        }
+        Message<T> message = new InMemoryMessage<>(delivery.entry, schema, delivery.redeliveryCount);
+        for(ConsumerInterceptor<T> interceptor : interceptors) {
+            message = interceptor.beforeConsume(this, message);
+        }
+        return message;
+    }
+
+    private void flow() {
+        for(InMemorySubscription subscription : subscriptions) {
+            subscription.dispatch();
+        }
+    }
+
+    private boolean isBatchFull() {
+        int maxMessages = batchReceivePolicy.getMaxNumMessages();
+        int maxBytes = batchReceivePolicy.getMaxNumBytes();
+        return (maxMessages > 0 && incoming.size() >= maxMessages) || (maxBytes > 0 && incomingBytes >= maxBytes);
+    }
+
+    private List<Delivery> takeBatch() {
+        int maxMessages = batchReceivePolicy.getMaxNumMessages();
+        int maxBytes = batchReceivePolicy.getMaxNumBytes();
+        List<Delivery> batch = new ArrayList<>();
+        long bytes = 0;
+        while(!incoming.isEmpty() && (maxMessages <= 0 || batch.size() < maxMessages)
+                && (maxBytes <= 0 || bytes < maxBytes)) {
+            Delivery delivery = incoming.poll();
+            incomingBytes -= delivery.entry.data.length;
+            bytes += delivery.entry.data.length;
+            batch.add(delivery);
+        }
+        return batch;
+    }
+
+    private Messages<T> toMessages(List<Delivery> batch) {
+        List<Message<T>> messages = new ArrayList<>(batch.size());
+        for(Delivery delivery : batch) {
+            messages.add(deliver(delivery));
+        }
+        return new InMemoryMessages<>(messages);
+    }
+
+    @Override
+    public String getTopic() {
+        return topic;
+    }
+
+    @Override
+    public String getSubscription() {
+        return subscriptionName;
+    }
+
+    @Override
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    @Override
+    public Message<T> receive() throws PulsarClientException {
+        return InMemoryPulsarClient.await(receiveAsync());
+    }
+
+    @Override
+    public CompletableFuture<Message<T>> receiveAsync() {
+        if(listener != null) {
+            return InMemoryPulsarClient.failed(new PulsarClientException.InvalidConfigurationException(
+                    "Cannot use receive() when a listener has been set"));
+        }
+        Delivery delivery;
+        synchronized (this) {
+            if(closed) {
+                return InMemoryPulsarClient.failed(new PulsarClientException.AlreadyClosedException(
+                        "Consumer already closed"));
+            }
+            delivery = incoming.poll();
+            if(delivery == null) {
+                CompletableFuture<Message<T>> receive = new CompletableFuture<>();
+                pendingReceives.add(receive);
+                return receive;
+            }
+            incomingBytes -= delivery.entry.data.length;
+        }
+        return CompletableFuture.completedFuture(deliver(delivery));
+    }
+
+    @Override
+    public Message<T> receive(int timeout, TimeUnit unit) throws PulsarClientException {
+        CompletableFuture<Message<T>> receive = receiveAsync();
+        try {
+            return receive.get(timeout, unit);
+        } catch (TimeoutException e) {
+            synchronized (this) {
+                if(pendingReceives.remove(receive)) {
+                    return null;
+                }
+            }
+            return InMemoryPulsarClient.await(receive);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        } catch (ExecutionException e) {
+            throw InMemoryPulsarClient.unwrap(e);
+        }
+    }
+
+    @Override
+    public Messages<T> batchReceive() throws PulsarClientException {
+        return InMemoryPulsarClient.await(batchReceiveAsync());
+    }
+
+    @Override
+    public CompletableFuture<Messages<T>> batchReceiveAsync() {
+        if(listener != null) {
+            return InMemoryPulsarClient.failed(new PulsarClientException.InvalidConfigurationException(
+                    "Cannot use batchReceive() when a listener has been set"));
+        }
+        List<Delivery> batch;
+        synchronized (this) {
+            if(closed) {
+                return InMemoryPulsarClient.failed(new PulsarClientException.AlreadyClosedException(
+                        "Consumer already closed"));
+            }
+            if(!pendingBatchReceives.isEmpty() || !isBatchFull()) {
+                CompletableFuture<Messages<T>> batchReceive = new CompletableFuture<>();
+                pendingBatchReceives.add(batchReceive);
+                timer.schedule(() -> completeOnTimeout(batchReceive), batchReceivePolicy.getTimeoutMs(),
+                        TimeUnit.MILLISECONDS);
+                return batchReceive;
+            }
+            batch = takeBatch();
+        }
+        return CompletableFuture.completedFuture(toMessages(batch));
+    }
+
+    private void completeOnTimeout(CompletableFuture<Messages<T>> batchReceive) {
+        List<Delivery> batch;
+        synchronized (this) {
+            if(!pendingBatchReceives.remove(batchReceive)) {
+                return;
+            }
+            batch = takeBatch();
+        }
+        batchReceive.complete(toMessages(batch));
+    }
+
+    @Override
+    public void acknowledge(Message<?> message) throws PulsarClientException {
+        InMemoryPulsarClient.await(acknowledgeAsync(message));
+    }
+
+    @Override
+    public void acknowledge(MessageId messageId) throws PulsarClientException {
+        InMemoryPulsarClient.await(acknowledgeAsync(messageId));
+    }
+
+    @Override
+    public void acknowledge(Messages<?> messages) throws PulsarClientException {
+        InMemoryPulsarClient.await(acknowledgeAsync(messages));
+    }
+
+    @Override
+    public CompletableFuture<Void> acknowledgeAsync(Message<?> message) {
+        return acknowledgeAsync(message.getMessageId());
+    }
+
+    @Override
+    public CompletableFuture<Void> acknowledgeAsync(MessageId messageId) {
+        if(!(messageId instanceof InMemoryMessageId)) {
+            return InMemoryPulsarClient.failed(new PulsarClientException.InvalidMessageException(
+                    "Not an in-memory message id: " + messageId));
+        }
+        synchronized (unacked) {
+            unacked.remove(messageId);
+        }
+        for(ConsumerInterceptor<T> interceptor : interceptors) {
+            interceptor.onAcknowledge(this, messageId, null);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> acknowledgeAsync(Messages<?> messages) {
+        for(Message<?> message : messages) {
+            CompletableFuture<Void> ack = acknowledgeAsync(message);
+            if(ack.isCompletedExceptionally()) {
+                return ack;
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void acknowledgeCumulative(Message<?> message) throws PulsarClientException {
+        InMemoryPulsarClient.await(acknowledgeCumulativeAsync(message));
+    }
+
+    @Override
+    public void acknowledgeCumulative(MessageId messageId) throws PulsarClientException {
+        InMemoryPulsarClient.await(acknowledgeCumulativeAsync(messageId));
+    }
+
+    @Override
+    public CompletableFuture<Void> acknowledgeCumulativeAsync(Message<?> message) {
+        return acknowledgeCumulativeAsync(message.getMessageId());
+    }
+
+    @Override
+    public CompletableFuture<Void> acknowledgeCumulativeAsync(MessageId messageId) {
+        if(subscriptionType == SubscriptionType.Shared || subscriptionType == SubscriptionType.Key_Shared) {
+            return InMemoryPulsarClient.failed(new PulsarClientException.InvalidConfigurationException(
+                    "Cannot use cumulative acks on a non-exclusive/non-failover subscription"));
+        }
+        if(!(messageId instanceof InMemoryMessageId)) {
+            return InMemoryPulsarClient.failed(new PulsarClientException.InvalidMessageException(
+                    "Not an in-memory message id: " + messageId));
+        }
+        InMemoryMessageId upTo = (InMemoryMessageId) messageId;
+        synchronized (unacked) {
+            unacked.keySet().removeIf(id -> ((InMemoryMessageId) id).getTopicId() == upTo.getTopicId()
+                    && ((InMemoryMessageId) id).getEntryId() <= upTo.getEntryId());
+        }
+        for(ConsumerInterceptor<T> interceptor : interceptors) {
+            interceptor.onAcknowledgeCumulative(this, messageId, null);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void negativeAcknowledge(Message<?> message) {
+        negativeAcknowledge(message.getMessageId());
+    }
+
+    @Override
+    public void negativeAcknowledge(MessageId messageId) {
+        Unacked nacked;
+        synchronized (unacked) {
+            nacked = unacked.remove(messageId);
+        }
+        if(nacked == null) {
+            return;
+        }
+        for(ConsumerInterceptor<T> interceptor : interceptors) {
+            interceptor.onNegativeAcksSend(this, Collections.singleton(messageId));
+        }
+        timer.schedule(() -> redeliver(Collections.singletonList(nacked.delivery), true),
+                negativeAckRedeliveryDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void negativeAcknowledge(Messages<?> messages) {
+        for(Message<?> message : messages) {
+            negativeAcknowledge(message);
+        }
+    }
+
+    @Override
+    public void reconsumeLater(Message<?> message, long delayTime, TimeUnit unit) throws PulsarClientException {
+        InMemoryPulsarClient.await(reconsumeLaterAsync(message, delayTime, unit));
+    }
+
+    @Override
+    public void reconsumeLater(Messages<?> messages, long delayTime, TimeUnit unit) throws PulsarClientException {
+        InMemoryPulsarClient.await(reconsumeLaterAsync(messages, delayTime, unit));
+    }
+
+    @Override
+    public void reconsumeLaterCumulative(Message<?> message, long delayTime, TimeUnit unit) throws PulsarClientException {
+        InMemoryPulsarClient.await(reconsumeLaterCumulativeAsync(message, delayTime, unit));
+    }
+
+    /**
+     * Republish the message to the retry topic after the delay, or to the dead letter topic once it has been
+     * reconsumed maxRedeliverCount times, then ack it. The retry properties are the ones of the Pulsar client.
+     */
+    @Override
+    public CompletableFuture<Void> reconsumeLaterAsync(Message<?> message, long delayTime, TimeUnit unit) {
+        if(!enableRetry) {
+            return InMemoryPulsarClient.failed(new PulsarClientException("reconsumeLater method not support!"));
+        }
+        Map<String, String> properties = new HashMap<>(message.getProperties());
+        int reconsumeTimes = 1;
+        if(properties.containsKey(RetryMessageUtil.SYSTEM_PROPERTY_RECONSUMETIMES)) {
+            reconsumeTimes = Integer.parseInt(properties.get(RetryMessageUtil.SYSTEM_PROPERTY_RECONSUMETIMES)) + 1;
+        } else {
+            properties.put(RetryMessageUtil.SYSTEM_PROPERTY_REAL_TOPIC, message.getTopicName());
+            properties.put(RetryMessageUtil.SYSTEM_PROPERTY_ORIGIN_MESSAGE_ID, message.getMessageId().toString());
+        }
+        properties.put(RetryMessageUtil.SYSTEM_PROPERTY_RECONSUMETIMES, String.valueOf(reconsumeTimes));
+        properties.put(RetryMessageUtil.SYSTEM_PROPERTY_DELAY_TIME, String.valueOf(unit.toMillis(delayTime)));
+        try {
+            TypedMessageBuilder<byte[]> republished;
+            if(reconsumeTimes > deadLetterPolicy.getMaxRedeliverCount()) {
+                republished = deadLetterProducer().newMessage();
+            } else {
+                republished = retryProducer().newMessage().deliverAfter(delayTime, unit);
+            }
+            if(message.hasKey()) {
+                republished.key(message.getKey());
+            }
+            republished.value(message.getData()).properties(properties).send();
+        } catch (PulsarClientException e) {
+            return InMemoryPulsarClient.failed(e);
+        }
+        return acknowledgeAsync(message);
+    }
+
+    @Override
+    public CompletableFuture<Void> reconsumeLaterAsync(Messages<?> messages, long delayTime, TimeUnit unit) {
+        for(Message<?> message : messages) {
+            CompletableFuture<Void> reconsume = reconsumeLaterAsync(message, delayTime, unit);
+            if(reconsume.isCompletedExceptionally()) {
+                return reconsume;
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> reconsumeLaterCumulativeAsync(Message<?> message, long delayTime, TimeUnit unit) {
+        return InMemoryPulsarClient.failed(new PulsarClientException.NotSupportedException(
+                "reconsumeLaterCumulative is not supported by the in-memory client"));
+    }
+
+    /**
+     * @param counted   whether the redelivery count is increased, not when the consumer merely closes
+     */
+    private void redeliver(List<Delivery> deliveries, boolean counted) {
+        for(int i = deliveries.size() - 1; i >= 0; i--) {
+            Delivery delivery = deliveries.get(i);
+            if(counted && deadLetterPolicy != null && delivery.redeliveryCount >= deadLetterPolicy.getMaxRedeliverCount()) {
+                sendToDeadLetter(delivery);
+                continue;
+            }
+            if(counted) {
+                delivery.redeliveryCount++;
+            }
+            delivery.subscription.redeliver(delivery);
+        }
+    }
+
+    private void sendToDeadLetter(Delivery delivery) {
+        InMemoryEntry entry = delivery.entry;
+        try {
+            TypedMessageBuilder<byte[]> deadLetter = deadLetterProducer().newMessage()
+                    .value(entry.data).properties(entry.properties);
+            if(entry.key != null) {
+                deadLetter.key(entry.key);
+            }
+            deadLetter.send();
+        } catch (PulsarClientException e) {
+            log.error("[Pulsar] in-memory dead letter failed, topic: {}, messageId: {}", entry.topicName, entry.id, e);
+            delivery.subscription.redeliver(delivery);
+        }
+    }
+
+    private void redeliverTimedOut() {
+        long now = System.currentTimeMillis();
+        List<Delivery> timedOut = new ArrayList<>();
+        synchronized (unacked) {
+            Iterator<Unacked> iterator = unacked.values().iterator();
+            while(iterator.hasNext()) {
+                Unacked pending = iterator.next();
+                if(pending.deadline > now) {
+                    break;
+                }
+                timedOut.add(pending.delivery);
+                iterator.remove();
+            }
+        }
+        if(timedOut.isEmpty()) {
+            return;
+        }
+        Set<MessageId> ids = timedOut.stream().map(delivery -> (MessageId) delivery.entry.id).collect(Collectors.toSet());
+        for(ConsumerInterceptor<T> interceptor : interceptors) {
+            interceptor.onAckTimeoutSend(this, ids);
+        }
+        redeliver(timedOut, true);
+    }
+
+    @Override
+    public void redeliverUnacknowledgedMessages() {
+        List<Delivery> deliveries;
+        synchronized (unacked) {
+            deliveries = unacked.values().stream().map(pending -> pending.delivery).collect(Collectors.toList());
+            unacked.clear();
+        }
+        redeliver(deliveries, true);
+    }
+
+    private Producer<byte[]> retryProducer() throws PulsarClientException {
+        if(retryProducer == null) {
+            retryProducer = client.newProducer().topic(deadLetterPolicy.getRetryLetterTopic()).create();
+        }
+        return retryProducer;
+    }
+
+    private Producer<byte[]> deadLetterProducer() throws PulsarClientException {
+        if(deadLetterProducer == null) {
+            deadLetterProducer = client.newProducer().topic(deadLetterPolicy.getDeadLetterTopic()).create();
+        }
+        return deadLetterProducer;
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+        flow();
+    }
+
+    @Override
+    public void unsubscribe() throws PulsarClientException {
+        InMemoryPulsarClient.await(unsubscribeAsync());
+    }
+
+    @Override
+    public CompletableFuture<Void> unsubscribeAsync() {
+        closeAsync();
+        for(InMemorySubscription subscription : subscriptions) {
+            subscription.topic.unsubscribe(subscription);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void close() throws PulsarClientException {
+        InMemoryPulsarClient.await(closeAsync());
+    }
+
+    /**
+     * Leave the subscriptions, then give the queued and unacked messages back to them
+     */
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        List<Delivery> leftOver = new ArrayList<>();
+        List<CompletableFuture<?>> receives = new ArrayList<>();
+        synchronized (this) {
+            if(closed) {
+                return CompletableFuture.completedFuture(null);
+            }
+            closed = true;
+        }
+        if(ackTimeoutTask != null) {
+            ackTimeoutTask.cancel(false);
+        }
+        for(InMemorySubscription subscription : subscriptions) {
+            if(subscription.removeConsumer(this) && !subscription.durable) {
+                subscription.topic.unsubscribe(subscription);
+            }
+        }
+        synchronized (unacked) {
+            unacked.values().forEach(pending -> leftOver.add(pending.delivery));
+            unacked.clear();
+        }
+        synchronized (this) {
+            leftOver.addAll(incoming);
+            incoming.clear();
+            incomingBytes = 0;
+            receives.addAll(pendingReceives);
+            receives.addAll(pendingBatchReceives);
+            pendingReceives.clear();
+            pendingBatchReceives.clear();
+        }
+        redeliver(leftOver, false);
+        for(CompletableFuture<?> receive : receives) {
+            receive.completeExceptionally(new PulsarClientException.AlreadyClosedException("Consumer already closed"));
+        }
+        for(ConsumerInterceptor<T> interceptor : interceptors) {
+            interceptor.close();
+        }
+        closeQuietly(retryProducer);
+        closeQuietly(deadLetterProducer);
+        client.remove(this);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static void closeQuietly(Producer<byte[]> producer) {
+        if(producer != null) {
+            producer.closeAsync();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed;
+    }
+
+    @Override
+    public boolean hasReachedEndOfTopic() {
+        return false;
+    }
+
+    @Override
+    public ConsumerStats getStats() {
+        throw new UnsupportedOperationException("stats are not supported by the in-memory client");
+    }
+
+    @Override
+    public void seek(MessageId messageId) throws PulsarClientException {
+        throw new PulsarClientException.NotSupportedException("seek is not supported by the in-memory client");
+    }
+
+    @Override
+    public void seek(long timestamp) throws PulsarClientException {
+        throw new PulsarClientException.NotSupportedException("seek is not supported by the in-memory client");
+    }
+
+    @Override
+    public CompletableFuture<Void> seekAsync(MessageId messageId) {
+        return InMemoryPulsarClient.failed(new PulsarClientException.NotSupportedException(
+                "seek is not supported by the in-memory client"));
+    }
+
+    @Override
+    public CompletableFuture<Void> seekAsync(long timestamp) {
+        return InMemoryPulsarClient.failed(new PulsarClientException.NotSupportedException(
+                "seek is not supported by the in-memory client"));
+    }
+
+    @Override
+    public MessageId getLastMessageId() throws PulsarClientException {
+        throw new PulsarClientException.NotSupportedException("getLastMessageId is not supported by the in-memory client");
+    }
+
+    @Override
+    public CompletableFuture<MessageId> getLastMessageIdAsync() {
+        return InMemoryPulsarClient.failed(new PulsarClientException.NotSupportedException(
+                "getLastMessageId is not supported by the in-memory client"));
+    }
+
+    private static final class Unacked {
+        private final Delivery delivery;
+        private final long deadline;
+
+        private Unacked(Delivery delivery, long deadline) {
+            this.delivery = delivery;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.BatchReceivePolicy;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.ConsumerBuilder;
+import org.apache.pulsar.client.api.ConsumerCryptoFailureAction;
+import org.apache.pulsar.client.api.ConsumerEventListener;
+import org.apache.pulsar.client.api.ConsumerInterceptor;
+import org.apache.pulsar.client.api.CryptoKeyReader;
+import org.apache.pulsar.client.api.DeadLetterPolicy;
+import org.apache.pulsar.client.api.KeySharedPolicy;
+import org.apache.pulsar.client.api.MessageCrypto;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.RegexSubscriptionMode;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionInitialPosition;
+import org.apache.pulsar.client.api.SubscriptionMode;
+import org.apache.pulsar.client.api.SubscriptionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Consumer builder of the in-memory client. Options without an in-memory meaning, like crypto,
+ * compaction or chunking, are accepted and ignored, topic patterns are not supported.
+ * @author pig
+ */
+final class InMemoryConsumerBuilder<T> implements ConsumerBuilder<T> {
+    private final InMemoryPulsarClient client;
+    final Schema<T> schema;
+    List<String> topics = new ArrayList<>();
+    String subscriptionName;
+    String consumerName;
+    SubscriptionType subscriptionType = SubscriptionType.Exclusive;
+    SubscriptionMode subscriptionMode = SubscriptionMode.Durable;
+    MessageListener<T> messageListener;
+    int receiverQueueSize = 1000;
+    long ackTimeout;
+    long ackTimeoutTickTime = 1000;
+    long negativeAckRedeliveryDelay = 60000;
+    List<ConsumerInterceptor<T>> interceptors = new ArrayList<>();
+    DeadLetterPolicy deadLetterPolicy;
+    boolean enableRetry;
+    BatchReceivePolicy batchReceivePolicy = BatchReceivePolicy.DEFAULT_POLICY;
+
+    InMemoryConsumerBuilder(InMemoryPulsarClient client, Schema<T> schema) {
+        this.client = client;
+        this.schema = schema;
+    }
+
+    @Override
+    public ConsumerBuilder<T> clone() {
+        InMemoryConsumerBuilder<T> clone = new InMemoryConsumerBuilder<>(client, schema);
+        clone.topics = new ArrayList<>(topics);
+        clone.subscriptionName = subscriptionName;
+        clone.consumerName = consumerName;
+        clone.subscriptionType = subscriptionType;
+        clone.subscriptionMode = subscriptionMode;
+        clone.messageListener = messageListener;
+        clone.receiverQueueSize = receiverQueueSize;
+        clone.ackTimeout = ackTimeout;
+        clone.ackTimeoutTickTime = ackTimeoutTickTime;
+        clone.negativeAckRedeliveryDelay = negativeAckRedeliveryDelay;
+        clone.interceptors = new ArrayList<>(interceptors);
+        clone.deadLetterPolicy = deadLetterPolicy;
+        clone.enableRetry = enableRetry;
+        clone.batchReceivePolicy = batchReceivePolicy;
+        return clone;
+    }
+
+    @Override
+    public ConsumerBuilder<T> loadConf(Map<String, Object> config) {
+        throw new UnsupportedOperationException("loadConf is not supported by the in-memory client");
+    }
+
+    @Override
+    public Consumer<T> subscribe() throws PulsarClientException {
+        try {
+            return subscribeAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        } catch (ExecutionException e) {
+            throw InMemoryPulsarClient.unwrap(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Consumer<T>> subscribeAsync() {
+        return client.subscribeAsync(this);
+    }
+
+    @Override
+    public ConsumerBuilder<T> topic(String... topicNames) {
+        topics.addAll(Arrays.asList(topicNames));
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> topics(List<String> topicNames) {
+        topics.addAll(topicNames);
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> topicsPattern(Pattern topicsPattern) {
+        throw new UnsupportedOperationException("topic patterns are not supported by the in-memory client");
+    }
+
+    @Override
+    public ConsumerBuilder<T> topicsPattern(String topicsPattern) {
+        throw new UnsupportedOperationException("topic patterns are not supported by the in-memory client");
+    }
+
+    @Override
+    public ConsumerBuilder<T> subscriptionName(String subscriptionName) {
+        this.subscriptionName = subscriptionName;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> ackTimeout(long ackTimeout, TimeUnit timeUnit) {
+        this.ackTimeout = timeUnit.toMillis(ackTimeout);
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> ackTimeoutTickTime(long tickTime, TimeUnit timeUnit) {
+        this.ackTimeoutTickTime = timeUnit.toMillis(tickTime);
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> negativeAckRedeliveryDelay(long redeliveryDelay, TimeUnit timeUnit) {
+        this.negativeAckRedeliveryDelay = timeUnit.toMillis(redeliveryDelay);
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> subscriptionType(SubscriptionType subscriptionType) {
+        this.subscriptionType = subscriptionType;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> subscriptionMode(SubscriptionMode subscriptionMode) {
+        this.subscriptionMode = subscriptionMode;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> messageListener(MessageListener<T> messageListener) {
+        this.messageListener = messageListener;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> cryptoKeyReader(CryptoKeyReader cryptoKeyReader) {
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public ConsumerBuilder<T> messageCrypto(MessageCrypto messageCrypto) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> cryptoFailureAction(ConsumerCryptoFailureAction action) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> receiverQueueSize(int receiverQueueSize) {
+        this.receiverQueueSize = receiverQueueSize;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> acknowledgmentGroupTime(long delay, TimeUnit unit) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> replicateSubscriptionState(boolean replicateSubscriptionState) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> maxTotalReceiverQueueSizeAcrossPartitions(int maxTotalReceiverQueueSizeAcrossPartitions) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> consumerName(String consumerName) {
+        this.consumerName = consumerName;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> consumerEventListener(ConsumerEventListener consumerEventListener) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> readCompacted(boolean readCompacted) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> patternAutoDiscoveryPeriod(int periodInMinutes) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> patternAutoDiscoveryPeriod(int interval, TimeUnit unit) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> priorityLevel(int priorityLevel) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> property(String key, String value) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> properties(Map<String, String> properties) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> subscriptionInitialPosition(SubscriptionInitialPosition subscriptionInitialPosition) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> subscriptionTopicsMode(RegexSubscriptionMode regexSubscriptionMode) {
+        return this;
+    }
+
+    @Override
+    @SafeVarargs
+    public final ConsumerBuilder<T> intercept(ConsumerInterceptor<T>... interceptors) {
+        for(ConsumerInterceptor<T> interceptor : interceptors) {
+            this.interceptors.add(interceptor);
+        }
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> deadLetterPolicy(DeadLetterPolicy deadLetterPolicy) {
+        this.deadLetterPolicy = deadLetterPolicy;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> autoUpdatePartitions(boolean autoUpdate) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> keySharedPolicy(KeySharedPolicy keySharedPolicy) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> startMessageIdInclusive() {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> batchReceivePolicy(BatchReceivePolicy batchReceivePolicy) {
+        this.batchReceivePolicy = batchReceivePolicy;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> enableRetry(boolean retryEnable) {
+        this.enableRetry = retryEnable;
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> maxPendingChuckedMessage(int maxPendingChuckedMessage) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> autoAckOldestChunkedMessageOnQueueFull(boolean autoAckOldestChunkedMessageOnQueueFull) {
+        return this;
+    }
+
+    @Override
+    public ConsumerBuilder<T> expireTimeOfIncompleteChunkedMessage(long duration, TimeUnit unit) {
+        return this;
+    }
+}
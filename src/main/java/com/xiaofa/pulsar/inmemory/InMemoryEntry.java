@@ -0,0 +1,48 @@
+package com.xiaofa.pulsar.inmemory;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A message stored in a topic of the in-memory client, shared by the subscriptions of the topic.
+ * The id is assigned when the topic appends it.
+ * @author pig
+ */
+final class InMemoryEntry {
+    final String topicName;
+    final String key;
+    final boolean base64Key;
+    final byte[] orderingKey;
+    final Map<String, String> properties;
+    final byte[] data;
+    final long eventTime;
+    final long sequenceId;
+    final String producerName;
+    final long deliverAt;
+    InMemoryMessageId id;
+    long publishTime;
+
+    InMemoryEntry(String topicName, String key, boolean base64Key, byte[] orderingKey, Map<String, String> properties,
+            byte[] data, long eventTime, long sequenceId, String producerName, long deliverAt) {
+        this.topicName = topicName;
+        this.key = key;
+        this.base64Key = base64Key;
+        this.orderingKey = orderingKey;
+        this.properties = properties;
+        this.data = data;
+        this.eventTime = eventTime;
+        this.sequenceId = sequenceId;
+        this.producerName = producerName;
+        this.deliverAt = deliverAt;
+    }
+
+    /**
+     * @return  the hash Key_Shared subscriptions dispatch by, the ordering key first, -1 when there is no key
+     */
+    int keyHash() {
+        if(orderingKey != null) {
+            return Arrays.hashCode(orderingKey) & Integer.MAX_VALUE;
+        }
+        return key != null ? key.hashCode() & Integer.MAX_VALUE : -1;
+    }
+}
@@ -0,0 +1,148 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.common.api.EncryptionContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A stored message as seen by one consumer, decoded with the consumer's schema on first access.
+ * @author pig
+ */
+final class InMemoryMessage<T> implements Message<T> {
+    private final InMemoryEntry entry;
+    private final Schema<T> schema;
+    private final int redeliveryCount;
+    private T value;
+
+    InMemoryMessage(InMemoryEntry entry, Schema<T> schema, int redeliveryCount) {
+        this.entry = entry;
+        this.schema = schema;
+        this.redeliveryCount = redeliveryCount;
+    }
+
+    InMemoryEntry getEntry() {
+        return entry;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return entry.properties;
+    }
+
+    @Override
+    public boolean hasProperty(String name) {
+        return entry.properties.containsKey(name);
+    }
+
+    @Override
+    public String getProperty(String name) {
+        return entry.properties.get(name);
+    }
+
+    @Override
+    public byte[] getData() {
+        return entry.data;
+    }
+
+    @Override
+    public T getValue() {
+        if(value == null) {
+            value = schema.decode(entry.data);
+        }
+        return value;
+    }
+
+    @Override
+    public MessageId getMessageId() {
+        return entry.id;
+    }
+
+    @Override
+    public long getPublishTime() {
+        return entry.publishTime;
+    }
+
+    @Override
+    public long getEventTime() {
+        return entry.eventTime;
+    }
+
+    @Override
+    public long getSequenceId() {
+        return entry.sequenceId;
+    }
+
+    @Override
+    public String getProducerName() {
+        return entry.producerName;
+    }
+
+    @Override
+    public boolean hasKey() {
+        return entry.key != null;
+    }
+
+    @Override
+    public String getKey() {
+        return entry.key;
+    }
+
+    @Override
+    public boolean hasBase64EncodedKey() {
+        return entry.base64Key;
+    }
+
+    @Override
+    public byte[] getKeyBytes() {
+        if(entry.key == null) {
+            return null;
+        }
+        return entry.base64Key ? Base64.getDecoder().decode(entry.key) : entry.key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean hasOrderingKey() {
+        return entry.orderingKey != null;
+    }
+
+    @Override
+    public byte[] getOrderingKey() {
+        return entry.orderingKey;
+    }
+
+    @Override
+    public String getTopicName() {
+        return entry.topicName;
+    }
+
+    @Override
+    public Optional<EncryptionContext> getEncryptionCtx() {
+        return Optional.empty();
+    }
+
+    @Override
+    public int getRedeliveryCount() {
+        return redeliveryCount;
+    }
+
+    @Override
+    public byte[] getSchemaVersion() {
+        return null;
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return false;
+    }
+
+    @Override
+    public String getReplicatedFrom() {
+        return null;
+    }
+}
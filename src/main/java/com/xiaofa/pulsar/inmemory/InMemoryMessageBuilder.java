@@ -0,0 +1,133 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message builder of the in-memory client, the value is encoded with the schema when the message is sent.
+ * @author pig
+ */
+final class InMemoryMessageBuilder<T> implements TypedMessageBuilder<T> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient InMemoryProducer<?> producer;
+    private final transient Schema<T> schema;
+    private String key;
+    private boolean base64Key;
+    private byte[] orderingKey;
+    private T value;
+    private Map<String, String> properties;
+    private long eventTime;
+    private long sequenceId = -1;
+    private long deliverAt;
+
+    InMemoryMessageBuilder(InMemoryProducer<?> producer, Schema<T> schema) {
+        this.producer = producer;
+        this.schema = schema;
+    }
+
+    @Override
+    public MessageId send() throws PulsarClientException {
+        return InMemoryPulsarClient.await(sendAsync());
+    }
+
+    @Override
+    public CompletableFuture<MessageId> sendAsync() {
+        byte[] data = value == null ? new byte[0] : schema.encode(value);
+        return producer.sendAsync(key, base64Key, orderingKey,
+                properties == null ? Collections.emptyMap() : Collections.unmodifiableMap(properties),
+                data, eventTime, sequenceId, deliverAt);
+    }
+
+    @Override
+    public TypedMessageBuilder<T> key(String key) {
+        this.key = key;
+        this.base64Key = false;
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> keyBytes(byte[] key) {
+        this.key = Base64.getEncoder().encodeToString(key);
+        this.base64Key = true;
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> orderingKey(byte[] orderingKey) {
+        this.orderingKey = orderingKey;
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> value(T value) {
+        this.value = value;
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> property(String name, String value) {
+        if(properties == null) {
+            properties = new HashMap<>();
+        }
+        properties.put(name, value);
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> properties(Map<String, String> properties) {
+        if(this.properties == null) {
+            this.properties = new HashMap<>();
+        }
+        this.properties.putAll(properties);
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> eventTime(long timestamp) {
+        this.eventTime = timestamp;
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> sequenceId(long sequenceId) {
+        this.sequenceId = sequenceId;
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> replicationClusters(List<String> clusters) {
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> disableReplication() {
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> deliverAt(long timestamp) {
+        this.deliverAt = timestamp;
+        return this;
+    }
+
+    @Override
+    public TypedMessageBuilder<T> deliverAfter(long delay, TimeUnit unit) {
+        return deliverAt(System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    @Override
+    public TypedMessageBuilder<T> loadConf(Map<String, Object> config) {
+        throw new UnsupportedOperationException("loadConf is not supported by the in-memory client");
+    }
+}
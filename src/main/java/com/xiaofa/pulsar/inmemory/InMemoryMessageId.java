@@ -0,0 +1,62 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.MessageId;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Position of a message in a topic of the in-memory client, ordered by topic then entry.
+ * @author pig
+ */
+final class InMemoryMessageId implements MessageId {
+    private static final long serialVersionUID = 1L;
+
+    private final int topicId;
+    private final int partitionIndex;
+    private final long entryId;
+
+    InMemoryMessageId(int topicId, int partitionIndex, long entryId) {
+        this.topicId = topicId;
+        this.partitionIndex = partitionIndex;
+        this.entryId = entryId;
+    }
+
+    int getTopicId() {
+        return topicId;
+    }
+
+    long getEntryId() {
+        return entryId;
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return ByteBuffer.allocate(16).putInt(topicId).putInt(partitionIndex).putLong(entryId).array();
+    }
+
+    @Override
+    public int compareTo(MessageId other) {
+        InMemoryMessageId id = (InMemoryMessageId) other;
+        int compare = Integer.compare(topicId, id.topicId);
+        return compare != 0 ? compare : Long.compare(entryId, id.entryId);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof InMemoryMessageId)) {
+            return false;
+        }
+        InMemoryMessageId id = (InMemoryMessageId) other;
+        return topicId == id.topicId && entryId == id.entryId;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * topicId + Long.hashCode(entryId);
+    }
+
+    @Override
+    public String toString() {
+        return topicId + ":" + entryId + ":" + partitionIndex;
+    }
+}
@@ -0,0 +1,29 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A batch returned by {@link InMemoryConsumer#batchReceiveAsync()}
+ * @author pig
+ */
+final class InMemoryMessages<T> implements Messages<T> {
+    private final List<Message<T>> messages;
+
+    InMemoryMessages(List<Message<T>> messages) {
+        this.messages = messages;
+    }
+
+    @Override
+    public int size() {
+        return messages.size();
+    }
+
+    @Override
+    public Iterator<Message<T>> iterator() {
+        return messages.iterator();
+    }
+}
@@ -0,0 +1,155 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageRouter;
+import org.apache.pulsar.client.api.MessageRoutingMode;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerStats;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TopicMetadata;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Producer of the in-memory client, a send appends the message to the topic in the calling thread
+ * and returns an already completed future.
+ * Partitions are picked like the Pulsar client: by the custom router, by hash of the ordering key or the key,
+ * otherwise round-robin, or the producer's single partition in SinglePartition mode.
+ * @author pig
+ */
+final class InMemoryProducer<T> implements Producer<T> {
+    private final InMemoryPulsarClient client;
+    private final String topic;
+    private final String producerName;
+    private final Schema<T> schema;
+    private final List<InMemoryTopic> partitions;
+    private final MessageRouter messageRouter;
+    private final TopicMetadata topicMetadata;
+    private final int singlePartition;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+    private final AtomicLong lastSequenceId;
+    private volatile boolean closed;
+
+    InMemoryProducer(InMemoryPulsarClient client, String topic, String producerName, Schema<T> schema,
+            List<InMemoryTopic> partitions, MessageRoutingMode messageRoutingMode, MessageRouter messageRouter,
+            long initialSequenceId) {
+        this.client = client;
+        this.topic = topic;
+        this.producerName = producerName;
+        this.schema = schema;
+        this.partitions = partitions;
+        this.messageRouter = messageRoutingMode == MessageRoutingMode.CustomPartition ? messageRouter : null;
+        this.topicMetadata = partitions::size;
+        this.singlePartition = messageRoutingMode == MessageRoutingMode.SinglePartition ?
+                ThreadLocalRandom.current().nextInt(partitions.size()) : -1;
+        this.lastSequenceId = new AtomicLong(initialSequenceId);
+    }
+
+    CompletableFuture<MessageId> sendAsync(String key, boolean base64Key, byte[] orderingKey,
+            Map<String, String> properties, byte[] data, long eventTime, long sequenceId, long deliverAt) {
+        if(closed) {
+            return InMemoryPulsarClient.failed(new PulsarClientException.AlreadyClosedException(
+                    "Producer already closed, topic: " + topic));
+        }
+        long nextSequenceId = sequenceId >= 0 ? sequenceId : lastSequenceId.get() + 1;
+        lastSequenceId.accumulateAndGet(nextSequenceId, Math::max);
+        int index = 0;
+        if(partitions.size() > 1 && messageRouter != null) {
+            InMemoryEntry routed = new InMemoryEntry(topic, key, base64Key, orderingKey, properties, data,
+                    eventTime, nextSequenceId, producerName, deliverAt);
+            index = messageRouter.choosePartition(new InMemoryMessage<>(routed, schema, 0), topicMetadata);
+        } else if(partitions.size() > 1) {
+            index = choosePartition(key, orderingKey);
+        }
+        InMemoryTopic partition = partitions.get(index);
+        return CompletableFuture.completedFuture(partition.publish(new InMemoryEntry(partition.name, key, base64Key,
+                orderingKey, properties, data, eventTime, nextSequenceId, producerName, deliverAt)));
+    }
+
+    private int choosePartition(String key, byte[] orderingKey) {
+        if(orderingKey != null) {
+            return (Arrays.hashCode(orderingKey) & Integer.MAX_VALUE) % partitions.size();
+        }
+        if(key != null) {
+            return (key.hashCode() & Integer.MAX_VALUE) % partitions.size();
+        }
+        if(singlePartition >= 0) {
+            return singlePartition;
+        }
+        return (nextPartition.getAndIncrement() & Integer.MAX_VALUE) % partitions.size();
+    }
+
+    @Override
+    public String getTopic() {
+        return topic;
+    }
+
+    @Override
+    public String getProducerName() {
+        return producerName;
+    }
+
+    @Override
+    public MessageId send(T message) throws PulsarClientException {
+        return newMessage().value(message).send();
+    }
+
+    @Override
+    public CompletableFuture<MessageId> sendAsync(T message) {
+        return newMessage().value(message).sendAsync();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public TypedMessageBuilder<T> newMessage() {
+        return new InMemoryMessageBuilder<>(this, schema);
+    }
+
+    @Override
+    public <V> TypedMessageBuilder<V> newMessage(Schema<V> schema) {
+        return new InMemoryMessageBuilder<>(this, schema);
+    }
+
+    @Override
+    public long getLastSequenceId() {
+        return lastSequenceId.get();
+    }
+
+    @Override
+    public ProducerStats getStats() {
+        throw new UnsupportedOperationException("stats are not supported by the in-memory client");
+    }
+
+    @Override
+    public void close() {
+        closeAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        closed = true;
+        client.remove(this);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed;
+    }
+}
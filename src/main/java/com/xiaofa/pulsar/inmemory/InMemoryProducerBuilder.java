@@ -0,0 +1,213 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.CryptoKeyReader;
+import org.apache.pulsar.client.api.HashingScheme;
+import org.apache.pulsar.client.api.MessageRouter;
+import org.apache.pulsar.client.api.MessageRoutingMode;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.ProducerCryptoFailureAction;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer builder of the in-memory client. Batching, compression, timeouts and the other transport options
+ * are accepted and ignored, interceptors are not supported.
+ * @author pig
+ */
+final class InMemoryProducerBuilder<T> implements ProducerBuilder<T> {
+    private final InMemoryPulsarClient client;
+    final Schema<T> schema;
+    String topic;
+    String producerName;
+    MessageRoutingMode messageRoutingMode = MessageRoutingMode.RoundRobinPartition;
+    MessageRouter messageRouter;
+    long initialSequenceId = -1;
+
+    InMemoryProducerBuilder(InMemoryPulsarClient client, Schema<T> schema) {
+        this.client = client;
+        this.schema = schema;
+    }
+
+    @Override
+    public Producer<T> create() throws PulsarClientException {
+        try {
+            return createAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        } catch (ExecutionException e) {
+            throw InMemoryPulsarClient.unwrap(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Producer<T>> createAsync() {
+        return client.createProducerAsync(this);
+    }
+
+    @Override
+    public ProducerBuilder<T> loadConf(Map<String, Object> config) {
+        throw new UnsupportedOperationException("loadConf is not supported by the in-memory client");
+    }
+
+    @Override
+    public ProducerBuilder<T> clone() {
+        InMemoryProducerBuilder<T> clone = new InMemoryProducerBuilder<>(client, schema);
+        clone.topic = topic;
+        clone.producerName = producerName;
+        clone.messageRoutingMode = messageRoutingMode;
+        clone.messageRouter = messageRouter;
+        clone.initialSequenceId = initialSequenceId;
+        return clone;
+    }
+
+    @Override
+    public ProducerBuilder<T> topic(String topicName) {
+        this.topic = topicName;
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> producerName(String producerName) {
+        this.producerName = producerName;
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> sendTimeout(int sendTimeout, TimeUnit unit) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> maxPendingMessages(int maxPendingMessages) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> maxPendingMessagesAcrossPartitions(int maxPendingMessagesAcrossPartitions) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> blockIfQueueFull(boolean blockIfQueueFull) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> messageRoutingMode(MessageRoutingMode messageRoutingMode) {
+        this.messageRoutingMode = messageRoutingMode;
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> hashingScheme(HashingScheme hashingScheme) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> compressionType(CompressionType compressionType) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> messageRouter(MessageRouter messageRouter) {
+        this.messageRouter = messageRouter;
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> enableBatching(boolean enableBatching) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> enableChunking(boolean enableChunking) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> cryptoKeyReader(CryptoKeyReader cryptoKeyReader) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> addEncryptionKey(String key) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> cryptoFailureAction(ProducerCryptoFailureAction action) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> batchingMaxPublishDelay(long batchDelay, TimeUnit timeUnit) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> roundRobinRouterBatchingPartitionSwitchFrequency(int frequency) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> batchingMaxMessages(int batchMessagesMaxMessagesPerBatch) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> batchingMaxBytes(int batchingMaxBytes) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> batcherBuilder(BatcherBuilder batcherBuilder) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> initialSequenceId(long initialSequenceId) {
+        this.initialSequenceId = initialSequenceId;
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> property(String key, String value) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> properties(Map<String, String> properties) {
+        return this;
+    }
+
+    @Override
+    @SafeVarargs
+    @SuppressWarnings("deprecation")
+    public final ProducerBuilder<T> intercept(org.apache.pulsar.client.api.ProducerInterceptor<T>... interceptors) {
+        throw new UnsupportedOperationException("producer interceptors are not supported by the in-memory client");
+    }
+
+    @Override
+    public ProducerBuilder<T> intercept(org.apache.pulsar.client.api.interceptor.ProducerInterceptor... interceptors) {
+        throw new UnsupportedOperationException("producer interceptors are not supported by the in-memory client");
+    }
+
+    @Override
+    public ProducerBuilder<T> autoUpdatePartitions(boolean autoUpdate) {
+        return this;
+    }
+
+    @Override
+    public ProducerBuilder<T> enableMultiSchema(boolean multiSchema) {
+        return this;
+    }
+}
@@ -0,0 +1,304 @@
+package com.xiaofa.pulsar.inmemory;
+
+import com.xiaofa.pulsar.config.ClientConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.ConsumerBuilder;
+import org.apache.pulsar.client.api.DeadLetterPolicy;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.ReaderBuilder;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionMode;
+import org.apache.pulsar.client.util.RetryMessageUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * In-JVM stand-in of the {@link PulsarClient}, used instead of the broker client when the
+ * {@code pulsar-in-memory} profile is active, to measure the throughput of the listeners and producers without a broker.
+ * It covers what this starter uses: partitioned topics, Exclusive/Failover/Shared/Key_Shared dispatch,
+ * acks, negative acks, ack timeout, retry and dead letter topics and delayed delivery.
+ * Messages are only kept until every subscription has them dispatched, a topic retains
+ * {@link ClientConfig#getInMemoryRetention()} messages for its first subscription. Readers, seek and stats
+ * are not supported.
+ * @author pig
+ */
+@Slf4j
+public class InMemoryPulsarClient implements PulsarClient {
+    private static final String DEFAULT_DOMAIN = "persistent://";
+    private static final String DEFAULT_NAMESPACE = "public/default/";
+    private static final String PARTITION_SUFFIX = "-partition-";
+
+    private final Map<String, Integer> partitions;
+    private final int retention;
+    private final ExecutorService listenerExecutor;
+    private final ScheduledExecutorService timer;
+    private final Map<String, List<InMemoryTopic>> topics = new ConcurrentHashMap<>();
+    private final AtomicInteger topicIds = new AtomicInteger();
+    private final AtomicInteger consumerIds = new AtomicInteger();
+    private final AtomicInteger producerIds = new AtomicInteger();
+    private final List<InMemoryConsumer<?>> consumers = new CopyOnWriteArrayList<>();
+    private final List<InMemoryProducer<?>> producers = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public InMemoryPulsarClient(ClientConfig clientConfig) {
+        this.partitions = new HashMap<>(clientConfig.getInMemoryPartitions());
+        this.retention = clientConfig.getInMemoryRetention();
+        AtomicInteger listenerThreads = new AtomicInteger();
+        this.listenerExecutor = Executors.newFixedThreadPool(Math.max(clientConfig.getListenerThreads(), 1), r -> {
+            Thread thread = new Thread(r, "pulsar-in-memory-listener-" + listenerThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pulsar-in-memory-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("[Pulsar] in-memory client enabled, no broker is used");
+    }
+
+    @Override
+    public ProducerBuilder<byte[]> newProducer() {
+        return newProducer(Schema.BYTES);
+    }
+
+    @Override
+    public <T> ProducerBuilder<T> newProducer(Schema<T> schema) {
+        return new InMemoryProducerBuilder<>(this, schema);
+    }
+
+    @Override
+    public ConsumerBuilder<byte[]> newConsumer() {
+        return newConsumer(Schema.BYTES);
+    }
+
+    @Override
+    public <T> ConsumerBuilder<T> newConsumer(Schema<T> schema) {
+        return new InMemoryConsumerBuilder<>(this, schema);
+    }
+
+    @Override
+    public ReaderBuilder<byte[]> newReader() {
+        throw new UnsupportedOperationException("readers are not supported by the in-memory client");
+    }
+
+    @Override
+    public <T> ReaderBuilder<T> newReader(Schema<T> schema) {
+        throw new UnsupportedOperationException("readers are not supported by the in-memory client");
+    }
+
+    @Override
+    public void updateServiceUrl(String serviceUrl) {
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getPartitionsForTopic(String topic) {
+        List<String> names = partitionsOf(topic).stream().map(partition -> partition.name).collect(Collectors.toList());
+        return CompletableFuture.completedFuture(names);
+    }
+
+    <T> CompletableFuture<Producer<T>> createProducerAsync(InMemoryProducerBuilder<T> builder) {
+        if(closed) {
+            return failed(new PulsarClientException.AlreadyClosedException("Client already closed"));
+        }
+        if(builder.topic == null || builder.topic.isEmpty()) {
+            return failed(new PulsarClientException.InvalidConfigurationException("Topic name must be set on the producer builder"));
+        }
+        String topic = normalize(builder.topic);
+        String producerName = builder.producerName != null ? builder.producerName :
+                "in-memory-producer-" + producerIds.incrementAndGet();
+        InMemoryProducer<T> producer = new InMemoryProducer<>(this, topic, producerName, builder.schema,
+                partitionsOf(topic), builder.messageRoutingMode, builder.messageRouter, builder.initialSequenceId);
+        producers.add(producer);
+        return CompletableFuture.completedFuture(producer);
+    }
+
+    <T> CompletableFuture<Consumer<T>> subscribeAsync(InMemoryConsumerBuilder<T> builder) {
+        if(closed) {
+            return failed(new PulsarClientException.AlreadyClosedException("Client already closed"));
+        }
+        if(builder.topics.isEmpty()) {
+            return failed(new PulsarClientException.InvalidConfigurationException("Topic name must be set on the consumer builder"));
+        }
+        if(builder.subscriptionName == null || builder.subscriptionName.isEmpty()) {
+            return failed(new PulsarClientException.InvalidConfigurationException("Subscription name must be set on the consumer builder"));
+        }
+        List<String> names = builder.topics.stream().map(InMemoryPulsarClient::normalize).distinct()
+                .collect(Collectors.toList());
+        DeadLetterPolicy deadLetterPolicy = deadLetterPolicy(builder, names.get(0));
+        if(builder.enableRetry && !names.contains(normalize(deadLetterPolicy.getRetryLetterTopic()))) {
+            names.add(normalize(deadLetterPolicy.getRetryLetterTopic()));
+        }
+        String consumerName = builder.consumerName != null ? builder.consumerName :
+                "in-memory-consumer-" + consumerIds.incrementAndGet();
+        InMemoryConsumer<T> consumer = new InMemoryConsumer<>(this, builder, names, consumerName, deadLetterPolicy,
+                listenerExecutor, timer);
+        consumers.add(consumer);
+        try {
+            boolean durable = builder.subscriptionMode == SubscriptionMode.Durable;
+            for(String name : names) {
+                for(InMemoryTopic partition : partitionsOf(name)) {
+                    consumer.attach(partition.subscribe(builder.subscriptionName, durable));
+                }
+            }
+        } catch (PulsarClientException e) {
+            consumer.closeAsync();
+            return failed(e);
+        }
+        return CompletableFuture.completedFuture(consumer);
+    }
+
+    /**
+     * Complete the dead letter policy with the default topics of the Pulsar client:
+     * {@code <namespace>/<subscription>-RETRY} for retries, {@code <topic>-<subscription>-DLQ} for dead letters
+     */
+    private static DeadLetterPolicy deadLetterPolicy(InMemoryConsumerBuilder<?> builder, String firstTopic) {
+        DeadLetterPolicy policy = builder.deadLetterPolicy;
+        if(policy == null && !builder.enableRetry) {
+            return null;
+        }
+        DeadLetterPolicy.DeadLetterPolicyBuilder resolved = DeadLetterPolicy.builder()
+                .maxRedeliverCount(policy != null && policy.getMaxRedeliverCount() > 0 ?
+                        policy.getMaxRedeliverCount() : RetryMessageUtil.MAX_RECONSUMETIMES)
+                .deadLetterTopic(policy != null && policy.getDeadLetterTopic() != null ? policy.getDeadLetterTopic() :
+                        firstTopic + "-" + builder.subscriptionName + RetryMessageUtil.DLQ_GROUP_TOPIC_SUFFIX);
+        if(builder.enableRetry) {
+            String namespace = firstTopic.substring(0, firstTopic.lastIndexOf('/'));
+            resolved.retryLetterTopic(policy != null && policy.getRetryLetterTopic() != null ? policy.getRetryLetterTopic() :
+                    namespace + "/" + builder.subscriptionName + RetryMessageUtil.RETRY_GROUP_TOPIC_SUFFIX);
+        }
+        return resolved.build();
+    }
+
+    /**
+     * Get or create the partitions of a topic, a non-partitioned topic is its own single partition
+     */
+    private List<InMemoryTopic> partitionsOf(String topic) {
+        String name = normalize(topic);
+        return topics.computeIfAbsent(name, key -> {
+            int count = partitionCount(key);
+            if(count <= 0) {
+                return Collections.singletonList(new InMemoryTopic(key, topicIds.incrementAndGet(), -1, retention, timer));
+            }
+            List<InMemoryTopic> created = new ArrayList<>(count);
+            for(int i = 0; i < count; i++) {
+                created.add(new InMemoryTopic(key + PARTITION_SUFFIX + i, topicIds.incrementAndGet(), i, retention, timer));
+            }
+            return Collections.unmodifiableList(created);
+        });
+    }
+
+    /**
+     * Partitions configured by full topic name, or else by local name
+     */
+    private int partitionCount(String name) {
+        Integer count = partitions.get(name);
+        if(count == null) {
+            count = partitions.get(name.substring(name.lastIndexOf('/') + 1));
+        }
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Complete a topic name like the Pulsar client: {@code persistent://public/default/} for a local name,
+     * {@code persistent://} for {@code tenant/namespace/topic}
+     */
+    static String normalize(String topic) {
+        if(topic.contains("://")) {
+            return topic;
+        }
+        return topic.contains("/") ? DEFAULT_DOMAIN + topic : DEFAULT_DOMAIN + DEFAULT_NAMESPACE + topic;
+    }
+
+    /**
+     * Number of messages published to a topic, summed over its partitions
+     */
+    public long getPublishedCount(String topic) {
+        return partitionsOf(topic).stream().mapToLong(InMemoryTopic::getPublished).sum();
+    }
+
+    /**
+     * Number of messages of a subscription not dispatched to a consumer yet, summed over the partitions
+     */
+    public int getBacklog(String topic, String subscriptionName) {
+        int backlog = 0;
+        for(InMemoryTopic partition : partitionsOf(topic)) {
+            InMemorySubscription subscription = partition.getSubscription(subscriptionName);
+            if(subscription != null) {
+                backlog += subscription.getBacklog();
+            }
+        }
+        return backlog;
+    }
+
+    void remove(InMemoryConsumer<?> consumer) {
+        consumers.remove(consumer);
+    }
+
+    void remove(InMemoryProducer<?> producer) {
+        producers.remove(producer);
+    }
+
+    @Override
+    public void close() {
+        closeAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        closed = true;
+        for(InMemoryConsumer<?> consumer : consumers) {
+            consumer.closeAsync();
+        }
+        for(InMemoryProducer<?> producer : producers) {
+            producer.closeAsync();
+        }
+        timer.shutdownNow();
+        listenerExecutor.shutdown();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void shutdown() {
+        closeAsync();
+    }
+
+    static <V> V await(CompletableFuture<V> future) throws PulsarClientException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    static PulsarClientException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof PulsarClientException ? (PulsarClientException) cause : new PulsarClientException(cause);
+    }
+
+    static <V> CompletableFuture<V> failed(Throwable e) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+}
@@ -0,0 +1,147 @@
+package com.xiaofa.pulsar.inmemory;
+
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.SubscriptionType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A subscription on one topic partition of the in-memory client, dispatching its backlog to the consumers
+ * that have room in their receiver queue like the broker does:
+ * Exclusive to the single consumer, Failover to the consumer picked by partition among the consumers sorted by name,
+ * Shared round-robin and Key_Shared by hash of the ordering key or the key.
+ * Redelivered messages are dispatched before the backlog, delayed messages are held back for Shared
+ * and Key_Shared subscriptions only.
+ * @author pig
+ */
+final class InMemorySubscription {
+    final InMemoryTopic topic;
+    final String name;
+    final boolean durable;
+    private final ScheduledExecutorService timer;
+    private final ArrayDeque<Delivery> backlog = new ArrayDeque<>();
+    private final List<InMemoryConsumer<?>> consumers = new ArrayList<>();
+    private SubscriptionType type;
+    private int nextConsumer;
+
+    InMemorySubscription(InMemoryTopic topic, String name, boolean durable, ScheduledExecutorService timer) {
+        this.topic = topic;
+        this.name = name;
+        this.durable = durable;
+        this.timer = timer;
+    }
+
+    void publish(InMemoryEntry entry) {
+        Delivery delivery = new Delivery(entry, this);
+        long delay = entry.deliverAt - System.currentTimeMillis();
+        if(entry.deliverAt > 0 && delay > 0 && isShared()) {
+            timer.schedule(() -> add(delivery, false), delay, TimeUnit.MILLISECONDS);
+        } else {
+            add(delivery, false);
+        }
+    }
+
+    /**
+     * Put back a message that was not acked, ahead of the backlog
+     */
+    void redeliver(Delivery delivery) {
+        add(delivery, true);
+    }
+
+    private synchronized void add(Delivery delivery, boolean first) {
+        if(first) {
+            backlog.addFirst(delivery);
+        } else {
+            backlog.addLast(delivery);
+        }
+        dispatch();
+    }
+
+    synchronized void dispatch() {
+        while(!backlog.isEmpty()) {
+            InMemoryConsumer<?> consumer = select(backlog.peekFirst());
+            if(consumer == null) {
+                return;
+            }
+            consumer.enqueue(backlog.pollFirst());
+        }
+    }
+
+    private InMemoryConsumer<?> select(Delivery delivery) {
+        if(consumers.isEmpty()) {
+            return null;
+        }
+        InMemoryConsumer<?> consumer;
+        int keyHash = delivery.entry.keyHash();
+        if(type == SubscriptionType.Exclusive) {
+            consumer = consumers.get(0);
+        } else if(type == SubscriptionType.Failover) {
+            consumer = consumers.get(Math.max(topic.partitionIndex, 0) % consumers.size());
+        } else if(type == SubscriptionType.Key_Shared && keyHash >= 0) {
+            consumer = consumers.get(keyHash % consumers.size());
+        } else {
+            for(int i = 0; i < consumers.size(); i++) {
+                consumer = consumers.get((nextConsumer + i) % consumers.size());
+                if(consumer.hasPermits()) {
+                    nextConsumer = (nextConsumer + i + 1) % consumers.size();
+                    return consumer;
+                }
+            }
+            return null;
+        }
+        return consumer.hasPermits() ? consumer : null;
+    }
+
+    synchronized void addConsumer(InMemoryConsumer<?> consumer, SubscriptionType subscriptionType)
+            throws PulsarClientException {
+        if(!consumers.isEmpty()) {
+            if(type != subscriptionType) {
+                throw new PulsarClientException.ConsumerBusyException("Subscription " + name + " is of different type");
+            }
+            if(type == SubscriptionType.Exclusive) {
+                throw new PulsarClientException.ConsumerBusyException("Exclusive consumer is already connected to " + name);
+            }
+        }
+        type = subscriptionType;
+        consumers.add(consumer);
+        if(type == SubscriptionType.Failover) {
+            consumers.sort(Comparator.comparing(InMemoryConsumer::getConsumerName));
+        }
+        dispatch();
+    }
+
+    /**
+     * @return  true if it was the last consumer
+     */
+    synchronized boolean removeConsumer(InMemoryConsumer<?> consumer) {
+        consumers.remove(consumer);
+        return consumers.isEmpty();
+    }
+
+    synchronized int getBacklog() {
+        return backlog.size();
+    }
+
+    private synchronized boolean isShared() {
+        return type == SubscriptionType.Shared || type == SubscriptionType.Key_Shared;
+    }
+
+    /**
+     * A message of the subscription with its own redelivery count
+     */
+    static final class Delivery {
+        final InMemoryEntry entry;
+        final InMemorySubscription subscription;
+        int redeliveryCount;
+
+        Delivery(InMemoryEntry entry, InMemorySubscription subscription) {
+            this.entry = entry;
+            this.subscription = subscription;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.xiaofa.pulsar.inmemory;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A non-partitioned topic, or one partition of a partitioned topic, of the in-memory client.
+ * Appended messages are handed to every subscription, nothing is kept once they are dispatched.
+ * Until the first subscription is created the topic retains the latest messages, so that a subscription
+ * created after the first sends behaves like a durable subscription that already existed.
+ * @author pig
+ */
+final class InMemoryTopic {
+    final String name;
+    final int id;
+    final int partitionIndex;
+    private final int retention;
+    private final ScheduledExecutorService timer;
+    private final Map<String, InMemorySubscription> subscriptions = new LinkedHashMap<>();
+    private ArrayDeque<InMemoryEntry> retained = new ArrayDeque<>();
+    private long lastEntryId = -1;
+
+    InMemoryTopic(String name, int id, int partitionIndex, int retention, ScheduledExecutorService timer) {
+        this.name = name;
+        this.id = id;
+        this.partitionIndex = partitionIndex;
+        this.retention = retention;
+        this.timer = timer;
+    }
+
+    synchronized InMemoryMessageId publish(InMemoryEntry entry) {
+        entry.id = new InMemoryMessageId(id, partitionIndex, ++lastEntryId);
+        entry.publishTime = System.currentTimeMillis();
+        if(retained != null) {
+            retained.add(entry);
+            if(retained.size() > retention) {
+                retained.poll();
+            }
+        }
+        for(InMemorySubscription subscription : subscriptions.values()) {
+            subscription.publish(entry);
+        }
+        return entry.id;
+    }
+
+    synchronized InMemorySubscription subscribe(String subscriptionName, boolean durable) {
+        InMemorySubscription subscription = subscriptions.get(subscriptionName);
+        if(subscription == null) {
+            subscription = new InMemorySubscription(this, subscriptionName, durable, timer);
+            subscriptions.put(subscriptionName, subscription);
+            if(retained != null) {
+                for(InMemoryEntry entry : retained) {
+                    subscription.publish(entry);
+                }
+                retained = null;
+            }
+        }
+        return subscription;
+    }
+
+    synchronized void unsubscribe(InMemorySubscription subscription) {
+        subscriptions.remove(subscription.name, subscription);
+    }
+
+    synchronized InMemorySubscription getSubscription(String subscriptionName) {
+        return subscriptions.get(subscriptionName);
+    }
+
+    synchronized long getPublished() {
+        return lastEntryId + 1;
+    }
+}
@@ -0,0 +1,37 @@
+package com.xiaofa.pulsar.listener;
+
+import com.xiaofa.pulsar.client.AckAggregator;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+
+import java.util.List;
+
+/**
+ * A listener whose acks can be grouped by an {@link AckAggregator}.
+ * @param <T> the message type of the consumer
+ * @author pig
+ */
+public interface AckGroupingListener<T> {
+    /**
+     * Group the acks of the consumer with the aggregator, called before the consumer's first message is handled.
+     * @param consumer  pulsar consumer
+     * @param ackAggregator the aggregator of the consumer
+     */
+    void registerAckAggregator(Consumer<T> consumer, AckAggregator<T> ackAggregator);
+
+    /**
+     * called once per failed flush of grouped acks, the messages are redelivered after the ack timeout
+     * @param consumer  pulsar consumer
+     * @param messages  the messages whose ack failed
+     * @param cause the failure
+     */
+    void onAckFailure(Consumer<T> consumer, List<Message<T>> messages, Throwable cause);
+
+    /**
+     * @return  whether the acks of the listener reach the registered aggregator,
+     *          no aggregator is created for a listener acking on its own
+     */
+    default boolean isAckGroupingSupported() {
+        return true;
+    }
+}
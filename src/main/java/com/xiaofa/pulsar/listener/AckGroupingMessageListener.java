@@ -0,0 +1,68 @@
+package com.xiaofa.pulsar.listener;
+
+import com.xiaofa.pulsar.client.AckAggregator;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base of the per-message listeners: keeps the {@link AckAggregator} of every consumer
+ * and routes {@link #acknowledge(Consumer, Message)} through it, or acks directly when the acks are not grouped.
+ * Acks are only grouped when {@link #acknowledge(Consumer, Message)} is not overridden, an overriding listener
+ * acks on its own and an aggregator would wait for acks that never reach it.
+ * @param <T> the message type of the consumer
+ * @author pig
+ */
+@Slf4j
+public abstract class AckGroupingMessageListener<T> implements MessageListener<T>, AckGroupingListener<T> {
+    private final Map<Consumer<T>, AckAggregator<T>> ackAggregators = new ConcurrentHashMap<>();
+    private final boolean ackGroupingSupported;
+
+    protected AckGroupingMessageListener() {
+        try {
+            this.ackGroupingSupported = ClassUtils.getUserClass(getClass())
+                    .getMethod("acknowledge", Consumer.class, Message.class)
+                    .getDeclaringClass() == AckGroupingMessageListener.class;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * confirm the message, grouped with the other acks of the consumer when aggregation is enabled
+     * @param consumer  pulsar consumer
+     * @param msg   new message
+     * @throws PulsarClientException ack error
+     */
+    public void acknowledge(Consumer<T> consumer, Message<T> msg) throws PulsarClientException {
+        AckAggregator<T> ackAggregator = ackAggregators.get(consumer);
+        if(ackAggregator != null) {
+            ackAggregator.acknowledge(msg);
+        } else {
+            consumer.acknowledge(msg);
+        }
+    }
+
+    @Override
+    public void onAckFailure(Consumer<T> consumer, List<Message<T>> messages, Throwable cause) {
+        log.error("[Pulsar] ack confirm error, consumerName: {}, topic: {}, messages: {}",
+                consumer.getConsumerName(), consumer.getTopic(), messages.size(), cause);
+    }
+
+    @Override
+    public boolean isAckGroupingSupported() {
+        return ackGroupingSupported;
+    }
+
+    @Override
+    public void registerAckAggregator(Consumer<T> consumer, AckAggregator<T> ackAggregator) {
+        ackAggregators.put(consumer, ackAggregator);
+    }
+}
@@ -0,0 +1,66 @@
+package com.xiaofa.pulsar.listener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.PulsarClientException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Customize the batch processing listener.
+ * Receives whole batches polled with {@link Consumer#batchReceive()} and acks each batch in one call,
+ * so that sink listeners can do one bulk write per batch.
+ * Batch listeners are always consumed by the poll loop, {@code enableAsync} is ignored.
+ * The batch size is controlled by {@code batchReceiveMaxMessages}, {@code batchReceiveMaxBytes}
+ * and {@code batchReceiveTimeout}.
+ * A batch whose {@code handle} throws is negatively acknowledged as a whole and redelivered with a backoff.
+ *
+ * @author pig
+ **/
+@Slf4j
+public abstract class BatchConsumerMessageListener {
+
+    public void received(Consumer<String> consumer, Messages<String> messages) {
+        List<Message<String>> batch = new ArrayList<>(messages.size());
+        for(Message<String> message : messages) {
+            batch.add(message);
+        }
+        before(consumer, batch);
+        handle(consumer, batch);
+        try {
+            acknowledge(consumer, messages);
+        } catch (PulsarClientException e) {
+            log.error("ack confirm error, consumerName: {}, topic: {}, batch size: {}",
+                    consumer.getConsumerName(), consumer.getTopic(), batch.size(), e);
+        }
+    }
+
+    /**
+     * the operation before processing the batch
+     * @param consumer  pulsar consumer
+     * @param messages  the received batch
+     */
+    public void before(Consumer<String> consumer, List<Message<String>> messages) {
+        log.info("[Pulsar] Received a batch, topic: {}, size: {}", consumer.getTopic(), messages.size());
+    }
+
+    /**
+     * processing the batch
+     * @param consumer  pulsar consumer
+     * @param messages  the received batch, never empty
+     */
+    public abstract void handle(Consumer<String> consumer, List<Message<String>> messages);
+
+    /**
+     * confirm the batch, the whole batch is acked in one call by default
+     * @param consumer  pulsar consumer
+     * @param messages  the received batch
+     * @throws PulsarClientException ack error
+     */
+    public void acknowledge(Consumer<String> consumer, Messages<String> messages) throws PulsarClientException {
+        consumer.acknowledge(messages);
+    }
+}
@@ -4,18 +4,20 @@ import com.xiaofa.pulsar.event.MessageEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pulsar.client.api.Consumer;
 import org.apache.pulsar.client.api.Message;
-import org.apache.pulsar.client.api.MessageListener;
 import org.apache.pulsar.client.api.PulsarClientException;
 
 /**
  * Customize the message processing listener.
- * Need to manual ack.
- * Listens for new messages and processes incoming messages
+ * Listens for new messages and processes incoming messages.
+ * Acks are grouped by the binding's {@link com.xiaofa.pulsar.client.AckAggregator} unless {@link #acknowledge(Consumer, Message)}
+ * is overridden, failed acks are reported to {@link #onAckFailure(Consumer, java.util.List, Throwable)}.
+ * Messages whose {@code handle} throws are negatively acknowledged and redelivered with an exponential backoff,
+ * see {@code negativeAckRedeliveryDelay}. Redelivered messages already handled can be dropped, see {@code dedupMaxEntries}.
  *
  * @author pig
  **/
 @Slf4j
-public abstract class ConsumerMessageListener implements MessageListener<String>, MessageEvent {
+public abstract class ConsumerMessageListener extends AckGroupingMessageListener<String> implements MessageEvent {
     @Override
     public void received(Consumer<String> consumer, Message<String> message) {
         before(consumer, message);
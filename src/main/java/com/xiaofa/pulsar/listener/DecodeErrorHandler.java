@@ -0,0 +1,22 @@
+package com.xiaofa.pulsar.listener;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+
+/**
+ * Handles the messages a {@link TypedConsumerMessageListener} fails to decode.
+ * Register a bean of this type to replace the default {@link LoggingDecodeErrorHandler},
+ * or override {@link TypedConsumerMessageListener#onDecodeError(Consumer, Message, SchemaSerializationException)}
+ * for a single listener.
+ * @author pig
+ */
+public interface DecodeErrorHandler {
+    /**
+     * handle a malformed message, the handler decides whether it is acked
+     * @param consumer  pulsar consumer
+     * @param message   the malformed message
+     * @param cause the decode failure
+     */
+    void handle(Consumer<byte[]> consumer, Message<byte[]> message, SchemaSerializationException cause);
+}
@@ -0,0 +1,21 @@
+package com.xiaofa.pulsar.listener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+
+/**
+ * Default decode error handler, logs the malformed message and acks it.
+ * A malformed payload never decodes, redelivering it would only loop until the dead letter topic.
+ * @author pig
+ */
+@Slf4j
+public class LoggingDecodeErrorHandler implements DecodeErrorHandler {
+    @Override
+    public void handle(Consumer<byte[]> consumer, Message<byte[]> message, SchemaSerializationException cause) {
+        log.error("[Pulsar] drop malformed message, topic: {}, messageId: {}, size: {}",
+                message.getTopicName(), message.getMessageId(), message.getData().length, cause);
+        consumer.acknowledgeAsync(message);
+    }
+}
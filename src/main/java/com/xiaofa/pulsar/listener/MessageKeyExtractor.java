@@ -0,0 +1,19 @@
+package com.xiaofa.pulsar.listener;
+
+import org.apache.pulsar.client.api.Message;
+
+/**
+ * Extracts the ordering key of a received message when the Pulsar message key is not the entity to order by.
+ * Messages with the same key are processed strictly in order by the same lane,
+ * see {@code @Consume(concurrency = N, keyExtractor = ...)}.
+ * Implementations need a public no-arg constructor.
+ * @author pig
+ */
+public interface MessageKeyExtractor {
+    /**
+     * extract the ordering key
+     * @param message   the received message
+     * @return  the ordering key, null for messages that can be processed in any order
+     */
+    String extract(Message<?> message);
+}
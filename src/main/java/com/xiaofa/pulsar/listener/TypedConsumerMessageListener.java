@@ -0,0 +1,92 @@
+package com.xiaofa.pulsar.listener;
+
+import com.xiaofa.pulsar.codec.JsonPayloadCodec;
+import com.xiaofa.pulsar.codec.PayloadCodec;
+import com.xiaofa.pulsar.codec.RawPayloads;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.springframework.core.ResolvableType;
+
+import java.lang.reflect.Type;
+
+/**
+ * Customize the typed message processing listener.
+ * The payload type is resolved once from the generic signature, messages are consumed as raw bytes
+ * and decoded straight into the payload type by the {@link PayloadCodec}, skipping the intermediate String.
+ * String and byte[] payloads are handed over raw, see {@link RawPayloads}.
+ * Payloads that cannot be decoded go to {@link #onDecodeError(Consumer, Message, SchemaSerializationException)}.
+ * Acks and handler failures are dealt with like {@link ConsumerMessageListener}.
+ *
+ * @param <T> the payload type, may be generic, e.g. {@code List<OrderVo>}
+ * @author pig
+ **/
+@Slf4j
+public abstract class TypedConsumerMessageListener<T> extends AckGroupingMessageListener<byte[]> {
+    private static final PayloadCodec DEFAULT_CODEC = new JsonPayloadCodec();
+    private static final DecodeErrorHandler DEFAULT_DECODE_ERROR_HANDLER = new LoggingDecodeErrorHandler();
+
+    private final Type payloadType;
+    private volatile PayloadCodec payloadCodec = DEFAULT_CODEC;
+    private volatile DecodeErrorHandler decodeErrorHandler = DEFAULT_DECODE_ERROR_HANDLER;
+
+    protected TypedConsumerMessageListener() {
+        ResolvableType generic = ResolvableType.forClass(getClass()).as(TypedConsumerMessageListener.class).getGeneric(0);
+        if(generic.resolve() == null) {
+            throw new RuntimeException("[Pulsar] payload type of " + getClass().getName() + " can not be resolved.");
+        }
+        this.payloadType = generic.hasUnresolvableGenerics() ? generic.resolve() : generic.getType();
+    }
+
+    @Override
+    public void received(Consumer<byte[]> consumer, Message<byte[]> message) {
+        T payload;
+        try {
+            payload = RawPayloads.decode(message.getData(), payloadType, payloadCodec);
+        } catch (SchemaSerializationException e) {
+            onDecodeError(consumer, message, e);
+            return;
+        }
+        handle(payload, message);
+        try {
+            acknowledge(consumer, message);
+        } catch (PulsarClientException e) {
+            log.error("ack confirm error, consumerName: {}, topic: {}, messageId: {}",
+                    consumer.getConsumerName(), consumer.getTopic(), message.getMessageId(), e);
+        }
+    }
+
+    /**
+     * processing the message
+     * @param payload   the decoded payload
+     * @param raw   the received message
+     */
+    public abstract void handle(T payload, Message<?> raw);
+
+    /**
+     * called with the messages whose payload can not be decoded, delegates to the decode error handler
+     * @param consumer  pulsar consumer
+     * @param message   the malformed message
+     * @param cause the decode failure
+     */
+    public void onDecodeError(Consumer<byte[]> consumer, Message<byte[]> message, SchemaSerializationException cause) {
+        decodeErrorHandler.handle(consumer, message, cause);
+    }
+
+    /**
+     * @return the payload type resolved from the generic signature
+     */
+    public Type getPayloadType() {
+        return payloadType;
+    }
+
+    public void setPayloadCodec(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    public void setDecodeErrorHandler(DecodeErrorHandler decodeErrorHandler) {
+        this.decodeErrorHandler = decodeErrorHandler;
+    }
+}
@@ -1,11 +1,14 @@
 package com.xiaofa.pulsar.utils;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.databind.node.JsonNodeType;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.xiaofa.pulsar.utils.json.LocalDateSerializer;
 import com.xiaofa.pulsar.utils.json.LocalDateTimeSerializer;
@@ -13,9 +16,13 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 @Slf4j
@@ -24,7 +31,14 @@ public class JsonUtil {
     private final static String LEFT_BRACKET = "[";
     private final static String RIGHT_BRACKET = "]";
 
-    public static final ObjectMapper MAPPER = new ObjectMapper()
+    /**
+     * System property enabling the Afterburner module, which accesses bean properties through generated bytecode
+     * instead of reflection. Needs jackson-module-afterburner on the classpath, read once when the class is loaded
+     */
+    public static final String AFTERBURNER_PROPERTY = "pulsar.json.afterburner";
+    private static final String AFTERBURNER_MODULE = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+    public static final ObjectMapper MAPPER = registerAfterburner(new ObjectMapper()
             .configure(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL, true)
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
             .setSerializationInclusion(JsonInclude.Include.NON_NULL)
@@ -32,19 +46,95 @@ public class JsonUtil {
                     .addSerializer(LocalDate.class, new LocalDateSerializer())
                     .addSerializer(LocalDateTime.class, new LocalDateTimeSerializer())
             )
-            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS));
+
+    /**
+     * Readers and writers resolve their root (de)serializer once, the mapper resolves it again on every call
+     */
+    private static final Map<Type, ObjectReader> READERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<Class<?>, ObjectReader>> MAP_READERS = new ConcurrentHashMap<>();
+
+    /**
+     * The module is loaded by name, so that jackson-module-afterburner stays an optional dependency
+     */
+    private static ObjectMapper registerAfterburner(ObjectMapper mapper) {
+        if (!Boolean.getBoolean(AFTERBURNER_PROPERTY)) {
+            return mapper;
+        }
+        try {
+            mapper.registerModule((com.fasterxml.jackson.databind.Module) Class.forName(AFTERBURNER_MODULE).newInstance());
+            log.info("[Pulsar] jackson afterburner enabled");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("[Pulsar] {} is set but jackson-module-afterburner is not on the classpath", AFTERBURNER_PROPERTY);
+        }
+        return mapper;
+    }
+
+    /**
+     * Get the reader of a type, cached
+     * @param type  a class, a generic type or a {@link JavaType}
+     * @return  the reader
+     */
+    public static ObjectReader readerFor(Type type) {
+        ObjectReader reader = READERS.get(type);
+        if (reader == null) {
+            reader = READERS.computeIfAbsent(type, key -> MAPPER.readerFor(MAPPER.getTypeFactory().constructType(key)));
+        }
+        return reader;
+    }
+
+    /**
+     * Get the writer of a class, cached
+     * @param clazz the runtime class of the values
+     * @return  the writer
+     */
+    public static ObjectWriter writerFor(Class<?> clazz) {
+        ObjectWriter writer = WRITERS.get(clazz);
+        if (writer == null) {
+            writer = WRITERS.computeIfAbsent(clazz, MAPPER::writerFor);
+        }
+        return writer;
+    }
+
+    private static ObjectWriter writerOf(Object obj) {
+        return obj == null ? MAPPER.writer() : writerFor(obj.getClass());
+    }
 
 
     public static <T> String toJson(T obj) {
         String serialValue = null;
         try {
-            serialValue = MAPPER.writeValueAsString(obj);
+            serialValue = writerOf(obj).writeValueAsString(obj);
+        } catch (JsonProcessingException e) {
+            log.error("class:{} instance serial to Json has error:{}", obj.toString(), e.getMessage());
+        }
+        return serialValue;
+    }
+
+    /**
+     * Serialize straight into UTF-8 bytes, without the String
+     */
+    public static <T> byte[] toBytes(T obj) {
+        byte[] serialValue = null;
+        try {
+            serialValue = writerOf(obj).writeValueAsBytes(obj);
         } catch (JsonProcessingException e) {
             log.error("class:{} instance serial to Json has error:{}", obj.toString(), e.getMessage());
         }
         return serialValue;
     }
 
+    /**
+     * Serialize as UTF-8 into the stream, which is flushed but left open
+     */
+    public static <T> void toOutputStream(T obj, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(outputStream, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writerOf(obj).writeValue(generator, obj);
+        }
+    }
+
     /**
      * Json串反序列化,注意在对象Bean中增加@JsonIgnoreProperties(ignoreUnknown = true)(默认为false,
      * 即要求Bean与返回结果的字段严格一致,否则无法反序列化,如果外部接口没有通知情况下增加字段会比较危险.)
@@ -57,7 +147,7 @@ public class JsonUtil {
     public static <T> T fromStr(String json, Class<T> clz) {
         T deSerialObj = null;
         try {
-            deSerialObj = MAPPER.readValue(json, clz);
+            deSerialObj = readerFor(clz).readValue(json);
         } catch (IOException e) {
             log.error("json from string",
                     "Class: {} deserialize from Json: {} failed: {}", clz, json, e.getMessage());
@@ -68,7 +158,7 @@ public class JsonUtil {
     public static <T> T fromStr(String json, TypeReference<?> valueTypeRef) {
         T deSerialObj = null;
         try {
-            deSerialObj = (T) MAPPER.readValue(json, valueTypeRef);
+            deSerialObj = readerFor(valueTypeRef.getType()).readValue(json);
         } catch (Exception ex) {
             log.error("TypeReference: {} deserialize from Json {} failed: {}", valueTypeRef, json, ex.getMessage(), ex);
         }
@@ -78,25 +168,50 @@ public class JsonUtil {
     public static <T> T fromStr(String json, JavaType javaType) {
         T deSerialObj = null;
         try {
-            deSerialObj = MAPPER.readValue(json, javaType);
+            deSerialObj = readerFor(javaType).readValue(json);
         } catch (Exception ex) {
             log.error("JavaType: {} deserialize from Json {} failed: {}", javaType, json, ex.getMessage(), ex);
         }
         return deSerialObj;
     }
 
+    /**
+     * Deserialize from UTF-8 bytes, without the String
+     */
+    public static <T> T fromBytes(byte[] json, Class<T> clz) {
+        T deSerialObj = null;
+        try {
+            deSerialObj = readerFor(clz).readValue(json);
+        } catch (IOException e) {
+            log.error("Class: {} deserialize from Json bytes failed: {}", clz, e.getMessage());
+        }
+        return deSerialObj;
+    }
+
+    public static <T> T fromBytes(byte[] json, TypeReference<?> valueTypeRef) {
+        T deSerialObj = null;
+        try {
+            deSerialObj = readerFor(valueTypeRef.getType()).readValue(json);
+        } catch (IOException e) {
+            log.error("TypeReference: {} deserialize from Json bytes failed: {}", valueTypeRef, e.getMessage());
+        }
+        return deSerialObj;
+    }
+
+    /**
+     * Bind the value at a path like {@code data.items[0].sku} straight from the parser,
+     * the subtrees off the path are skipped without being parsed into nodes
+     */
     public static <T> T fromStrByPath(String json, String path, Class<T> clz) {
         if (path == null || path.length() == 0) {
             return fromStr(json, clz);
         }
         T deSerialObj = null;
-        try {
-            JsonNode jsonNode = MAPPER.readTree(json);
-            String jsonContent = getStringByPath(jsonNode, path);
-            if (jsonContent == null) {
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            if (!moveToPath(parser, path)) {
                 return null;
             }
-            deSerialObj = MAPPER.readValue(jsonContent, clz);
+            deSerialObj = readerFor(clz).readValue(parser);
         } catch (IOException e) {
             log.error("json from string",
                     "Class: {} deserialize from Json: {} failed: {}", clz, json, e.getMessage());
@@ -109,13 +224,11 @@ public class JsonUtil {
             return fromStr(json, valueTypeRef);
         }
         T deSerialObj = null;
-        try {
-            JsonNode jsonNode = MAPPER.readTree(json);
-            String jsonContent = getStringByPath(jsonNode, path);
-            if (jsonContent == null) {
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            if (!moveToPath(parser, path)) {
                 return null;
             }
-            deSerialObj = (T) MAPPER.readValue(jsonContent, valueTypeRef);
+            deSerialObj = readerFor(valueTypeRef.getType()).readValue(parser);
         } catch (IOException e) {
             log.error("json from string",
                     "TypeReference: {} deserialize from Json: {} failed: {}", valueTypeRef, json, e.getMessage());
@@ -123,32 +236,67 @@ public class JsonUtil {
         return deSerialObj;
     }
 
-    private static String getStringByPath(JsonNode jsonNode, String path) {
-        String[] nodeNames = path.split("\\.");
-        JsonNode node = jsonNode;
-        for (String nodeName : nodeNames) {
-            node = getNode(node, nodeName);
-            if (node == null) {
-                return null;
+    /**
+     * Move the parser to the first token of the value at the path.
+     * An index is only applied to an array, like {@link JsonNode#get(int)} it is ignored otherwise
+     * @return  false if the path does not exist
+     */
+    private static boolean moveToPath(JsonParser parser, String path) throws IOException {
+        parser.nextToken();
+        for (String nodeName : path.split("\\.")) {
+            String key;
+            Integer index = null;
+            if (nodeName.contains(LEFT_BRACKET)) {
+                key = nodeName.substring(0, nodeName.indexOf(LEFT_BRACKET));
+                index = Integer.parseInt(nodeName.substring(nodeName.indexOf(LEFT_BRACKET) + 1, nodeName.indexOf(RIGHT_BRACKET)));
+            } else {
+                key = nodeName;
+            }
+            if (!moveToField(parser, key)) {
+                return false;
+            }
+            if (index != null && parser.currentToken() == JsonToken.START_ARRAY && !moveToElement(parser, index)) {
+                return false;
             }
         }
-        return node.toString();
+        return true;
     }
 
-    private static JsonNode getNode(JsonNode jsonNode, String nodeName) {
-        String key;
-        Integer index = null;
-        if (nodeName.contains(LEFT_BRACKET)) {
-            key = nodeName.substring(0, nodeName.indexOf(LEFT_BRACKET));
-            index = Integer.parseInt(nodeName.substring(nodeName.indexOf(LEFT_BRACKET) + 1, nodeName.indexOf(RIGHT_BRACKET)));
-        } else {
-            key = nodeName;
+    /**
+     * Move the parser from the start of an object to the value of one of its fields, skipping the other values
+     */
+    private static boolean moveToField(JsonParser parser, String field) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return false;
         }
-        JsonNode result = jsonNode.get(key);
-        if (result != null && index != null && JsonNodeType.ARRAY.equals(result.getNodeType())) {
-            return result.get(index);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals(name)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Move the parser from the start of an array to one of its elements, skipping the elements before it
+     */
+    private static boolean moveToElement(JsonParser parser, int index) throws IOException {
+        if (index < 0) {
+            return false;
+        }
+        for (int i = 0; ; i++) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return false;
+            }
+            if (i == index) {
+                return true;
+            }
+            parser.skipChildren();
         }
-        return result;
     }
 
     public static <T> T fromInputStream(InputStream inputStream, Class<T> clazz) throws IOException {
@@ -156,7 +304,7 @@ public class JsonUtil {
             return null;
         }
 
-        return MAPPER.readValue(inputStream, clazz);
+        return readerFor(clazz).readValue(inputStream);
     }
 
     public static <T> T fromInputStream(InputStream inputStream, JavaType type) throws IOException {
@@ -164,14 +312,16 @@ public class JsonUtil {
             return null;
         }
 
-        return MAPPER.readValue(inputStream, type);
+        return readerFor(type).readValue(inputStream);
     }
 
     public static <K, V> Map<K, V> getMapFromStr(String json, Class<K> keyClass, Class<V> valueClass) {
-        JavaType javaType = MAPPER.getTypeFactory().constructMapType(Map.class, keyClass, valueClass);
+        ObjectReader reader = MAP_READERS.computeIfAbsent(keyClass, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(valueClass, value -> MAPPER.readerFor(
+                        MAPPER.getTypeFactory().constructMapType(Map.class, keyClass, valueClass)));
         Map<K, V> deSerialList = null;
         try {
-            deSerialList = MAPPER.readValue(json, javaType);
+            deSerialList = reader.readValue(json);
         } catch (IOException e) {
             log.error("Collection of class:{} deSerial from json:{} has error:{}", keyClass, json, e.getMessage());
         }
@@ -250,11 +400,42 @@ public class JsonUtil {
         return node;
     }
 
+    /**
+     * Set a top-level field of a json object, in place if it exists, last otherwise.
+     * The tokens are copied through a generator, the document is not parsed into nodes
+     */
     public static String addElement(String json, String filed, String value) {
-        JsonNode node = readTree(json);
-        ObjectNode objectNode = (ObjectNode) node;
-        objectNode.put(filed, value);
-        return toJson(node);
+        StringWriter writer = new StringWriter(json.length() + filed.length() + (value == null ? 8 : value.length() + 8));
+        try (JsonParser parser = MAPPER.getFactory().createParser(json);
+             JsonGenerator generator = MAPPER.getFactory().createGenerator(writer)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("not a json object: " + json);
+            }
+            generator.writeStartObject();
+            boolean written = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (filed.equals(name)) {
+                    parser.skipChildren();
+                    if (!written) {
+                        generator.writeStringField(filed, value);
+                        written = true;
+                    }
+                } else {
+                    generator.writeFieldName(name);
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+            if (!written) {
+                generator.writeStringField(filed, value);
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            log.error("add element {} to Json:{} has error:{}", filed, json, e.getMessage());
+            throw new IllegalArgumentException("invalid json", e);
+        }
+        return writer.toString();
     }
 
     public static JsonNode readTree(String json) {
@@ -268,34 +449,41 @@ public class JsonUtil {
     }
 
 
+    /**
+     * Get a top-level field as text, the other fields are skipped without being parsed into nodes
+     */
     public static String getByField(String json, String field) {
         //field必须是顶层的元素
-        JsonNode node = readTree(json);
-        JsonNode target = node.get(field);
-        if (target == null) {
-            return "";
-        }
-        String value = "";
-        JsonNodeType type = target.getNodeType();
-        switch (type) {
-            case BOOLEAN:
-                value = target.booleanValue() + "";
-                break;
-            case NUMBER:
-                value = target.numberValue() + "";
-                break;
-            case STRING:
-                value = target.textValue();
-                break;
-            case OBJECT:
-                value = target.toString();
-                break;
-            default:
-                //如果不是这四个,调不动的
-                log.error("get node value from Json:{} has error type {}", json, type.name());
-                throw new IllegalArgumentException("not exist field :" + field);
-        }
-        return value;
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            parser.nextToken();
+            if (!moveToField(parser, field)) {
+                return "";
+            }
+            JsonToken token = parser.currentToken();
+            switch (token) {
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    return parser.getBooleanValue() + "";
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    return parser.getNumberValue() + "";
+                case VALUE_STRING:
+                    return parser.getText();
+                case START_OBJECT:
+                    StringWriter writer = new StringWriter();
+                    try (JsonGenerator generator = MAPPER.getFactory().createGenerator(writer)) {
+                        generator.copyCurrentStructure(parser);
+                    }
+                    return writer.toString();
+                default:
+                    //如果不是这四个,调不动的
+                    log.error("get node value from Json:{} has error type {}", json, token.name());
+                    throw new IllegalArgumentException("not exist field :" + field);
+            }
+        } catch (IOException e) {
+            log.error("get field {} from Json:{} has error:{}", field, json, e.getMessage());
+            throw new IllegalArgumentException("invalid json", e);
+        }
     }
 
 }
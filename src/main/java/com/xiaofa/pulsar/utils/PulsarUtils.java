@@ -4,18 +4,77 @@ import com.xiaofa.pulsar.beans.TopicNameComponent;
 import com.xiaofa.pulsar.constants.PulsarConstants;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author Pig/linxiaofa
  * @date 2020/8/7 11:35 上午
  */
 public class PulsarUtils {
-    
+    /**
+     * Upper bound of cached topic names, resolution falls back to formatting once it is reached
+     */
+    static final int MAX_CACHED_TOPICS = 10000;
+
+    private static final Map<TopicNameComponent, Map<String, String>> TOPIC_CACHE = new ConcurrentHashMap<>();
+    private static final AtomicInteger CACHED_TOPICS = new AtomicInteger();
+
+    /**
+     * Resolve the fully-qualified topic name, the result is cached per name component and short topic name.
+     * @param topicNameComponent    persistent, tenancy and namespace of the topic
+     * @param value the short topic name
+     * @return  the fully-qualified topic name
+     */
     public static String getActualTopic(TopicNameComponent topicNameComponent, String value) {
+        Map<String, String> topics = TOPIC_CACHE.get(topicNameComponent);
+        if(topics != null) {
+            String topic = topics.get(value);
+            if(topic != null) {
+                return topic;
+            }
+        }
+        String topic = formatTopic(topicNameComponent, value);
+        if(CACHED_TOPICS.get() < MAX_CACHED_TOPICS) {
+            if(topics == null) {
+                topics = TOPIC_CACHE.computeIfAbsent(copyOf(topicNameComponent), key -> new ConcurrentHashMap<>());
+            }
+            // reserve the slot first, concurrent callers must not push the cache past the bound
+            if(CACHED_TOPICS.incrementAndGet() > MAX_CACHED_TOPICS || topics.putIfAbsent(value, topic) != null) {
+                CACHED_TOPICS.decrementAndGet();
+            }
+        }
+        return topic;
+    }
+
+    /**
+     * @return the number of cached topic names
+     */
+    static int cachedTopics() {
+        int cached = 0;
+        for(Map<String, String> topics : TOPIC_CACHE.values()) {
+            cached += topics.size();
+        }
+        return cached;
+    }
+
+    private static String formatTopic(TopicNameComponent topicNameComponent, String value) {
         if(StringUtils.isAnyBlank(topicNameComponent.getTenancy(), topicNameComponent.getNamespace())) {
             throw new RuntimeException("[Pulsar] tenancy and namespace must be not blank");
         }
-        return String.format("%s://%s/%s/%s",
-                topicNameComponent.isPersistent()? PulsarConstants.PERSISTENT:PulsarConstants.NON_PERSISTENT,
-                topicNameComponent.getTenancy(), topicNameComponent.getNamespace(), value);
+        return (topicNameComponent.isPersistent()? PulsarConstants.PERSISTENT:PulsarConstants.NON_PERSISTENT) +
+                "://" + topicNameComponent.getTenancy() + '/' + topicNameComponent.getNamespace() + '/' + value;
+    }
+
+    /**
+     * The component is mutable, the cache keeps its own copy
+     */
+    private static TopicNameComponent copyOf(TopicNameComponent topicNameComponent) {
+        TopicNameComponent copy = new TopicNameComponent();
+        copy.setTenancy(topicNameComponent.getTenancy());
+        copy.setNamespace(topicNameComponent.getNamespace());
+        copy.setPersistent(topicNameComponent.isPersistent());
+        return copy;
     }
 }
@@ -0,0 +1,152 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.listener.ConsumerMessageListener;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class AckAggregatorTest {
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final List<Throwable> failures = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testIndividualAcksFlushByCount() throws Exception {
+        Consumer<String> consumer = consumer();
+        ConsumerMessageListener owner = owner();
+        MessageListener<String> listener = new AckAggregator<>(owner, 3, 60000, false, 0, timer).wrap(owner);
+        for(int i = 0; i < 3; i++) {
+            listener.received(consumer, message("topic", i));
+        }
+
+        ArgumentCaptor<Messages<String>> batch = ArgumentCaptor.forClass(Messages.class);
+        verify(consumer).acknowledgeAsync(batch.capture());
+        assertEquals(3, batch.getValue().size());
+        verify(consumer, never()).acknowledge(any(Message.class));
+    }
+
+    @Test
+    public void testCumulativeWaitsForPrecedingMessages() throws Exception {
+        Consumer<String> consumer = consumer();
+        ConsumerMessageListener owner = owner();
+        AckAggregator<String> aggregator = new AckAggregator<>(owner, 100, 60000, true, 0, timer);
+        List<Message<String>> messages = new ArrayList<>();
+        MessageListener<String> tracking = aggregator.wrap((c, message) -> messages.add(message));
+        for(int i = 0; i < 4; i++) {
+            tracking.received(consumer, message("topic", i));
+        }
+
+        owner.acknowledge(consumer, messages.get(1));
+        owner.acknowledge(consumer, messages.get(2));
+        aggregator.flush();
+        verify(consumer, never()).acknowledgeCumulativeAsync(any(Message.class));
+
+        owner.acknowledge(consumer, messages.get(0));
+        aggregator.flush();
+        ArgumentCaptor<Message<String>> position = ArgumentCaptor.forClass(Message.class);
+        verify(consumer).acknowledgeCumulativeAsync(position.capture());
+        assertSame(messages.get(2), position.getValue());
+    }
+
+    @Test
+    public void testStaleMessageStopsHoldingCumulativeAcksBack() throws Exception {
+        Consumer<String> consumer = consumer();
+        ConsumerMessageListener owner = owner();
+        AckAggregator<String> aggregator = new AckAggregator<>(owner, 100, 60000, true, 200, timer);
+        List<Message<String>> messages = new ArrayList<>();
+        MessageListener<String> tracking = aggregator.wrap((c, message) -> messages.add(message));
+        for(int i = 0; i < 3; i++) {
+            tracking.received(consumer, message("topic", i));
+        }
+        owner.acknowledge(consumer, messages.get(1));
+        owner.acknowledge(consumer, messages.get(2));
+        Thread.sleep(100);
+        tracking.received(consumer, messages.get(0));
+        Thread.sleep(150);
+        aggregator.flush();
+        verify(consumer, never()).acknowledgeCumulativeAsync(any(Message.class));
+
+        Thread.sleep(100);
+        aggregator.flush();
+        ArgumentCaptor<Message<String>> position = ArgumentCaptor.forClass(Message.class);
+        verify(consumer).acknowledgeCumulativeAsync(position.capture());
+        assertSame(messages.get(2), position.getValue());
+        assertEquals(0, aggregator.getTracked());
+    }
+
+    @Test
+    public void testFlushFailureIsReportedOnce() throws Exception {
+        Consumer<String> consumer = consumer();
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("disconnected"));
+        when(consumer.acknowledgeAsync(any(Messages.class))).thenReturn(failed);
+        ConsumerMessageListener owner = owner();
+        AckAggregator<String> aggregator = new AckAggregator<>(owner, 100, 60000, false, 0, timer);
+        MessageListener<String> listener = aggregator.wrap(owner);
+        for(int i = 0; i < 5; i++) {
+            listener.received(consumer, message("topic", i));
+        }
+        aggregator.close();
+        assertEquals(1, failures.size());
+    }
+
+    private ConsumerMessageListener owner() {
+        return new ConsumerMessageListener() {
+            @Override
+            public void before(Consumer<String> consumer, Message<String> message) {
+            }
+
+            @Override
+            public void handle(Consumer<String> consumer, Message<String> message) {
+            }
+
+            @Override
+            public void onAckFailure(Consumer<String> consumer, List<Message<String>> messages, Throwable cause) {
+                failures.add(cause);
+            }
+        };
+    }
+
+    private Consumer<String> consumer() {
+        Consumer<String> consumer = mock(Consumer.class);
+        when(consumer.acknowledgeAsync(any(Messages.class))).thenReturn(CompletableFuture.completedFuture(null));
+        when(consumer.acknowledgeCumulativeAsync(any(Message.class))).thenReturn(CompletableFuture.completedFuture(null));
+        return consumer;
+    }
+
+    private Message<String> message(String topic, int sequence) {
+        Message<String> message = mock(Message.class);
+        MessageId messageId = mock(MessageId.class);
+        when(message.getTopicName()).thenReturn(topic);
+        when(message.getMessageId()).thenReturn(messageId);
+        when(message.getSequenceId()).thenReturn((long) sequence);
+        return message;
+    }
+}
@@ -0,0 +1,152 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.listener.BatchConsumerMessageListener;
+import com.xiaofa.pulsar.listener.ConsumerMessageListener;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class ConsumerPollerTest {
+
+    @Test
+    public void testBatchIsHandledAndAckedOnce() throws Exception {
+        Consumer<String> consumer = mock(Consumer.class);
+        Messages<String> batch = messages("a", "b", "c");
+        when(consumer.batchReceive()).thenReturn(batch)
+                .thenThrow(new PulsarClientException.AlreadyClosedException("closed"));
+        List<List<String>> handled = new ArrayList<>();
+        ConsumerPoller.ofBatch(consumer, new BatchConsumerMessageListener() {
+            @Override
+            public void handle(Consumer<String> consumer, List<Message<String>> messages) {
+                List<String> values = new ArrayList<>();
+                messages.forEach(message -> values.add(message.getValue()));
+                handled.add(values);
+            }
+        }, "batch#0", null, new InFlightTracker(), backoff()).run();
+
+        assertEquals(1, handled.size());
+        assertEquals(Arrays.asList("a", "b", "c"), handled.get(0));
+        verify(consumer).acknowledge(batch);
+    }
+
+    @Test
+    public void testLongRunningLoopKeepsStackFlat() throws Exception {
+        Consumer<String> consumer = mock(Consumer.class);
+        int batches = 10000;
+        int[] polled = {0};
+        Messages<String> batch = messages("a");
+        when(consumer.batchReceive()).thenAnswer(invocation -> {
+            if(polled[0]++ == batches) {
+                throw new PulsarClientException.AlreadyClosedException("closed");
+            }
+            return batch;
+        });
+        int[] depth = {0};
+        new ConsumerPoller<>(consumer, new ConsumerMessageListener() {
+            @Override
+            public void handle(Consumer<String> consumer, Message<String> message) {
+                if(polled[0] % 1000 == 0) {
+                    depth[0] = Math.max(depth[0], Thread.currentThread().getStackTrace().length);
+                }
+                if(polled[0] == 1) {
+                    throw new IllegalStateException("handler failure must not stop the loop");
+                }
+            }
+
+            @Override
+            public void before(Consumer<String> consumer, Message<String> message) {
+            }
+
+            @Override
+            public void acknowledge(Consumer<String> consumer, Message<String> msg) {
+            }
+        }).run();
+
+        assertEquals(batches + 1, polled[0]);
+        verify(consumer, times(batches + 1)).batchReceive();
+        assertTrue(depth[0] < 200);
+    }
+
+    @Test
+    public void testAsyncPollingOnSharedPool() throws Exception {
+        Consumer<String> consumer = mock(Consumer.class);
+        Messages<String> batch = messages("a", "b");
+        CompletableFuture<Messages<String>> closed = new CompletableFuture<>();
+        closed.completeExceptionally(new PulsarClientException.AlreadyClosedException("closed"));
+        when(consumer.batchReceiveAsync()).thenReturn(CompletableFuture.completedFuture(batch),
+                CompletableFuture.completedFuture(batch), closed);
+        CountDownLatch handled = new CountDownLatch(2);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        ConsumerPoller.ofBatch(consumer, new BatchConsumerMessageListener() {
+            @Override
+            public void handle(Consumer<String> consumer, List<Message<String>> messages) {
+                handled.countDown();
+            }
+        }, "batch#0", new MemoryBudget(1 << 20, 0.5), new InFlightTracker(), backoff()).pollAsync(pool);
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        verify(consumer, timeout(5000).times(3)).batchReceiveAsync();
+        verify(consumer, timeout(5000).times(2)).acknowledge(batch);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFailedBatchIsNegativelyAcked() throws Exception {
+        Consumer<String> consumer = mock(Consumer.class);
+        Messages<String> batch = messages("a", "b");
+        when(consumer.batchReceive()).thenReturn(batch)
+                .thenThrow(new PulsarClientException.AlreadyClosedException("closed"));
+        ConsumerPoller.ofBatch(consumer, new BatchConsumerMessageListener() {
+            @Override
+            public void handle(Consumer<String> consumer, List<Message<String>> messages) {
+                throw new IllegalStateException("sink down");
+            }
+        }, "batch#0", null, new InFlightTracker(), backoff()).run();
+
+        verify(consumer).negativeAcknowledge(batch);
+        verify(consumer, never()).acknowledge(batch);
+    }
+
+    private RedeliveryBackoff backoff() {
+        return new RedeliveryBackoff(1000, 60000, 30000, mock(ScheduledExecutorService.class));
+    }
+
+    private Messages<String> messages(String... values) {
+        List<Message<String>> list = new ArrayList<>();
+        for(String value : values) {
+            Message<String> message = mock(Message.class);
+            when(message.getValue()).thenReturn(value);
+            when(message.getData()).thenReturn(value.getBytes());
+            list.add(message);
+        }
+        Messages<String> messages = mock(Messages.class);
+        when(messages.size()).thenReturn(list.size());
+        when(messages.iterator()).thenAnswer(invocation -> list.iterator());
+        return messages;
+    }
+}
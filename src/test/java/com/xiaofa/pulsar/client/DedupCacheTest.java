@@ -0,0 +1,176 @@
+package com.xiaofa.pulsar.client;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class DedupCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRedeliveredMessageIsAckedWithoutHandling() {
+        DedupCache cache = new DedupCache(100, 60000);
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        MessageListener<String> listener = cache.wrap((c, m) -> handled.incrementAndGet(), null,
+                (c, m) -> duplicates.incrementAndGet());
+        Consumer<String> consumer = mock(Consumer.class);
+        Message<String> message = message(new byte[] {1, 2, 3});
+
+        listener.received(consumer, message);
+        listener.received(consumer, message);
+        listener.received(consumer, message(new byte[] {1, 2, 4}));
+
+        assertEquals(2, handled.get());
+        assertEquals(1, duplicates.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testFailedMessageIsNotRemembered() {
+        DedupCache cache = new DedupCache(100, 60000);
+        AtomicInteger attempts = new AtomicInteger();
+        MessageListener<String> listener = cache.wrap((c, m) -> {
+            if(attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("handler failed");
+            }
+        }, null, (c, m) -> fail("not a duplicate"));
+        Message<String> message = message(new byte[] {1});
+
+        try {
+            listener.received(mock(Consumer.class), message);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        listener.received(mock(Consumer.class), message);
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void testBusinessKeyFallsBackToMessageId() {
+        DedupCache cache = new DedupCache(100, 60000);
+        AtomicInteger handled = new AtomicInteger();
+        MessageListener<String> listener = cache.wrap((c, m) -> handled.incrementAndGet(),
+                m -> m.getProperty("orderId"), (c, m) -> { });
+        Message<String> first = message(new byte[] {1});
+        when(first.getProperty("orderId")).thenReturn("order-1");
+        Message<String> republished = message(new byte[] {2});
+        when(republished.getProperty("orderId")).thenReturn("order-1");
+        Message<String> anonymous = message(new byte[] {3});
+
+        listener.received(mock(Consumer.class), first);
+        listener.received(mock(Consumer.class), republished);
+        listener.received(mock(Consumer.class), anonymous);
+        listener.received(mock(Consumer.class), anonymous);
+
+        assertEquals(2, handled.get());
+        verify(republished, never()).getMessageId();
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        AtomicLong now = new AtomicLong(1000);
+        DedupCache cache = new DedupCache(100, 500, now::get);
+        cache.add(42);
+
+        now.set(1499);
+        assertTrue(cache.contains(42));
+        now.set(1500);
+        assertFalse(cache.contains(42));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testClockEvictsUnreferencedEntriesFirst() {
+        DedupCache cache = new DedupCache(64, 60000);
+        long hot = keyOfSegment(0, 0);
+        cache.add(hot);
+        for(int i = 1; i < 20; i++) {
+            assertTrue(cache.contains(hot));
+            cache.add(keyOfSegment(0, i));
+        }
+
+        assertTrue(cache.contains(hot));
+        assertEquals(4, cache.size());
+        assertEquals(16, cache.getEvictions());
+    }
+
+    @Test
+    public void testMatchesReferenceSetUnderChurn() {
+        AtomicLong now = new AtomicLong();
+        DedupCache cache = new DedupCache(4096, 1000, now::get);
+        Map<Long, Long> reference = new HashMap<>();
+        Random random = new Random(7);
+        for(int i = 0; i < 200000; i++) {
+            now.addAndGet(random.nextInt(3));
+            long key = keyOfSegment(random.nextInt(16), random.nextInt(200));
+            Long expiresAt = reference.get(key);
+            assertEquals(expiresAt != null && expiresAt > now.get(), cache.contains(key));
+            if(random.nextBoolean()) {
+                cache.add(key);
+                reference.put(key, Math.max(expiresAt != null ? expiresAt : 0, now.get() + 1000));
+            }
+        }
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        DedupCache cache = new DedupCache(100, 500, now::get);
+        cache.add(1);
+        now.set(1200);
+        cache.add(2);
+        now.set(1600);
+        File snapshot = new File(folder.getRoot(), "dedup/orders_0.dedup");
+
+        assertEquals(1, cache.save(snapshot));
+        DedupCache restored = new DedupCache(100, 500, now::get);
+        assertEquals(1, restored.load(snapshot));
+        assertTrue(restored.contains(2));
+        assertFalse(restored.contains(1));
+        assertEquals(0, new DedupCache(100, 500).load(new File(folder.getRoot(), "missing.dedup")));
+    }
+
+    private static Message<String> message(byte[] id) {
+        MessageId messageId = mock(MessageId.class);
+        when(messageId.toByteArray()).thenReturn(id);
+        Message<String> message = mock(Message.class);
+        when(message.getMessageId()).thenReturn(messageId);
+        return message;
+    }
+
+    /**
+     * Keys landing in the given segment, spread over its slots
+     */
+    private static long keyOfSegment(int segment, int i) {
+        return ((long) segment << 60) | (i * 0x9E3779B9L & 0x0FFFFFFFFFFFFFFFL) | 1;
+    }
+}
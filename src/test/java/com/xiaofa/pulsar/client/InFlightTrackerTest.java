@@ -0,0 +1,78 @@
+package com.xiaofa.pulsar.client;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class InFlightTrackerTest {
+
+    @Test
+    public void testAwaitIdleWaitsForHandlers() throws Exception {
+        InFlightTracker tracker = new InFlightTracker();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageListener<String> listener = tracker.entering(tracker.leaving((consumer, message) -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.execute(() -> listener.received(mock(Consumer.class), mock(Message.class)));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        tracker.close();
+        assertEquals(1, tracker.awaitIdle(50));
+        release.countDown();
+        assertEquals(0, tracker.awaitIdle(5000));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMessagesAreDroppedOnceClosed() throws Exception {
+        InFlightTracker tracker = new InFlightTracker();
+        AtomicInteger handled = new AtomicInteger();
+        MessageListener<String> listener = tracker.entering(tracker.leaving(
+                (consumer, message) -> handled.incrementAndGet()));
+        listener.received(mock(Consumer.class), mock(Message.class));
+        tracker.close();
+        listener.received(mock(Consumer.class), mock(Message.class));
+
+        assertEquals(1, handled.get());
+        assertFalse(tracker.enter());
+        assertEquals(0, tracker.awaitIdle(0));
+    }
+
+    @Test
+    public void testFailedHandlerLeaves() throws Exception {
+        InFlightTracker tracker = new InFlightTracker();
+        MessageListener<String> listener = tracker.entering(tracker.leaving((consumer, message) -> {
+            throw new IllegalStateException("handler failed");
+        }));
+        try {
+            listener.received(mock(Consumer.class), mock(Message.class));
+        } catch (IllegalStateException expected) {
+            // the poll loop logs it
+        }
+
+        assertEquals(0, tracker.awaitIdle(0));
+    }
+}
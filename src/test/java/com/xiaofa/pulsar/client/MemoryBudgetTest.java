@@ -0,0 +1,97 @@
+package com.xiaofa.pulsar.client;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class MemoryBudgetTest {
+
+    @Test
+    public void testPauseAboveBudgetAndResumeBelowLowWatermark() {
+        MemoryBudget memoryBudget = new MemoryBudget(1000, 0.5);
+        List<Message<String>> held = new ArrayList<>();
+        MessageListener<String> handler = (consumer, message) -> { };
+        MessageListener<String> releasing = memoryBudget.releasing("large#0", handler);
+        MessageListener<String> charging = memoryBudget.charging("large#0", (consumer, message) -> held.add(message));
+        Consumer<String> consumer = mock(Consumer.class);
+        Consumer<String> other = mock(Consumer.class);
+        memoryBudget.charging("small#0", handler).received(other, message(10));
+        memoryBudget.releasing("small#0", handler).received(other, message(10));
+
+        for(int i = 0; i < 3; i++) {
+            charging.received(consumer, message(400));
+        }
+        assertTrue(memoryBudget.isPaused());
+        assertEquals(1200, memoryBudget.getUsed());
+        assertEquals(1200L, memoryBudget.getUsages().get("large#0").longValue());
+        assertEquals(0L, memoryBudget.getUsages().get("small#0").longValue());
+        verify(consumer).pause();
+        verify(other).pause();
+
+        releasing.received(consumer, held.get(0));
+        assertTrue(memoryBudget.isPaused());
+        releasing.received(consumer, held.get(1));
+        assertFalse(memoryBudget.isPaused());
+        assertEquals(400, memoryBudget.getUsed());
+        verify(consumer).resume();
+        verify(other).resume();
+    }
+
+    @Test
+    public void testReleasedWhenHandlerFails() {
+        MemoryBudget memoryBudget = new MemoryBudget(1000, 0.5);
+        Consumer<String> consumer = mock(Consumer.class);
+        MessageListener<String> chain = memoryBudget.charging("failing#0", memoryBudget.releasing("failing#0",
+                (c, message) -> {
+                    throw new IllegalStateException("handler failure");
+                }));
+        try {
+            chain.received(consumer, message(2000));
+        } catch (IllegalStateException expected) {
+            // the poller logs the failure
+        }
+        assertEquals(0, memoryBudget.getUsed());
+        assertFalse(memoryBudget.isPaused());
+        verify(consumer).pause();
+        verify(consumer).resume();
+    }
+
+    @Test
+    public void testClosedConsumerIsDeregistered() {
+        MemoryBudget memoryBudget = new MemoryBudget(1000, 0.5);
+        MessageListener<String> handler = (consumer, message) -> { };
+        Consumer<String> closed = mock(Consumer.class);
+        Consumer<String> open = mock(Consumer.class);
+        memoryBudget.charging("orders#0", memoryBudget.releasing("orders#0", handler)).received(closed, message(10));
+        assertEquals(1, memoryBudget.getConsumers());
+
+        memoryBudget.deregister(closed);
+        assertEquals(0, memoryBudget.getConsumers());
+        memoryBudget.charging("orders#0", handler).received(open, message(2000));
+        assertTrue(memoryBudget.isPaused());
+        verify(open).pause();
+        verify(closed, never()).pause();
+    }
+
+    private Message<String> message(int size) {
+        Message<String> message = mock(Message.class);
+        when(message.getData()).thenReturn(new byte[size]);
+        return message;
+    }
+}
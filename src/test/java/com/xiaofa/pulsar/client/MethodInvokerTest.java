@@ -0,0 +1,97 @@
+package com.xiaofa.pulsar.client;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author pig
+ */
+public class MethodInvokerTest {
+
+    @Test
+    public void testPublicMethodIsInvoked() throws Exception {
+        PublicHandler handler = new PublicHandler();
+        MethodInvoker.of(PublicHandler.class.getMethod("handle", String.class, int.class))
+                .invoke(handler, new Object[] {"order", 3});
+        MethodInvoker.of(PublicHandler.class.getMethod("ping")).invoke(handler, new Object[0]);
+
+        assertEquals("order:3", handler.calls.get(0));
+        assertEquals("ping", handler.calls.get(1));
+    }
+
+    @Test
+    public void testNonPublicMethodIsInvoked() throws Exception {
+        HiddenHandler handler = new HiddenHandler();
+        MethodInvoker.of(HiddenHandler.class.getDeclaredMethod("handle", String.class, long.class))
+                .invoke(handler, new Object[] {"order", 5L});
+
+        assertEquals("order:5", handler.last);
+    }
+
+    @Test
+    public void testWideMethodIsInvoked() throws Exception {
+        PublicHandler handler = new PublicHandler();
+        MethodInvoker.of(PublicHandler.class.getMethod("wide", String.class, String.class, String.class,
+                String.class, String.class)).invoke(handler, new Object[] {"a", "b", "c", "d", "e"});
+
+        assertEquals("abcde", handler.calls.get(0));
+    }
+
+    @Test
+    public void testExceptionsAreThrownUnwrapped() throws Exception {
+        MethodInvoker failing = MethodInvoker.of(PublicHandler.class.getMethod("fail"));
+        try {
+            failing.invoke(new PublicHandler(), new Object[0]);
+            fail("the exception of the method must be thrown");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        MethodInvoker hidden = MethodInvoker.of(HiddenHandler.class.getDeclaredMethod("fail"));
+        try {
+            hidden.invoke(new HiddenHandler(), new Object[0]);
+            fail("the exception of the method must be thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("hidden"));
+        }
+    }
+
+    public static class PublicHandler {
+        private final List<String> calls = new ArrayList<>();
+
+        public void handle(String payload, int count) {
+            calls.add(payload + ":" + count);
+        }
+
+        public String ping() {
+            calls.add("ping");
+            return "pong";
+        }
+
+        public void wide(String a, String b, String c, String d, String e) {
+            calls.add(a + b + c + d + e);
+        }
+
+        public void fail() throws IOException {
+            throw new IOException("disk full");
+        }
+    }
+
+    static class HiddenHandler {
+        private String last;
+
+        void handle(String payload, long count) {
+            last = payload + ":" + count;
+        }
+
+        void fail() {
+            throw new IllegalStateException("hidden handler failed");
+        }
+    }
+}
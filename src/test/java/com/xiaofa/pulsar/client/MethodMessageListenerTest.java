@@ -0,0 +1,146 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.annotations.MessageKey;
+import com.xiaofa.pulsar.annotations.MessageProperties;
+import com.xiaofa.pulsar.annotations.MessageProperty;
+import com.xiaofa.pulsar.codec.JsonPayloadCodec;
+import com.xiaofa.pulsar.listener.DecodeErrorHandler;
+import com.xiaofa.pulsar.listener.LoggingDecodeErrorHandler;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class MethodMessageListenerTest {
+
+    @Test
+    public void testArgumentsAreResolvedAndMessageAcked() throws Exception {
+        OrderHandler handler = new OrderHandler();
+        MethodMessageListener listener = listener(handler, "handle");
+        Consumer<byte[]> consumer = mock(Consumer.class);
+        Message<byte[]> message = message("[{\"id\":7}]");
+
+        listener.received(consumer, message);
+
+        assertEquals(Integer.valueOf(7), handler.orders.get(0).get("id"));
+        assertEquals("order-7", handler.key);
+        assertEquals("trace-1", handler.traceId);
+        assertEquals(Collections.singletonMap("traceId", "trace-1"), handler.properties);
+        assertSame(message, handler.message);
+        assertSame(consumer, handler.consumer);
+        verify(consumer).acknowledge(message);
+    }
+
+    @Test
+    public void testStringPayloadIsNotDecoded() throws Exception {
+        OrderHandler handler = new OrderHandler();
+        Consumer<byte[]> consumer = mock(Consumer.class);
+        listener(handler, "raw").received(consumer, message("not json"));
+
+        assertEquals("not json", handler.raw);
+        verify(consumer).acknowledge(any(Message.class));
+    }
+
+    @Test
+    public void testFailedMethodIsNotAcked() throws Exception {
+        OrderHandler handler = new OrderHandler();
+        Consumer<byte[]> consumer = mock(Consumer.class);
+        try {
+            listener(handler, "fail").received(consumer, message("x"));
+            fail("the failure must reach the redelivery backoff");
+        } catch (IllegalStateException expected) {
+            // negatively acked by the pipeline
+        }
+        verify(consumer, never()).acknowledge(any(Message.class));
+    }
+
+    @Test
+    public void testMalformedPayloadGoesToDecodeErrorHandler() throws Exception {
+        DecodeErrorHandler decodeErrorHandler = mock(DecodeErrorHandler.class);
+        OrderHandler handler = new OrderHandler();
+        Consumer<byte[]> consumer = mock(Consumer.class);
+        Message<byte[]> message = message("{broken");
+        new MethodMessageListener(handler, OrderHandler.class.getMethod("handle", List.class, String.class,
+                String.class, Map.class, Message.class, Consumer.class), new JsonPayloadCodec(), decodeErrorHandler)
+                .received(consumer, message);
+
+        verify(decodeErrorHandler).handle(same(consumer), same(message), any(SchemaSerializationException.class));
+        assertNull(handler.orders);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTwoPayloadsAreRejected() throws Exception {
+        new MethodMessageListener(new OrderHandler(), OrderHandler.class.getMethod("twoPayloads", String.class,
+                String.class), new JsonPayloadCodec(), new LoggingDecodeErrorHandler());
+    }
+
+    private MethodMessageListener listener(OrderHandler handler, String name) {
+        for(java.lang.reflect.Method method : OrderHandler.class.getMethods()) {
+            if(method.getName().equals(name)) {
+                return new MethodMessageListener(handler, method, new JsonPayloadCodec(), new LoggingDecodeErrorHandler());
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private Message<byte[]> message(String data) {
+        Message<byte[]> message = mock(Message.class);
+        when(message.getData()).thenReturn(data.getBytes(StandardCharsets.UTF_8));
+        when(message.getKey()).thenReturn("order-7");
+        when(message.getProperty("traceId")).thenReturn("trace-1");
+        when(message.getProperties()).thenReturn(Collections.singletonMap("traceId", "trace-1"));
+        return message;
+    }
+
+    public static class OrderHandler {
+        private List<Map<String, Integer>> orders;
+        private String key;
+        private String traceId;
+        private Map<String, String> properties;
+        private Message<byte[]> message;
+        private Consumer<byte[]> consumer;
+        private String raw;
+
+        public void handle(List<Map<String, Integer>> orders, @MessageKey String key,
+                @MessageProperty("traceId") String traceId, @MessageProperties Map<String, String> properties,
+                Message<byte[]> message, Consumer<byte[]> consumer) {
+            this.orders = orders;
+            this.key = key;
+            this.traceId = traceId;
+            this.properties = properties;
+            this.message = message;
+            this.consumer = consumer;
+        }
+
+        public void raw(String payload) {
+            this.raw = payload;
+        }
+
+        public void fail(byte[] payload) {
+            throw new IllegalStateException("handler failed");
+        }
+
+        public void twoPayloads(String first, String second) {
+        }
+    }
+}
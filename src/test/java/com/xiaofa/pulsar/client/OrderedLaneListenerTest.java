@@ -0,0 +1,73 @@
+package com.xiaofa.pulsar.client;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class OrderedLaneListenerTest {
+
+    @Test
+    public void testOrderedWithinKeyParallelAcrossKeys() throws Exception {
+        int keys = 32;
+        int perKey = 200;
+        Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(keys * perKey);
+        MessageListener<String> delegate = (consumer, message) -> {
+            threads.add(Thread.currentThread().getName());
+            handled.computeIfAbsent(message.getKey(), key -> new ArrayList<>()).add(Integer.parseInt(message.getValue()));
+            done.countDown();
+        };
+        OrderedLaneListener<String> listener = new OrderedLaneListener<>("test#0", delegate, null, 4, 16);
+        Consumer<String> consumer = mock(Consumer.class);
+        for(int i = 0; i < perKey; i++) {
+            for(int k = 0; k < keys; k++) {
+                listener.received(consumer, message("account-" + k, String.valueOf(i)));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(keys, handled.size());
+        for(List<Integer> sequence : handled.values()) {
+            for(int i = 0; i < perKey; i++) {
+                assertEquals(i, sequence.get(i).intValue());
+            }
+        }
+        assertEquals(4, threads.size());
+        listener.close();
+    }
+
+    @Test
+    public void testKeyExtractorSelectsLane() {
+        OrderedLaneListener<String> listener = new OrderedLaneListener<>("test#1", (consumer, message) -> { },
+                message -> ((String) message.getValue()).split(":")[0], 8, 16);
+        assertEquals(listener.laneOf(message(null, "42:created")), listener.laneOf(message("x", "42:paid")));
+        listener.close();
+    }
+
+    private Message<String> message(String key, String value) {
+        Message<String> message = mock(Message.class);
+        when(message.hasKey()).thenReturn(key != null);
+        when(message.getKey()).thenReturn(key);
+        when(message.getValue()).thenReturn(value);
+        return message;
+    }
+}
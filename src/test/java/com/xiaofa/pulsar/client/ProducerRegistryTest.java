@@ -0,0 +1,206 @@
+package com.xiaofa.pulsar.client;
+
+import org.apache.pulsar.client.api.Producer;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class ProducerRegistryTest {
+
+    @Test
+    public void testConcurrentCallersShareOneCreation() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        CompletableFuture<Producer<byte[]>> pending = new CompletableFuture<>();
+        ProducerRegistry registry = new ProducerRegistry(topic -> {
+            created.incrementAndGet();
+            return pending;
+        }, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<Producer<byte[]>>>> futures = new ArrayList<>();
+        for(int i = 0; i < 64; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return registry.getProducerAsync("persistent://t/n/topic");
+            }));
+        }
+        start.countDown();
+        for(Future<CompletableFuture<Producer<byte[]>>> future : futures) {
+            assertSame(pending, future.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testDisconnectedProducerIsReplaced() {
+        AtomicBoolean firstConnected = new AtomicBoolean(true);
+        Producer<byte[]> first = mock(Producer.class);
+        when(first.isConnected()).thenAnswer(invocation -> firstConnected.get());
+        when(first.flushAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        when(first.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        Producer<byte[]> second = connectedProducer(true);
+        List<Producer<byte[]>> producers = new ArrayList<>();
+        producers.add(first);
+        producers.add(second);
+        ProducerRegistry registry = new ProducerRegistry(
+                topic -> CompletableFuture.completedFuture(producers.remove(0)), 0);
+
+        assertSame(first, registry.getProducerAsync("topic").join());
+        firstConnected.set(false);
+        assertSame(second, registry.getProducerAsync("topic").join());
+        assertSame(second, registry.getProducerAsync("topic").join());
+        verify(first).closeAsync();
+    }
+
+    @Test
+    public void testFailedCreationIsRetried() {
+        CompletableFuture<Producer<byte[]>> failed = new CompletableFuture<>();
+        Producer<byte[]> connected = connectedProducer(true);
+        AtomicInteger attempts = new AtomicInteger();
+        ProducerRegistry registry = new ProducerRegistry(topic ->
+                attempts.getAndIncrement() == 0 ? failed : CompletableFuture.completedFuture(connected), 0);
+
+        assertSame(failed, registry.getProducerAsync("topic"));
+        failed.completeExceptionally(new IllegalStateException("lookup failed"));
+        assertSame(connected, registry.getProducerAsync("topic").join());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void testIdleProducerIsClosed() throws Exception {
+        Producer<byte[]> producer = connectedProducer(true);
+        ProducerRegistry registry = new ProducerRegistry(
+                topic -> CompletableFuture.completedFuture(producer), 100);
+        registry.getProducerAsync("topic").join();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(registry.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, registry.size());
+        verify(producer, timeout(5000)).closeAsync();
+        registry.close();
+    }
+
+    @Test
+    public void testEvictedEntryIsNotHandedOut() throws Exception {
+        Producer<byte[]> first = connectedProducer(true);
+        Producer<byte[]> second = connectedProducer(true);
+        List<Producer<byte[]>> producers = new ArrayList<>();
+        producers.add(first);
+        producers.add(second);
+        List<String> evicted = new ArrayList<>();
+        ProducerRegistry registry = new ProducerRegistry(
+                topic -> CompletableFuture.completedFuture(producers.remove(0)), 0, evicted::add);
+        ProducerRegistry.ProducerHolder holder = registry.acquire("topic");
+        holder.touch();
+        Thread.sleep(5);
+
+        registry.evictIdle();
+        assertNull(holder.touch());
+        assertFalse(holder.isUsable());
+        assertEquals(1, evicted.size());
+        verify(first).closeAsync();
+        assertSame(second, registry.getProducerAsync("topic").join());
+        verify(second, never()).closeAsync();
+    }
+
+    @Test
+    public void testTouchedEntryIsNotEvicted() throws Exception {
+        Producer<byte[]> producer = connectedProducer(true);
+        ProducerRegistry registry = new ProducerRegistry(
+                topic -> CompletableFuture.completedFuture(producer), 200);
+        ProducerRegistry.ProducerHolder holder = registry.acquire("topic");
+        Thread.sleep(300);
+        assertSame(producer, holder.touch().join());
+
+        registry.evictIdle();
+        assertTrue(holder.isUsable());
+        assertEquals(1, registry.size());
+        verify(producer, never()).closeAsync();
+        registry.close();
+    }
+
+    @Test
+    public void testSynchronousCreationFailureIsAFailedFuture() {
+        Producer<byte[]> connected = connectedProducer(true);
+        AtomicInteger attempts = new AtomicInteger();
+        ProducerRegistry registry = new ProducerRegistry(topic -> {
+            if(attempts.getAndIncrement() < 2) {
+                throw new IllegalStateException("client closed");
+            }
+            return CompletableFuture.completedFuture(connected);
+        }, 0);
+
+        CompletableFuture<Producer<byte[]>> failed = registry.getProducerAsync("topic");
+        assertTrue(failed.isCompletedExceptionally());
+        CompletableFuture<Producer<byte[]>> retried = registry.getProducerAsync("topic");
+        assertNotSame(failed, retried);
+        assertSame(connected, retried.join());
+    }
+
+    @Test
+    public void testCloseFlushesBeforeClosing() {
+        Producer<byte[]> producer = connectedProducer(true);
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        when(producer.flushAsync()).thenReturn(flushed);
+        ProducerRegistry registry = new ProducerRegistry(
+                topic -> CompletableFuture.completedFuture(producer), 0);
+        registry.getProducerAsync("topic").join();
+
+        CompletableFuture<Void> closed = registry.close();
+        assertFalse(closed.isDone());
+        verify(producer, never()).closeAsync();
+        flushed.complete(null);
+        assertTrue(closed.isDone());
+        InOrder inOrder = inOrder(producer);
+        inOrder.verify(producer).flushAsync();
+        inOrder.verify(producer).closeAsync();
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testCloseCompletesWhenCreationFailed() {
+        CompletableFuture<Producer<byte[]>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("lookup failed"));
+        ProducerRegistry registry = new ProducerRegistry(topic -> failed, 0);
+        registry.getProducerAsync("topic");
+
+        assertTrue(registry.close().isDone());
+    }
+
+    private Producer<byte[]> connectedProducer(boolean connected) {
+        Producer<byte[]> producer = mock(Producer.class);
+        when(producer.isConnected()).thenReturn(connected);
+        when(producer.flushAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        when(producer.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        return producer;
+    }
+}
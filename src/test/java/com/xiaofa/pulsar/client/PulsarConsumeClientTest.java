@@ -0,0 +1,329 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.annotations.Consume;
+import com.xiaofa.pulsar.annotations.PulsarListener;
+import com.xiaofa.pulsar.annotations.TopicBinding;
+import com.xiaofa.pulsar.codec.JsonPayloadCodec;
+import com.xiaofa.pulsar.config.ConsumerConfig;
+import com.xiaofa.pulsar.config.PulsarConfiguration;
+import com.xiaofa.pulsar.event.ConsumerSubscribeEvent;
+import com.xiaofa.pulsar.executor.ConsumerExecutorProvider;
+import com.xiaofa.pulsar.listener.ConsumerMessageListener;
+import com.xiaofa.pulsar.listener.LoggingDecodeErrorHandler;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.ConsumerBuilder;
+import org.apache.pulsar.client.api.KeySharedMode;
+import org.apache.pulsar.client.api.KeySharedPolicy;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Range;
+import org.apache.pulsar.client.api.Schema;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class PulsarConsumeClientTest {
+    private PulsarConfiguration pulsarProperties;
+    private PulsarClient pulsarClient;
+    private ConsumerBuilder<String> consumerBuilder;
+    private ConfigurableApplicationContext context;
+
+    @Before
+    public void setup() {
+        pulsarProperties = new PulsarConfiguration();
+        pulsarProperties.setServiceUrl("pulsar://localhost:6650");
+        pulsarProperties.setTenancy("GEO_test");
+        pulsarProperties.setNamespace("GEO_test_product");
+        pulsarClient = mock(PulsarClient.class);
+        consumerBuilder = mock(ConsumerBuilder.class, RETURNS_SELF);
+        when(pulsarClient.newConsumer(any(Schema.class))).thenReturn(consumerBuilder);
+        context = mock(ConfigurableApplicationContext.class);
+    }
+
+    @Test
+    public void testBindingsAreSubscribedOnceReady() throws Exception {
+        when(consumerBuilder.subscribeAsync()).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(mock(Consumer.class)));
+        PulsarConsumeClient client = newClient();
+        client.postProcessAfterInitialization(new OrderListener(), "orderListener");
+
+        verify(consumerBuilder, never()).subscribeAsync();
+        verify(consumerBuilder, never()).subscribe();
+        client.onApplicationEvent(readyEvent());
+
+        verify(consumerBuilder, times(2)).subscribeAsync();
+        ConsumerSubscribeEvent event = publishedEvent();
+        assertEquals(2, event.getSubscribed().size());
+        assertTrue(event.getSubscribed().containsKey("orderListener#0"));
+        assertTrue(event.getSubscribed().containsKey("orderListener#1"));
+        assertTrue(event.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testFailedBindingFailsStartup() {
+        CompletableFuture<Consumer<String>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new PulsarClientException("topic not found"));
+        when(consumerBuilder.subscribeAsync()).thenReturn(failed);
+        PulsarConsumeClient client = newClient();
+        client.postProcessAfterInitialization(new OrderListener(), "orderListener");
+
+        try {
+            client.onApplicationEvent(readyEvent());
+            fail("subscription failure must fail the startup");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof PulsarClientException);
+        }
+        verify(context, never()).publishEvent(any(ApplicationEvent.class));
+    }
+
+    @Test
+    public void testLoggedBindingDoesNotFailStartup() {
+        CompletableFuture<Consumer<String>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new PulsarClientException("topic not found"));
+        when(consumerBuilder.subscribeAsync()).thenReturn(failed);
+        PulsarConsumeClient client = newClient();
+        client.postProcessAfterInitialization(new OptionalListener(), "optionalListener");
+        client.onApplicationEvent(readyEvent());
+
+        ConsumerSubscribeEvent event = publishedEvent();
+        assertTrue(event.getSubscribed().isEmpty());
+        assertTrue(event.getFailures().get("optionalListener#0") instanceof PulsarClientException);
+    }
+
+    @Test
+    public void testPendingBindingIsReportedAfterTimeout() {
+        pulsarProperties.getConsumer().setSubscribeTimeout(50);
+        CompletableFuture<Consumer<String>> pending = new CompletableFuture<>();
+        when(consumerBuilder.subscribeAsync()).thenReturn(pending);
+        PulsarConsumeClient client = newClient();
+        client.postProcessAfterInitialization(new OptionalListener(), "optionalListener");
+        long start = System.currentTimeMillis();
+        client.onApplicationEvent(readyEvent());
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(publishedEvent().getFailures().get("optionalListener#0") instanceof TimeoutException);
+        pending.complete(mock(Consumer.class));
+    }
+
+    @Test
+    public void testAnnotatedMethodIsBound() {
+        when(consumerBuilder.subscribeAsync()).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(mock(Consumer.class)));
+        PulsarConsumeClient client = newClient();
+        client.postProcessAfterInitialization(new OrderHandler(), "orderHandler");
+        client.postProcessAfterInitialization(new Object(), "plainBean");
+        client.onApplicationEvent(readyEvent());
+
+        verify(pulsarClient).newConsumer(Schema.BYTES);
+        assertTrue(publishedEvent().getSubscribed().containsKey("orderHandler.onOrder#0"));
+    }
+
+    @Test
+    public void testBindingCreatedAfterReadyIsSubscribedRightAway() {
+        when(consumerBuilder.subscribeAsync()).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(mock(Consumer.class)));
+        PulsarConsumeClient client = newClient();
+        client.onApplicationEvent(readyEvent());
+        client.postProcessAfterInitialization(new OptionalListener(), "lazyListener");
+
+        verify(consumerBuilder).subscribeAsync();
+        assertTrue(publishedEvent().getSubscribed().containsKey("lazyListener#0"));
+    }
+
+    @Test
+    public void testConsumerSubscribedAfterStopIsClosed() {
+        pulsarProperties.getConsumer().setSubscribeTimeout(50);
+        CompletableFuture<Consumer<String>> pending = new CompletableFuture<>();
+        when(consumerBuilder.subscribeAsync()).thenReturn(pending);
+        PulsarConsumeClient client = newClient();
+        client.postProcessAfterInitialization(new OptionalListener(), "optionalListener");
+        client.start();
+        client.onApplicationEvent(readyEvent());
+        client.stop();
+
+        Consumer<String> consumer = mock(Consumer.class);
+        when(consumer.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        pending.complete(consumer);
+        verify(consumer).closeAsync();
+    }
+
+    @Test
+    public void testListenerAckingOnItsOwnIsNotGrouped() throws Exception {
+        Consumer<String> consumer = mock(Consumer.class);
+        when(consumerBuilder.subscribeAsync()).thenAnswer(invocation -> CompletableFuture.completedFuture(consumer));
+        PulsarConsumeClient client = newClient();
+        SelfAckingListener selfAcking = new SelfAckingListener();
+        client.postProcessAfterInitialization(selfAcking, "selfAckingListener");
+        client.onApplicationEvent(readyEvent());
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(consumerBuilder).messageListener(listener.capture());
+
+        for(int i = 0; i < 1000; i++) {
+            listener.getValue().received(consumer, message(i));
+        }
+        verify(consumer, times(1000)).acknowledge(any(Message.class));
+        verify(consumer, never()).acknowledgeCumulativeAsync(any(Message.class));
+        assertEquals(0, selfAcking.aggregators);
+    }
+
+    @Test
+    public void testExclusiveListenerAcksCumulatively() throws Exception {
+        Consumer<String> consumer = mock(Consumer.class);
+        when(consumer.acknowledgeCumulativeAsync(any(Message.class))).thenReturn(CompletableFuture.completedFuture(null));
+        when(consumerBuilder.subscribeAsync()).thenAnswer(invocation -> CompletableFuture.completedFuture(consumer));
+        PulsarConsumeClient client = newClient();
+        client.postProcessAfterInitialization(new ExclusiveListener(), "exclusiveListener");
+        client.onApplicationEvent(readyEvent());
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(consumerBuilder).messageListener(listener.capture());
+
+        for(int i = 0; i < 100; i++) {
+            listener.getValue().received(consumer, message(i));
+        }
+        verify(consumer, atLeastOnce()).acknowledgeCumulativeAsync(any(Message.class));
+        verify(consumer, never()).acknowledge(any(Message.class));
+    }
+
+    @Test
+    public void testKeySharedPolicy() {
+        ConsumerConfig consumerConfig = new ConsumerConfig();
+        KeySharedPolicy autoSplit = PulsarConsumeClient.createKeySharedPolicy(consumerConfig);
+        assertEquals(KeySharedMode.AUTO_SPLIT, autoSplit.getKeySharedMode());
+        assertFalse(autoSplit.isAllowOutOfOrderDelivery());
+
+        consumerConfig.setKeySharedMode(KeySharedMode.STICKY);
+        consumerConfig.setStickyHashRanges(new String[]{"0-16383", " 32768 - 49151 "});
+        consumerConfig.setAllowOutOfOrderDelivery(true);
+        KeySharedPolicy sticky = PulsarConsumeClient.createKeySharedPolicy(consumerConfig);
+        assertEquals(KeySharedMode.STICKY, sticky.getKeySharedMode());
+        assertTrue(sticky.isAllowOutOfOrderDelivery());
+        List<Range> ranges = ((KeySharedPolicy.KeySharedPolicySticky) sticky).getRanges();
+        assertEquals(2, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(16383, ranges.get(0).getEnd());
+        assertEquals(32768, ranges.get(1).getStart());
+        assertEquals(49151, ranges.get(1).getEnd());
+    }
+
+    @Test
+    public void testInvalidStickyHashRangesAreRejected() {
+        ConsumerConfig consumerConfig = new ConsumerConfig();
+        consumerConfig.setKeySharedMode(KeySharedMode.STICKY);
+        for(String[] ranges : new String[][]{null, {}, {"0:100"}, {"0-100-200"}, {"a-b"}}) {
+            consumerConfig.setStickyHashRanges(ranges);
+            try {
+                PulsarConsumeClient.createKeySharedPolicy(consumerConfig);
+                fail(Arrays.toString(ranges));
+            } catch (RuntimeException e) {
+                // expected
+            }
+        }
+    }
+
+    private Message<String> message(int sequence) {
+        Message<String> message = mock(Message.class);
+        MessageId messageId = mock(MessageId.class);
+        when(message.getTopicName()).thenReturn("persistent://GEO_test/GEO_test_product/orders");
+        when(message.getMessageId()).thenReturn(messageId);
+        when(message.getSequenceId()).thenReturn((long) sequence);
+        return message;
+    }
+
+    private PulsarConsumeClient newClient() {
+        return new PulsarConsumeClient(pulsarClient, pulsarProperties, mock(ConsumerExecutorProvider.class),
+                new JsonPayloadCodec(), new LoggingDecodeErrorHandler(), new MemoryBudget(0, 0.8));
+    }
+
+    private ApplicationReadyEvent readyEvent() {
+        return new ApplicationReadyEvent(new SpringApplication(), new String[0], context);
+    }
+
+    private ConsumerSubscribeEvent publishedEvent() {
+        ArgumentCaptor<ApplicationEvent> captor = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(context).publishEvent(captor.capture());
+        return (ConsumerSubscribeEvent) captor.getValue();
+    }
+
+    @PulsarListener(bindings = {@TopicBinding(@Consume("orders")), @TopicBinding(@Consume("refunds"))})
+    static class OrderListener extends ConsumerMessageListener {
+        @Override
+        public void handle(Consumer<String> consumer, Message<String> message) {
+        }
+    }
+
+    public static class OrderHandler {
+        @PulsarListener(bindings = @TopicBinding(@Consume("orders")))
+        public void onOrder(String payload) {
+        }
+    }
+
+    @PulsarListener(bindings = @TopicBinding(@Consume(value = "orders", subscriptionType = "Exclusive")))
+    static class SelfAckingListener extends ConsumerMessageListener {
+        private int aggregators;
+
+        @Override
+        public void before(Consumer<String> consumer, Message<String> message) {
+        }
+
+        @Override
+        public void handle(Consumer<String> consumer, Message<String> message) {
+        }
+
+        @Override
+        public void acknowledge(Consumer<String> consumer, Message<String> msg) throws PulsarClientException {
+            consumer.acknowledge(msg);
+        }
+
+        @Override
+        public void registerAckAggregator(Consumer<String> consumer, AckAggregator<String> ackAggregator) {
+            aggregators++;
+        }
+    }
+
+    @PulsarListener(bindings = @TopicBinding(@Consume(value = "orders", subscriptionType = "Exclusive")))
+    static class ExclusiveListener extends ConsumerMessageListener {
+        @Override
+        public void before(Consumer<String> consumer, Message<String> message) {
+        }
+
+        @Override
+        public void handle(Consumer<String> consumer, Message<String> message) {
+        }
+    }
+
+    @PulsarListener(bindings = @TopicBinding(@Consume(value = "audit", subscribeFailurePolicy = "LOG")))
+    static class OptionalListener extends ConsumerMessageListener {
+        @Override
+        public void handle(Consumer<String> consumer, Message<String> message) {
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.annotations.PulsarProducer;
+import com.xiaofa.pulsar.beans.BulkSendResult;
+import com.xiaofa.pulsar.beans.FanoutResult;
+import com.xiaofa.pulsar.codec.JsonPayloadCodec;
+import com.xiaofa.pulsar.codec.RawPayloads;
+import com.xiaofa.pulsar.config.ProducerConfig;
+import com.xiaofa.pulsar.config.PulsarConfiguration;
+import com.xiaofa.pulsar.config.ClientConfig;
+import com.xiaofa.pulsar.config.LimiterConfig;
+import com.xiaofa.pulsar.constants.FanoutMode;
+import com.xiaofa.pulsar.constants.LimiterMode;
+import com.xiaofa.pulsar.demo.MessageVo;
+import com.xiaofa.pulsar.event.ProducerWarmUpEvent;
+import com.xiaofa.pulsar.inmemory.InMemoryPulsarClient;
+import com.xiaofa.pulsar.listener.AckGroupingMessageListener;
+import com.xiaofa.pulsar.listener.LoggingDecodeErrorHandler;
+import com.xiaofa.pulsar.listener.TypedConsumerMessageListener;
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+public class PulsarTemplateTest {
+    private PulsarConfiguration pulsarProperties;
+    private MockEnvironment environment;
+
+    @Before
+    public void setup() {
+        pulsarProperties = new PulsarConfiguration();
+        pulsarProperties.setTenancy("GEO_test");
+        pulsarProperties.setNamespace("GEO_test_product");
+        pulsarProperties.getProducer().setSendTimeout(5000);
+        environment = new MockEnvironment();
+    }
+
+    @Test
+    public void testProducerConfigPrecedence() {
+        environment.setProperty("pulsar.producer.topics.orders.batchingMaxMessages", "5000");
+        environment.setProperty("pulsar.producer.topics.orders.compressionType", "ZSTD");
+        PulsarTemplate pulsarTemplate = newTemplate();
+        pulsarTemplate.postProcessAfterInitialization(new OrderSender(), "orderSender");
+
+        ProducerConfig orders = pulsarTemplate.getProducerConfig("orders");
+        assertEquals(5000, orders.getSendTimeout());
+        assertEquals(20, orders.getBatchingMaxPublishDelay());
+        assertEquals(5000, orders.getBatchingMaxMessages());
+        assertEquals(CompressionType.ZSTD, orders.getCompressionType());
+        assertTrue(orders.isEnableBatching());
+
+        ProducerConfig payments = pulsarTemplate.getProducerConfig("payments");
+        assertFalse(payments.isEnableBatching());
+        assertEquals(CompressionType.NONE, payments.getCompressionType());
+
+        ProducerConfig others = pulsarTemplate.getProducerConfig("others");
+        assertEquals(1, others.getBatchingMaxPublishDelay());
+        assertEquals(1000, others.getBatchingMaxMessages());
+    }
+
+    @Test
+    public void testWarmUpReportsFailures() {
+        pulsarProperties.getProducer().setWarmUpTopics(new String[]{"persistent://public/default/audit"});
+        PulsarClient pulsarClient = failingClient();
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(), environment);
+        List<ProducerWarmUpEvent> events = new ArrayList<>();
+        pulsarTemplate.setApplicationEventPublisher(event -> events.add((ProducerWarmUpEvent) event));
+        pulsarTemplate.postProcessAfterInitialization(new WarmUpSender(), "warmUpSender");
+
+        assertFalse(pulsarTemplate.isReady());
+        pulsarTemplate.afterSingletonsInstantiated();
+        assertTrue(pulsarTemplate.isReady());
+        assertEquals(1, events.size());
+        assertEquals(new HashSet<>(Arrays.asList("persistent://GEO_test/GEO_test_product/orders",
+                "persistent://public/default/audit")), events.get(0).getTopics());
+        assertEquals(events.get(0).getTopics(), events.get(0).getFailures().keySet());
+    }
+
+    @Test
+    public void testUnresolvableWarmUpTopicIsReportedAsFailure() throws Exception {
+        pulsarProperties.setNamespace(null);
+        pulsarProperties.getProducer().setWarmUpTopics(new String[]{"orders", "persistent://public/default/audit"});
+        InMemoryPulsarClient pulsarClient = new InMemoryPulsarClient(new ClientConfig());
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(), environment);
+        List<ProducerWarmUpEvent> events = new ArrayList<>();
+        pulsarTemplate.setApplicationEventPublisher(event -> events.add((ProducerWarmUpEvent) event));
+
+        pulsarTemplate.afterSingletonsInstantiated();
+        assertTrue(pulsarTemplate.isReady());
+        assertEquals(1, events.size());
+        assertEquals(new HashSet<>(Arrays.asList("orders", "persistent://public/default/audit")),
+                events.get(0).getTopics());
+        assertEquals(Collections.singleton("orders"), events.get(0).getFailures().keySet());
+        pulsarClient.close();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWarmUpFailFast() {
+        pulsarProperties.getProducer().setWarmUpFailFast(true);
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(failingClient(), pulsarProperties, new JsonPayloadCodec(), environment);
+        pulsarTemplate.postProcessAfterInitialization(new WarmUpSender(), "warmUpSender");
+        pulsarTemplate.afterSingletonsInstantiated();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testKeyBasedBatchingFollowsTheConfig() throws Exception {
+        ProducerBuilder<byte[]> producerBuilder = mock(ProducerBuilder.class, RETURNS_SELF);
+        Producer<byte[]> producer = mock(Producer.class);
+        when(producer.isConnected()).thenReturn(true);
+        when(producerBuilder.createAsync()).thenReturn(CompletableFuture.completedFuture(producer));
+        PulsarClient pulsarClient = mock(PulsarClient.class);
+        when(pulsarClient.newProducer(Schema.BYTES)).thenReturn(producerBuilder);
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(), environment);
+        pulsarTemplate.postProcessAfterInitialization(new UnkeyedSender(), "unkeyedSender");
+
+        pulsarTemplate.sender("orders");
+        verify(producerBuilder).batcherBuilder(BatcherBuilder.KEY_BASED);
+        pulsarTemplate.sender("metrics");
+        verify(producerBuilder, times(1)).batcherBuilder(any());
+    }
+
+    @Test
+    public void testKeyAndOrderingKeyAreSent() throws Exception {
+        InMemoryPulsarClient pulsarClient = new InMemoryPulsarClient(new ClientConfig());
+        try {
+            Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                    .topic("persistent://GEO_test/GEO_test_product/orders").subscriptionName("sub").subscribe();
+            PulsarTemplate pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(), environment);
+            pulsarTemplate.createBuilder().topics("orders").key("order-1").send("keyed");
+            pulsarTemplate.createBuilder().topics("orders").key("order-2").orderingKey("lane-2").send("ordered");
+            pulsarTemplate.sender("orders").sendAsync("order-3", "sender").get(5, TimeUnit.SECONDS);
+            pulsarTemplate.sender("orders").sendAsync("plain").get(5, TimeUnit.SECONDS);
+
+            Message<String> keyed = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals("keyed", keyed.getValue());
+            assertEquals("order-1", keyed.getKey());
+            assertFalse(keyed.hasOrderingKey());
+            Message<String> ordered = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals("order-2", ordered.getKey());
+            assertArrayEquals("lane-2".getBytes(StandardCharsets.UTF_8), ordered.getOrderingKey());
+            Message<String> sender = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals("order-3", sender.getKey());
+            Message<String> plain = consumer.receive(5, TimeUnit.SECONDS);
+            assertFalse(plain.hasKey());
+            assertNull(plain.getKey());
+        } finally {
+            pulsarClient.close();
+        }
+    }
+
+    @Test
+    public void testPayloadsRoundTripToEveryListener() throws Exception {
+        InMemoryPulsarClient pulsarClient = new InMemoryPulsarClient(new ClientConfig());
+        try {
+            Consumer<byte[]> consumer = pulsarClient.newConsumer(Schema.BYTES)
+                    .topic("persistent://GEO_test/GEO_test_product/orders").subscriptionName("bytes").subscribe();
+            Consumer<String> stringConsumer = pulsarClient.newConsumer(Schema.STRING)
+                    .topic("persistent://GEO_test/GEO_test_product/orders").subscriptionName("string").subscribe();
+            PulsarTemplate pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(), environment);
+            MessageVo vo = new MessageVo();
+            vo.setName("order-1");
+            byte[] bytes = {1, 2, -1};
+            pulsarTemplate.createBuilder().topics("orders").send("hello");
+            pulsarTemplate.createBuilder().topics("orders").send(bytes);
+            pulsarTemplate.createBuilder().topics("orders").send(vo);
+
+            PayloadHandler handler = new PayloadHandler();
+            List<Object> received = new ArrayList<>();
+            List<AckGroupingMessageListener<byte[]>> listeners = Arrays.asList(
+                    new TypedConsumerMessageListener<String>() {
+                        @Override
+                        public void handle(String payload, Message<?> raw) {
+                            received.add(payload);
+                        }
+                    },
+                    new TypedConsumerMessageListener<byte[]>() {
+                        @Override
+                        public void handle(byte[] payload, Message<?> raw) {
+                            received.add(payload);
+                        }
+                    },
+                    new TypedConsumerMessageListener<MessageVo>() {
+                        @Override
+                        public void handle(MessageVo payload, Message<?> raw) {
+                            received.add(payload);
+                        }
+                    });
+            for(int i = 0; i < 3; i++) {
+                Message<byte[]> message = consumer.receive(5, TimeUnit.SECONDS);
+                listeners.get(i).received(consumer, message);
+                handler.listener(i).received(consumer, message);
+            }
+            assertEquals("hello", received.get(0));
+            assertEquals("hello", handler.payloads.get(0));
+            assertArrayEquals(bytes, (byte[]) received.get(1));
+            assertArrayEquals(bytes, (byte[]) handler.payloads.get(1));
+            assertEquals(vo, received.get(2));
+            assertEquals(vo, handler.payloads.get(2));
+            assertEquals("hello", stringConsumer.receive(5, TimeUnit.SECONDS).getValue());
+        } finally {
+            pulsarClient.close();
+        }
+    }
+
+    @Test
+    public void testRawPayloadsCrossListenerTypes() {
+        byte[] bytes = {1, 2, -1};
+        MessageVo vo = new MessageVo();
+        vo.setName("order-1");
+        JsonPayloadCodec payloadCodec = new JsonPayloadCodec();
+
+        assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8),
+                RawPayloads.decode(RawPayloads.encode("hello", payloadCodec), byte[].class, payloadCodec));
+        assertEquals(new String(bytes, StandardCharsets.UTF_8),
+                RawPayloads.decode(RawPayloads.encode(bytes, payloadCodec), String.class, payloadCodec));
+        assertEquals("{\"name\":\"order-1\"}",
+                RawPayloads.decode(RawPayloads.encode(vo, payloadCodec), String.class, payloadCodec));
+        assertEquals(vo, RawPayloads.decode(RawPayloads.encode("{\"name\":\"order-1\"}", payloadCodec), MessageVo.class, payloadCodec));
+    }
+
+    @Test
+    public void testSenderReacquiresEvictedProducer() throws Exception {
+        pulsarProperties.getProducer().setIdleTimeout(200);
+        Producer<byte[]> first = producer(invocation -> CompletableFuture.completedFuture(mock(MessageId.class)));
+        Producer<byte[]> second = producer(invocation -> CompletableFuture.completedFuture(mock(MessageId.class)));
+        when(first.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(client(first, second), pulsarProperties, new JsonPayloadCodec(), environment);
+        PulsarTemplate.TopicSender sender = pulsarTemplate.sender("orders");
+        sender.sendAsync("before").get(5, TimeUnit.SECONDS);
+
+        verify(first, timeout(5000)).closeAsync();
+        sender.sendAsync("after").get(5, TimeUnit.SECONDS);
+        verify(first, times(1)).newMessage();
+        verify(second, times(1)).newMessage();
+        verify(second, never()).closeAsync();
+    }
+
+    @Test
+    public void testFanoutCompletesPerMode() throws Exception {
+        InMemoryPulsarClient pulsarClient = new InMemoryPulsarClient(new ClientConfig());
+        try {
+            List<Consumer<String>> consumers = new ArrayList<>();
+            for(String topic : new String[]{"orders", "audit", "billing"}) {
+                consumers.add(pulsarClient.newConsumer(Schema.STRING)
+                        .topic("persistent://GEO_test/GEO_test_product/" + topic).subscriptionName("sub").subscribe());
+            }
+            PulsarTemplate pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(), environment);
+
+            FanoutResult all = pulsarTemplate.createBuilder().topics("orders", "audit", "billing")
+                    .sendFanout("all").get(5, TimeUnit.SECONDS);
+            assertEquals(3, all.getTopics());
+            assertTrue(all.isAllAcked());
+            assertTrue(all.getFailed().isEmpty());
+            FanoutResult any = pulsarTemplate.createBuilder().topics("orders", "audit", "billing")
+                    .fanoutMode(FanoutMode.ANY).sendFanout("any").get(5, TimeUnit.SECONDS);
+            assertTrue(any.getAcked().size() >= 1);
+            FanoutResult quorum = pulsarTemplate.createBuilder().topics("orders", "audit", "billing")
+                    .quorum(2).sendFanout("quorum").get(5, TimeUnit.SECONDS);
+            assertTrue(quorum.getAcked().size() >= 2);
+
+            for(Consumer<String> consumer : consumers) {
+                assertEquals("all", consumer.receive(5, TimeUnit.SECONDS).getValue());
+                assertEquals("any", consumer.receive(5, TimeUnit.SECONDS).getValue());
+                assertEquals("quorum", consumer.receive(5, TimeUnit.SECONDS).getValue());
+            }
+        } finally {
+            pulsarClient.close();
+        }
+    }
+
+    @Test
+    public void testFanoutFailsOnceQuorumIsUnreachable() throws Exception {
+        Map<String, CompletableFuture<MessageId>> sends = new ConcurrentHashMap<>();
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(client(sends), pulsarProperties, new JsonPayloadCodec(), environment);
+        CompletableFuture<FanoutResult> future = pulsarTemplate.createBuilder().topics("orders", "audit", "billing")
+                .quorum(2).sendFanout("quorum");
+        assertEquals(3, sends.size());
+
+        sends.get("persistent://GEO_test/GEO_test_product/audit")
+                .completeExceptionally(new PulsarClientException.TimeoutException("send timed out"));
+        assertFalse(future.isDone());
+        sends.get("persistent://GEO_test/GEO_test_product/billing")
+                .completeExceptionally(new PulsarClientException.TimeoutException("send timed out"));
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("a quorum of 2 can no longer be reached");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PulsarClientException);
+        }
+        sends.get("persistent://GEO_test/GEO_test_product/orders").complete(mock(MessageId.class));
+
+        sends.clear();
+        CompletableFuture<FanoutResult> all = pulsarTemplate.createBuilder().topics("orders", "audit")
+                .sendFanout("all");
+        sends.get("persistent://GEO_test/GEO_test_product/orders")
+                .completeExceptionally(new PulsarClientException.TimeoutException("send timed out"));
+        assertTrue(all.isCompletedExceptionally());
+
+        sends.clear();
+        CompletableFuture<FanoutResult> any = pulsarTemplate.createBuilder().topics("orders", "audit")
+                .fanoutMode(FanoutMode.ANY).sendFanout("any");
+        sends.get("persistent://GEO_test/GEO_test_product/orders")
+                .completeExceptionally(new PulsarClientException.TimeoutException("send timed out"));
+        assertFalse(any.isDone());
+        sends.get("persistent://GEO_test/GEO_test_product/audit").complete(mock(MessageId.class));
+        FanoutResult result = any.get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getAcked().size());
+        assertEquals(1, result.getFailed().size());
+    }
+
+    @Test
+    public void testFanoutWithoutTopicsFails() throws Exception {
+        PulsarTemplate pulsarTemplate = newTemplate();
+        CompletableFuture<FanoutResult> future = pulsarTemplate.createBuilder().sendFanout("nowhere");
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("fanout without topics must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PulsarClientException);
+        }
+        assertTrue(pulsarTemplate.createBuilder().topics().sendFanout("nowhere").isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSendAllKeepsAtMostMaxInFlightSends() throws Exception {
+        List<CompletableFuture<MessageId>> pending = new CopyOnWriteArrayList<>();
+        Producer<byte[]> producer = producer(invocation -> {
+            CompletableFuture<MessageId> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(client(producer), pulsarProperties, new JsonPayloadCodec(), environment);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<BulkSendResult> bulk = executor.submit(() -> pulsarTemplate.createBuilder().topics("orders")
+                    .maxInFlight(2).sendAll(Arrays.asList("a", "b", "c", "d", "e")));
+            for(int completed = 0; completed < 5; completed++) {
+                awaitSize(pending, Math.min(completed + 2, 5));
+                Thread.sleep(50);
+                assertEquals(Math.min(completed + 2, 5), pending.size());
+                pending.get(completed).complete(mock(MessageId.class));
+            }
+            BulkSendResult result = bulk.get(5, TimeUnit.SECONDS);
+            assertTrue(result.isSuccess());
+            assertEquals(5, result.getSucceeded());
+            verify(producer).flushAsync();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSendAllReportsFailuresAndReleasesTheirPermits() throws Exception {
+        AtomicInteger sends = new AtomicInteger();
+        Producer<byte[]> producer = producer(invocation -> {
+            switch (sends.getAndIncrement()) {
+                case 1:
+                    CompletableFuture<MessageId> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new PulsarClientException.TimeoutException("send timed out"));
+                    return failed;
+                case 2:
+                    throw new IllegalStateException("producer closed");
+                default:
+                    return CompletableFuture.completedFuture(mock(MessageId.class));
+            }
+        });
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(client(producer), pulsarProperties, new JsonPayloadCodec(), environment);
+        List<Object> payloads = Arrays.asList("ok", "timeout", new Unencodable(), "closed", "ok");
+
+        BulkSendResult result = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pulsarTemplate.createBuilder().topics("orders").maxInFlight(1).sendAll(payloads);
+            } catch (PulsarClientException e) {
+                throw new IllegalStateException(e);
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(2, result.getSucceeded());
+        List<BulkSendResult.Failure> failures = new ArrayList<>(result.getFailures());
+        failures.sort((a, b) -> Long.compare(a.getIndex(), b.getIndex()));
+        assertEquals(3, failures.size());
+        assertEquals(1, failures.get(0).getIndex());
+        assertTrue(failures.get(0).getCause() instanceof PulsarClientException.TimeoutException);
+        assertEquals(2, failures.get(1).getIndex());
+        assertNull(failures.get(1).getTopic());
+        assertEquals(3, failures.get(2).getIndex());
+        assertEquals("persistent://GEO_test/GEO_test_product/orders", failures.get(2).getTopic());
+        verify(producer).flushAsync();
+    }
+
+    @Test
+    public void testSendAllGoesThroughTheSendLimiter() throws Exception {
+        LimiterConfig limiterConfig = pulsarProperties.getProducer().getLimiter();
+        limiterConfig.setEnabled(true);
+        limiterConfig.setMode(LimiterMode.FAIL_FAST);
+        limiterConfig.setInitialLimit(1);
+        limiterConfig.setMinLimit(1);
+        limiterConfig.setMaxLimit(1);
+        List<CompletableFuture<MessageId>> pending = new CopyOnWriteArrayList<>();
+        Producer<byte[]> producer = producer(invocation -> {
+            CompletableFuture<MessageId> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(client(producer), pulsarProperties, new JsonPayloadCodec(), environment);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<BulkSendResult> bulk = executor.submit(() -> pulsarTemplate.createBuilder().topics("orders")
+                    .maxInFlight(2).sendAll(Arrays.asList("a", "b", "c")));
+            awaitSize(pending, 1);
+            Thread.sleep(100);
+            pending.get(0).complete(mock(MessageId.class));
+            BulkSendResult result = bulk.get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, pending.size());
+            assertEquals(1, result.getSucceeded());
+            assertEquals(2, result.getFailures().size());
+            for(BulkSendResult.Failure failure : result.getFailures()) {
+                assertTrue(failure.getCause() instanceof PulsarClientException.ProducerQueueIsFullError);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProducerCreationIsNotTakenForSendLatency() throws Exception {
+        LimiterConfig limiterConfig = pulsarProperties.getProducer().getLimiter();
+        limiterConfig.setEnabled(true);
+        limiterConfig.setLatencyThreshold(50);
+        Producer<byte[]> producer = producer(invocation -> CompletableFuture.completedFuture(mock(MessageId.class)));
+        CompletableFuture<Producer<byte[]>> created = new CompletableFuture<>();
+        ProducerBuilder<byte[]> producerBuilder = mock(ProducerBuilder.class, RETURNS_SELF);
+        when(producerBuilder.createAsync()).thenReturn(created);
+        PulsarClient pulsarClient = mock(PulsarClient.class);
+        when(pulsarClient.newProducer(Schema.BYTES)).thenReturn(producerBuilder);
+        PulsarTemplate pulsarTemplate = new PulsarTemplate(pulsarClient, pulsarProperties, new JsonPayloadCodec(), environment);
+
+        CompletableFuture<MessageId> sent = pulsarTemplate.sender("orders").sendAsync("first");
+        Thread.sleep(200);
+        created.complete(producer);
+        sent.get(5, TimeUnit.SECONDS);
+        SendLimiter sendLimiter = pulsarTemplate.getSendLimiter("persistent://GEO_test/GEO_test_product/orders");
+        assertEquals(100, sendLimiter.getLimit());
+        assertEquals(0, sendLimiter.getInFlight());
+    }
+
+    @Test
+    public void testNonPositiveInFlightIsRejected() throws Exception {
+        PulsarTemplate pulsarTemplate = newTemplate();
+        try {
+            pulsarTemplate.createBuilder().maxInFlight(0);
+            fail("maxInFlight must be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        pulsarProperties.getProducer().setBulkMaxInFlight(0);
+        try {
+            pulsarTemplate.createBuilder().topics("orders").sendAll(Arrays.asList("a", "b"));
+            fail("bulkMaxInFlight must be positive");
+        } catch (PulsarClientException e) {
+            // expected
+        }
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(size, list.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Producer<byte[]> producer(Answer<CompletableFuture<MessageId>> send) {
+        TypedMessageBuilder<byte[]> messageBuilder = mock(TypedMessageBuilder.class, RETURNS_SELF);
+        when(messageBuilder.sendAsync()).thenAnswer(send);
+        Producer<byte[]> producer = mock(Producer.class);
+        when(producer.isConnected()).thenReturn(true);
+        when(producer.newMessage()).thenReturn(messageBuilder);
+        when(producer.flushAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        return producer;
+    }
+
+    /**
+     * a client whose sends stay pending in {@code sends}, keyed by fully-qualified topic
+     */
+    @SuppressWarnings("unchecked")
+    private PulsarClient client(Map<String, CompletableFuture<MessageId>> sends) {
+        ProducerBuilder<byte[]> producerBuilder = mock(ProducerBuilder.class, RETURNS_SELF);
+        List<String> topics = new ArrayList<>();
+        when(producerBuilder.topic(any(String.class))).thenAnswer(invocation -> {
+            topics.add(invocation.getArgument(0));
+            return producerBuilder;
+        });
+        when(producerBuilder.createAsync()).thenAnswer(invocation -> {
+            String topic = topics.get(topics.size() - 1);
+            return CompletableFuture.completedFuture(producer(send -> {
+                CompletableFuture<MessageId> future = new CompletableFuture<>();
+                sends.put(topic, future);
+                return future;
+            }));
+        });
+        PulsarClient pulsarClient = mock(PulsarClient.class);
+        when(pulsarClient.newProducer(Schema.BYTES)).thenReturn(producerBuilder);
+        return pulsarClient;
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private final PulsarClient client(Producer<byte[]> producer, Producer<byte[]>... next) {
+        ProducerBuilder<byte[]> producerBuilder = mock(ProducerBuilder.class, RETURNS_SELF);
+        CompletableFuture<Producer<byte[]>>[] created = new CompletableFuture[next.length];
+        for(int i = 0; i < next.length; i++) {
+            created[i] = CompletableFuture.completedFuture(next[i]);
+        }
+        when(producerBuilder.createAsync()).thenReturn(CompletableFuture.completedFuture(producer), created);
+        PulsarClient pulsarClient = mock(PulsarClient.class);
+        when(pulsarClient.newProducer(Schema.BYTES)).thenReturn(producerBuilder);
+        return pulsarClient;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PulsarClient failingClient() {
+        ProducerBuilder<byte[]> producerBuilder = mock(ProducerBuilder.class, RETURNS_SELF);
+        CompletableFuture<Producer<byte[]>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new PulsarClientException("broker unavailable"));
+        when(producerBuilder.createAsync()).thenReturn(failed);
+        PulsarClient pulsarClient = mock(PulsarClient.class);
+        when(pulsarClient.newProducer(Schema.BYTES)).thenReturn(producerBuilder);
+        return pulsarClient;
+    }
+
+    private PulsarTemplate newTemplate() {
+        return new PulsarTemplate(mock(PulsarClient.class), pulsarProperties, new JsonPayloadCodec(), environment);
+    }
+
+    public static class PayloadHandler {
+        private final List<Object> payloads = new ArrayList<>();
+
+        public void string(String payload) {
+            payloads.add(payload);
+        }
+
+        public void bytes(byte[] payload) {
+            payloads.add(payload);
+        }
+
+        public void vo(MessageVo payload) {
+            payloads.add(payload);
+        }
+
+        MethodMessageListener listener(int index) throws NoSuchMethodException {
+            java.lang.reflect.Method method = index == 0 ? getClass().getMethod("string", String.class)
+                    : index == 1 ? getClass().getMethod("bytes", byte[].class) : getClass().getMethod("vo", MessageVo.class);
+            return new MethodMessageListener(this, method, new JsonPayloadCodec(), new LoggingDecodeErrorHandler());
+        }
+    }
+
+    @PulsarProducer(value = "orders", batchingMaxPublishDelay = 20, batchingMaxMessages = 2000, compressionType = "LZ4")
+    @PulsarProducer(value = "payments", enableBatching = "false")
+    private static class OrderSender {
+    }
+
+    public static class Unencodable {
+        public String getValue() {
+            throw new IllegalStateException("not serializable");
+        }
+    }
+
+    @PulsarProducer(value = "metrics", keyBasedBatching = "false")
+    private static class UnkeyedSender {
+    }
+
+    @PulsarProducer(value = "orders", warmUp = true)
+    private static class WarmUpSender {
+    }
+}
@@ -0,0 +1,118 @@
+package com.xiaofa.pulsar.client;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class RedeliveryBackoffTest {
+
+    @Test
+    public void testDelayDoublesWithJitterUpToTheCap() {
+        RedeliveryBackoff backoff = new RedeliveryBackoff(1000, 60000, 120000, mock(ScheduledExecutorService.class));
+        for(int i = 0; i < 100; i++) {
+            assertEquals(1000, backoff.delayOf(0));
+            assertBetween(1600, 2000, backoff.delayOf(1));
+            assertBetween(6400, 8000, backoff.delayOf(3));
+            assertBetween(48000, 60000, backoff.delayOf(10));
+            assertBetween(48000, 60000, backoff.delayOf(Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void testCapStaysBelowAckTimeout() {
+        RedeliveryBackoff backoff = new RedeliveryBackoff(1000, 60000, 10000, mock(ScheduledExecutorService.class));
+        for(int i = 0; i < 100; i++) {
+            assertBetween(7200, 9000, backoff.delayOf(20));
+        }
+    }
+
+    @Test
+    public void testWaitLeavesRoomForTheHandlerTime() {
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        Consumer<String> consumer = mock(Consumer.class);
+        Message<String> message = mock(Message.class);
+        when(message.getRedeliveryCount()).thenReturn(20);
+        RedeliveryBackoff backoff = new RedeliveryBackoff(1000, 60000, 10000, timer);
+        backoff.negativeAcknowledge(consumer, message, System.currentTimeMillis() - 5000);
+
+        ArgumentCaptor<Long> wait = ArgumentCaptor.forClass(Long.class);
+        verify(timer).schedule(any(Runnable.class), wait.capture(), eq(TimeUnit.MILLISECONDS));
+        assertBetween(2900, 3000, wait.getValue());
+        verify(consumer, never()).negativeAcknowledge(message);
+    }
+
+    @Test
+    public void testSlowHandlerIsNegativelyAckedRightAway() {
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        Consumer<String> consumer = mock(Consumer.class);
+        Message<String> message = mock(Message.class);
+        when(message.getRedeliveryCount()).thenReturn(20);
+        RedeliveryBackoff backoff = new RedeliveryBackoff(1000, 60000, 10000, timer);
+        backoff.negativeAcknowledge(consumer, message, System.currentTimeMillis() - 8500);
+
+        verify(consumer).negativeAcknowledge(message);
+        verify(timer, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testFirstFailureIsNegativelyAckedRightAway() {
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        Consumer<String> consumer = mock(Consumer.class);
+        Message<String> message = mock(Message.class);
+        MessageListener<String> listener = new RedeliveryBackoff(1000, 60000, 30000, timer).wrap((c, m) -> {
+            throw new IllegalStateException("handler failed");
+        });
+        listener.received(consumer, message);
+
+        verify(consumer).negativeAcknowledge(message);
+        verify(timer, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testRedeliveredFailureIsDelayed() {
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        Consumer<String> consumer = mock(Consumer.class);
+        Message<String> message = mock(Message.class);
+        when(message.getRedeliveryCount()).thenReturn(3);
+        MessageListener<String> listener = new RedeliveryBackoff(1000, 60000, 30000, timer).wrap((c, m) -> {
+            throw new IllegalStateException("handler failed");
+        });
+        listener.received(consumer, message);
+
+        verify(consumer, never()).negativeAcknowledge(message);
+        verify(timer).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testHandledMessageIsNotNegativelyAcked() {
+        Consumer<String> consumer = mock(Consumer.class);
+        Message<String> message = mock(Message.class);
+        new RedeliveryBackoff(1000, 60000, 30000, mock(ScheduledExecutorService.class))
+                .wrap((MessageListener<String>) (c, m) -> { }).received(consumer, message);
+
+        verify(consumer, never()).negativeAcknowledge(message);
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+    }
+}
@@ -0,0 +1,87 @@
+package com.xiaofa.pulsar.client;
+
+import com.xiaofa.pulsar.config.LimiterConfig;
+import com.xiaofa.pulsar.constants.LimiterMode;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author pig
+ */
+public class SendLimiterTest {
+
+    @Test
+    public void testFailFastRejectsWhenSaturated() throws Exception {
+        SendLimiter sendLimiter = new SendLimiter(limiterConfig(LimiterMode.FAIL_FAST));
+        for(int i = 0; i < 10; i++) {
+            assertTrue(sendLimiter.acquire());
+        }
+        assertFalse(sendLimiter.acquire());
+        assertEquals(1, sendLimiter.getRejected());
+        assertEquals(10, sendLimiter.getInFlight());
+    }
+
+    @Test
+    public void testLimitGrowsWhenSaturatedAndShrinksOnOverload() throws Exception {
+        SendLimiter sendLimiter = new SendLimiter(limiterConfig(LimiterMode.FAIL_FAST));
+        for(int i = 0; i < 10; i++) {
+            sendLimiter.acquire();
+        }
+        sendLimiter.release(TimeUnit.MILLISECONDS.toNanos(1), false);
+        assertEquals(11, sendLimiter.getLimit());
+        sendLimiter.release(TimeUnit.MILLISECONDS.toNanos(1), true);
+        assertEquals(5, sendLimiter.getLimit());
+        sendLimiter.release(TimeUnit.SECONDS.toNanos(1), false);
+        assertEquals(5, sendLimiter.getLimit());
+    }
+
+    @Test
+    public void testBurstOfSlowAcksDecreasesOnce() throws Exception {
+        LimiterConfig limiterConfig = limiterConfig(LimiterMode.FAIL_FAST);
+        limiterConfig.setMinLimit(1);
+        SendLimiter sendLimiter = new SendLimiter(limiterConfig);
+        for(int i = 0; i < 10; i++) {
+            sendLimiter.acquire();
+        }
+        Thread.sleep(5);
+        for(int i = 0; i < 10; i++) {
+            sendLimiter.release(TimeUnit.MILLISECONDS.toNanos(5), true);
+        }
+        assertEquals(5, sendLimiter.getLimit());
+
+        Thread.sleep(5);
+        sendLimiter.acquire();
+        sendLimiter.release(0, true);
+        assertEquals(2, sendLimiter.getLimit());
+    }
+
+    @Test
+    public void testTimedModeGivesUp() throws Exception {
+        LimiterConfig limiterConfig = limiterConfig(LimiterMode.TIMED);
+        limiterConfig.setAcquireTimeout(50);
+        SendLimiter sendLimiter = new SendLimiter(limiterConfig);
+        for(int i = 0; i < 10; i++) {
+            sendLimiter.acquire();
+        }
+        long start = System.currentTimeMillis();
+        assertFalse(sendLimiter.acquire());
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertEquals(0, sendLimiter.getWaiting());
+    }
+
+    private LimiterConfig limiterConfig(LimiterMode mode) {
+        LimiterConfig limiterConfig = new LimiterConfig();
+        limiterConfig.setEnabled(true);
+        limiterConfig.setMode(mode);
+        limiterConfig.setInitialLimit(10);
+        limiterConfig.setMinLimit(5);
+        limiterConfig.setMaxLimit(20);
+        limiterConfig.setBackoffRatio(0.5);
+        return limiterConfig;
+    }
+}
@@ -0,0 +1,50 @@
+package com.xiaofa.pulsar.config;
+
+import com.xiaofa.pulsar.constants.PulsarConstants;
+import com.xiaofa.pulsar.inmemory.InMemoryPulsarClient;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.impl.PulsarClientImpl;
+import org.apache.pulsar.client.impl.conf.ClientConfigurationData;
+import org.junit.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author pig
+ */
+public class PulsarConfigurationTest {
+
+    @Test
+    public void testClientTuningIsApplied() throws Exception {
+        PulsarConfiguration pulsarProperties = new PulsarConfiguration();
+        pulsarProperties.setServiceUrl("pulsar://127.0.0.1:6650");
+        pulsarProperties.getClient().setListenerThreads(6);
+        pulsarProperties.getClient().setConnectionsPerBroker(2);
+        pulsarProperties.getClient().setOperationTimeout(15000);
+        pulsarProperties.getClient().setEnableTcpNoDelay(false);
+
+        PulsarClient pulsarClient = pulsarProperties.pulsarClient(pulsarProperties);
+        try {
+            ClientConfigurationData conf = ((PulsarClientImpl) pulsarClient).getConfiguration();
+            assertEquals(Runtime.getRuntime().availableProcessors(), conf.getNumIoThreads());
+            assertEquals(6, conf.getNumListenerThreads());
+            assertEquals(2, conf.getConnectionsPerBroker());
+            assertEquals(15000, conf.getOperationTimeoutMs());
+            assertFalse(conf.isUseTcpNoDelay());
+        } finally {
+            pulsarClient.close();
+        }
+    }
+
+    @Test
+    public void testInMemoryProfileReplacesTheBrokerClient() {
+        new ApplicationContextRunner()
+                .withInitializer(context -> context.getEnvironment().setActiveProfiles(PulsarConstants.IN_MEMORY_PROFILE))
+                .withPropertyValues("pulsar.serviceUrl=pulsar://127.0.0.1:6650")
+                .withUserConfiguration(PulsarConfiguration.class)
+                .run(context -> assertTrue(context.getBean("pulsarClient") instanceof InMemoryPulsarClient));
+    }
+}
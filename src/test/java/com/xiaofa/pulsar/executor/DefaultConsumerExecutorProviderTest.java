@@ -0,0 +1,55 @@
+package com.xiaofa.pulsar.executor;
+
+import com.xiaofa.pulsar.constants.ExecutorMode;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author pig
+ */
+public class DefaultConsumerExecutorProviderTest {
+
+    @Test
+    public void testPoolIsShared() {
+        DefaultConsumerExecutorProvider provider = new DefaultConsumerExecutorProvider(2);
+        assertSame(provider.getExecutor("a#0", ExecutorMode.POOL), provider.getExecutor("b#0", ExecutorMode.POOL));
+        provider.destroy();
+    }
+
+    @Test
+    public void testDedicatedThreadIsInterruptedOnDestroy() throws Exception {
+        DefaultConsumerExecutorProvider provider = new DefaultConsumerExecutorProvider(2);
+        AtomicReference<String> name = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        provider.getExecutor("orderListener#0", ExecutorMode.DEDICATED).execute(() -> {
+            name.set(Thread.currentThread().getName());
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                stopped.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals("pulsar-consumer-orderListener#0", name.get());
+        provider.destroy();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualRunsOnAnyJdk() throws Exception {
+        DefaultConsumerExecutorProvider provider = new DefaultConsumerExecutorProvider(2);
+        CountDownLatch ran = new CountDownLatch(1);
+        provider.getExecutor("auditListener#0", ExecutorMode.VIRTUAL).execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        provider.destroy();
+    }
+}
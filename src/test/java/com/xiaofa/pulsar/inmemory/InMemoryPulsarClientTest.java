@@ -0,0 +1,261 @@
+package com.xiaofa.pulsar.inmemory;
+
+import com.xiaofa.pulsar.config.ClientConfig;
+import org.apache.pulsar.client.api.BatchReceivePolicy;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.DeadLetterPolicy;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author pig
+ */
+public class InMemoryPulsarClientTest {
+    private InMemoryPulsarClient client;
+
+    @Before
+    public void setUp() {
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.setListenerThreads(2);
+        clientConfig.getInMemoryPartitions().put("partitioned", 3);
+        client = new InMemoryPulsarClient(clientConfig);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void testListenerReceivesAndAcksMessages() throws Exception {
+        CountDownLatch received = new CountDownLatch(100);
+        client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .messageListener((consumer, message) -> {
+                    consumer.acknowledgeAsync(message);
+                    received.countDown();
+                }).subscribe();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic("persistent://public/default/orders").create();
+
+        for(int i = 0; i < 100; i++) {
+            producer.sendAsync("message-" + i);
+        }
+
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        assertEquals(100, client.getPublishedCount("orders"));
+        assertEquals(0, client.getBacklog("orders", "sub"));
+    }
+
+    @Test
+    public void testMessagesSentBeforeTheFirstSubscriptionAreRetained() throws Exception {
+        Producer<String> producer = client.newProducer(Schema.STRING).topic("orders").create();
+        producer.send("early");
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub").subscribe();
+
+        Message<String> message = consumer.receive(5, TimeUnit.SECONDS);
+
+        assertEquals("early", message.getValue());
+    }
+
+    @Test
+    public void testSharedSubscriptionSpreadsMessages() throws Exception {
+        Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        CountDownLatch received = new CountDownLatch(100);
+        for(String name : new String[] {"a", "b"}) {
+            client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub").consumerName(name)
+                    .subscriptionType(SubscriptionType.Shared).receiverQueueSize(10)
+                    .messageListener((consumer, message) -> {
+                        counts.computeIfAbsent(consumer.getConsumerName(), k -> new AtomicInteger()).incrementAndGet();
+                        consumer.acknowledgeAsync(message);
+                        received.countDown();
+                    }).subscribe();
+        }
+        Producer<String> producer = client.newProducer(Schema.STRING).topic("orders").create();
+
+        for(int i = 0; i < 100; i++) {
+            producer.send("message-" + i);
+        }
+
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        assertTrue(counts.get("a").get() > 0);
+        assertTrue(counts.get("b").get() > 0);
+    }
+
+    @Test
+    public void testSecondExclusiveConsumerIsRejected() throws Exception {
+        client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub").subscribe();
+        try {
+            client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub").subscribe();
+            fail();
+        } catch (PulsarClientException.ConsumerBusyException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailoverSwitchesToTheStandbyConsumer() throws Exception {
+        Consumer<String> active = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .consumerName("a").subscriptionType(SubscriptionType.Failover).subscribe();
+        Consumer<String> standby = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .consumerName("b").subscriptionType(SubscriptionType.Failover).subscribe();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic("orders").create();
+
+        producer.send("first");
+        Message<String> first = active.receive(5, TimeUnit.SECONDS);
+        assertEquals("first", first.getValue());
+        active.acknowledge(first);
+        active.close();
+        producer.send("second");
+
+        assertEquals("second", standby.receive(5, TimeUnit.SECONDS).getValue());
+    }
+
+    @Test
+    public void testKeyedMessagesStayOnOnePartition() throws Exception {
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic("partitioned").subscriptionName("sub")
+                .subscribe();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic("partitioned").create();
+
+        for(int i = 0; i < 10; i++) {
+            producer.newMessage().key("user-1").value("keyed-" + i).send();
+        }
+
+        Set<String> partitions = ConcurrentHashMap.newKeySet();
+        for(int i = 0; i < 10; i++) {
+            Message<String> message = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals("keyed-" + i, message.getValue());
+            partitions.add(message.getTopicName());
+        }
+        assertEquals(1, partitions.size());
+        assertEquals(3, client.getPartitionsForTopic("partitioned").get().size());
+    }
+
+    @Test
+    public void testNegativeAckRedeliversWithCount() throws Exception {
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared).negativeAckRedeliveryDelay(10, TimeUnit.MILLISECONDS)
+                .subscribe();
+        client.newProducer(Schema.STRING).topic("orders").create().send("retry me");
+
+        Message<String> first = consumer.receive(5, TimeUnit.SECONDS);
+        consumer.negativeAcknowledge(first);
+        Message<String> second = consumer.receive(5, TimeUnit.SECONDS);
+
+        assertEquals(first.getMessageId(), second.getMessageId());
+        assertEquals(0, first.getRedeliveryCount());
+        assertEquals(1, second.getRedeliveryCount());
+    }
+
+    @Test
+    public void testAckTimeoutRedeliversUnackedMessages() throws Exception {
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .ackTimeout(50, TimeUnit.MILLISECONDS).ackTimeoutTickTime(10, TimeUnit.MILLISECONDS).subscribe();
+        client.newProducer(Schema.STRING).topic("orders").create().send("forgotten");
+
+        Message<String> first = consumer.receive(5, TimeUnit.SECONDS);
+        Message<String> second = consumer.receive(5, TimeUnit.SECONDS);
+        consumer.acknowledge(second);
+
+        assertEquals(first.getMessageId(), second.getMessageId());
+        assertEquals(1, second.getRedeliveryCount());
+        assertNull(consumer.receive(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testMessageGoesToDeadLetterTopicAfterMaxRedeliveries() throws Exception {
+        Consumer<String> deadLetters = client.newConsumer(Schema.STRING).topic("orders-DLQ").subscriptionName("dlq")
+                .subscribe();
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared).negativeAckRedeliveryDelay(10, TimeUnit.MILLISECONDS)
+                .deadLetterPolicy(DeadLetterPolicy.builder().maxRedeliverCount(2).deadLetterTopic("orders-DLQ").build())
+                .subscribe();
+        client.newProducer(Schema.STRING).topic("orders").create().send("poison");
+
+        for(int i = 0; i < 3; i++) {
+            consumer.negativeAcknowledge(consumer.receive(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals("poison", deadLetters.receive(5, TimeUnit.SECONDS).getValue());
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testReconsumeLaterGoesThroughTheRetryTopic() throws Exception {
+        List<Message<String>> received = new CopyOnWriteArrayList<>();
+        CountDownLatch retried = new CountDownLatch(2);
+        client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared).enableRetry(true)
+                .messageListener((consumer, message) -> {
+                    received.add(message);
+                    if(retried.getCount() == 2) {
+                        consumer.reconsumeLaterAsync(message, 10, TimeUnit.MILLISECONDS);
+                    } else {
+                        consumer.acknowledgeAsync(message);
+                    }
+                    retried.countDown();
+                }).subscribe();
+
+        client.newProducer(Schema.STRING).topic("orders").create().send("later");
+
+        assertTrue(retried.await(5, TimeUnit.SECONDS));
+        assertEquals("persistent://public/default/sub-RETRY", received.get(1).getTopicName());
+        assertEquals("1", received.get(1).getProperty("RECONSUMETIMES"));
+        assertEquals("later", received.get(1).getValue());
+    }
+
+    @Test
+    public void testDelayedMessageIsHeldBack() throws Exception {
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared).subscribe();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic("orders").create();
+
+        producer.newMessage().value("delayed").deliverAfter(300, TimeUnit.MILLISECONDS).send();
+        producer.send("now");
+
+        assertEquals("now", consumer.receive(5, TimeUnit.SECONDS).getValue());
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+        assertEquals("delayed", consumer.receive(5, TimeUnit.SECONDS).getValue());
+    }
+
+    @Test
+    public void testBatchReceiveWaitsForAFullBatch() throws Exception {
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic("orders").subscriptionName("sub")
+                .batchReceivePolicy(BatchReceivePolicy.builder().maxNumMessages(5).timeout(5, TimeUnit.SECONDS).build())
+                .subscribe();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic("orders").create();
+        for(int i = 0; i < 7; i++) {
+            producer.send("message-" + i);
+        }
+
+        Messages<String> batch = consumer.batchReceive();
+
+        List<String> values = new ArrayList<>();
+        batch.forEach(message -> values.add(message.getValue()));
+        assertEquals(5, values.size());
+        assertEquals("message-0", values.get(0));
+        consumer.acknowledge(batch);
+        assertNotNull(consumer.receive(5, TimeUnit.SECONDS));
+    }
+}
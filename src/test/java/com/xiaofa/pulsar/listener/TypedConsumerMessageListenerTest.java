@@ -0,0 +1,89 @@
+package com.xiaofa.pulsar.listener;
+
+import com.xiaofa.pulsar.demo.MessageVo;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author pig
+ */
+@SuppressWarnings("unchecked")
+public class TypedConsumerMessageListenerTest {
+
+    @Test
+    public void testGenericPayloadIsDecoded() throws Exception {
+        List<List<MessageVo>> handled = new ArrayList<>();
+        TypedConsumerMessageListener<List<MessageVo>> listener = new TypedConsumerMessageListener<List<MessageVo>>() {
+            @Override
+            public void handle(List<MessageVo> payload, Message<?> raw) {
+                handled.add(payload);
+            }
+        };
+        Consumer<byte[]> consumer = mock(Consumer.class);
+        Message<byte[]> message = message("[{\"name\":\"a\"},{\"name\":\"b\"}]");
+        listener.received(consumer, message);
+
+        assertEquals(1, handled.size());
+        assertEquals(2, handled.get(0).size());
+        assertTrue(handled.get(0).get(1) instanceof MessageVo);
+        verify(consumer).acknowledge(message);
+    }
+
+    @Test
+    public void testMalformedPayloadGoesToErrorHandler() throws Exception {
+        List<SchemaSerializationException> errors = new ArrayList<>();
+        OrderListener listener = new OrderListener();
+        listener.setDecodeErrorHandler((consumer, message, cause) -> errors.add(cause));
+        Consumer<byte[]> consumer = mock(Consumer.class);
+        Message<byte[]> message = message("{not json");
+        listener.received(consumer, message);
+
+        assertEquals(1, errors.size());
+        assertEquals(0, listener.handled);
+        verify(consumer, never()).acknowledge(message);
+    }
+
+    @Test
+    public void testDefaultErrorHandlerAcksMalformedPayload() {
+        Consumer<byte[]> consumer = mock(Consumer.class);
+        when(consumer.acknowledgeAsync(org.mockito.ArgumentMatchers.any(Message.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        Message<byte[]> message = message("{not json");
+        new OrderListener().received(consumer, message);
+        verify(consumer).acknowledgeAsync(message);
+    }
+
+    @Test
+    public void testPayloadTypeIsResolvedFromSubclass() {
+        assertEquals(MessageVo.class, new OrderListener().getPayloadType());
+    }
+
+    private Message<byte[]> message(String body) {
+        Message<byte[]> message = mock(Message.class);
+        when(message.getData()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+
+    private static class OrderListener extends TypedConsumerMessageListener<MessageVo> {
+        private int handled;
+
+        @Override
+        public void handle(MessageVo payload, Message<?> raw) {
+            handled++;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.xiaofa.pulsar.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author pig
+ */
+public class JsonUtilTest {
+    private static final String JSON = "{\"orderNo\":\"SO1\",\"skipped\":{\"deep\":[1,{\"x\":[2,3]}],\"s\":\"}]\"},"
+            + "\"amount\":1024.50,\"count\":3,\"big\":12345678901234567890,\"paid\":true,\"note\":null,"
+            + "\"title\":\"你好 \\\"pulsar\\\"\",\"tags\":[\"a\",\"b\"],"
+            + "\"data\":{\"items\":[{\"sku\":\"SKU-0\",\"price\":51.20},{\"sku\":\"SKU-1\",\"price\":7}],\"user\":{\"id\":9}}}";
+
+    @Test
+    public void testFromStrByPathBindsTheValueAtThePath() {
+        assertEquals("SO1", JsonUtil.fromStrByPath(JSON, "orderNo", String.class));
+        assertEquals("SKU-1", JsonUtil.fromStrByPath(JSON, "data.items[1].sku", String.class));
+        assertEquals(Integer.valueOf(9), JsonUtil.fromStrByPath(JSON, "data.user.id", Integer.class));
+        assertEquals(new BigDecimal("1024.50"), JsonUtil.fromStrByPath(JSON, "amount", BigDecimal.class));
+        Map<String, Object> item = JsonUtil.fromStrByPath(JSON, "data.items[0]", new TypeReference<Map<String, Object>>() {});
+        assertEquals("SKU-0", item.get("sku"));
+        List<String> tags = JsonUtil.fromStrByPath(JSON, "tags", new TypeReference<List<String>>() {});
+        assertEquals(Arrays.asList("a", "b"), tags);
+    }
+
+    @Test
+    public void testFromStrByPathMatchesTheTreeLookup() {
+        for (String path : new String[] {"orderNo", "note", "missing", "data.items[5].sku", "data.items[-1]",
+                "orderNo.x", "note.x", "tags[1]", "data.user[0].id", "skipped.s", "title", "[0]"}) {
+            assertEquals(path, treeByPath(path), JsonUtil.fromStrByPath(JSON, path, String.class) == null ? null :
+                    JsonUtil.MAPPER.valueToTree(JsonUtil.fromStrByPath(JSON, path, Object.class)).toString());
+        }
+    }
+
+    @Test
+    public void testAddElementMatchesTheTreeOutput() {
+        for (String field : new String[] {"orderNo", "data", "added", "note"}) {
+            for (String value : new String[] {"v", null}) {
+                ObjectNode expected = (ObjectNode) JsonUtil.readTree(JSON);
+                expected.put(field, value);
+                assertEquals(field, JsonUtil.toJson(expected), JsonUtil.addElement(JSON, field, value));
+            }
+        }
+        assertEquals("{\"a\":1,\"b\":\"2\"}", JsonUtil.addElement("{ \"a\" : 1 }", "b", "2"));
+    }
+
+    @Test
+    public void testAddElementRejectsNonObjects() {
+        try {
+            JsonUtil.addElement("[1,2]", "a", "b");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetByFieldMatchesTheTreeLookup() {
+        assertEquals("SO1", JsonUtil.getByField(JSON, "orderNo"));
+        assertEquals("1024.5", JsonUtil.getByField(JSON, "amount"));
+        assertEquals("3", JsonUtil.getByField(JSON, "count"));
+        assertEquals("12345678901234567890", JsonUtil.getByField(JSON, "big"));
+        assertEquals("true", JsonUtil.getByField(JSON, "paid"));
+        assertEquals("你好 \"pulsar\"", JsonUtil.getByField(JSON, "title"));
+        assertEquals(JsonUtil.readTree(JSON).get("data").toString(), JsonUtil.getByField(JSON, "data"));
+        assertEquals("", JsonUtil.getByField(JSON, "missing"));
+        for (String field : new String[] {"tags", "note"}) {
+            try {
+                JsonUtil.getByField(JSON, field);
+                fail(field);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testReadersAndWritersAreCachedPerType() {
+        assertSame(JsonUtil.readerFor(Dated.class), JsonUtil.readerFor(Dated.class));
+        assertSame(JsonUtil.readerFor(new TypeReference<List<String>>() {}.getType()),
+                JsonUtil.readerFor(new TypeReference<List<String>>() {}.getType()));
+        assertSame(JsonUtil.writerFor(Dated.class), JsonUtil.writerFor(Dated.class));
+    }
+
+    @Test
+    public void testByteAndStreamVariantsMatchTheStringOnes() throws Exception {
+        Dated dated = new Dated();
+        dated.setName("你好");
+        dated.setDate(LocalDate.of(2020, 8, 7));
+        dated.setTime(LocalDateTime.of(2020, 8, 7, 17, 45, 1));
+        String json = JsonUtil.toJson(dated);
+        assertEquals("{\"name\":\"你好\",\"date\":\"2020-08-07\",\"time\":\"2020-08-07 17:45:01\"}", json);
+
+        assertEquals(json, new String(JsonUtil.toBytes(dated), StandardCharsets.UTF_8));
+        ClosingCheckStream out = new ClosingCheckStream();
+        JsonUtil.toOutputStream(dated, out);
+        assertEquals(json, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(!out.closed);
+
+        byte[] bytes = "{\"name\":\"n\",\"unknown\":1}".getBytes(StandardCharsets.UTF_8);
+        assertEquals("n", JsonUtil.fromBytes(bytes, Dated.class).getName());
+        Map<String, Object> map = JsonUtil.fromBytes(bytes, new TypeReference<Map<String, Object>>() {});
+        assertEquals(1, map.get("unknown"));
+        assertEquals("n", JsonUtil.fromInputStream(new ByteArrayInputStream(bytes), Dated.class).getName());
+        assertNull(JsonUtil.fromBytes("{".getBytes(StandardCharsets.UTF_8), Dated.class));
+        assertEquals("null", JsonUtil.toJson(null));
+    }
+
+    @Test
+    public void testGetMapFromStr() {
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("a", 1);
+        expected.put("b", 2);
+        assertEquals(expected, JsonUtil.getMapFromStr("{\"a\":1,\"b\":2}", String.class, Integer.class));
+        assertEquals(expected, JsonUtil.getMapFromStr("{\"a\":\"1\",\"b\":2}", String.class, Integer.class));
+    }
+
+    public static class Dated {
+        private String name;
+        private LocalDate date;
+        private LocalDateTime time;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+
+        public LocalDateTime getTime() {
+            return time;
+        }
+
+        public void setTime(LocalDateTime time) {
+            this.time = time;
+        }
+    }
+
+    private static class ClosingCheckStream extends ByteArrayOutputStream {
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * The former implementation: parse the whole document, walk the tree, print the node
+     */
+    private static String treeByPath(String path) {
+        JsonNode node = JsonUtil.readTree(JSON);
+        for (String nodeName : path.split("\\.")) {
+            String key = nodeName;
+            Integer index = null;
+            if (nodeName.contains("[")) {
+                key = nodeName.substring(0, nodeName.indexOf('['));
+                index = Integer.parseInt(nodeName.substring(nodeName.indexOf('[') + 1, nodeName.indexOf(']')));
+            }
+            JsonNode result = node.get(key);
+            if (result != null && index != null && result.isArray()) {
+                result = result.get(index);
+            }
+            if (result == null) {
+                return null;
+            }
+            node = result;
+        }
+        return node.isNull() ? null : node.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.xiaofa.pulsar.utils;
+
+import com.xiaofa.pulsar.beans.TopicNameComponent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author pig
+ */
+public class PulsarUtilsTest {
+
+    @Test
+    public void testTopicCacheStaysBounded() throws Exception {
+        TopicNameComponent topicNameComponent = new TopicNameComponent();
+        topicNameComponent.setTenancy("bounded");
+        topicNameComponent.setNamespace("cache");
+        topicNameComponent.setPersistent(true);
+        int topics = PulsarUtils.MAX_CACHED_TOPICS + 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t = 0; t < 8; t++) {
+            int offset = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for(int i = offset; i < topics; i += 8) {
+                    assertEquals("persistent://bounded/cache/topic-" + i,
+                            PulsarUtils.getActualTopic(topicNameComponent, "topic-" + i));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for(Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(PulsarUtils.cachedTopics() <= PulsarUtils.MAX_CACHED_TOPICS);
+        assertEquals("persistent://bounded/cache/topic-" + (topics - 1),
+                PulsarUtils.getActualTopic(topicNameComponent, "topic-" + (topics - 1)));
+        assertTrue(PulsarUtils.cachedTopics() <= PulsarUtils.MAX_CACHED_TOPICS);
+    }
+}